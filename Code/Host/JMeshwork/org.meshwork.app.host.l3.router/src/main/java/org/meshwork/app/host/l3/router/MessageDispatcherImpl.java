@@ -2,19 +2,27 @@ package org.meshwork.app.host.l3.router;
 
 import org.meshwork.core.*;
 import org.meshwork.core.host.l3.*;
+import org.meshwork.core.util.Log;
 
+import java.io.File;
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Created by Sinisha Djukic on 14-2-13.
  */
-public class MessageDispatcherImpl implements MessageDispatcher {
+public class MessageDispatcherImpl implements MessageDispatcher, MessageListener {
 
     public static final int MAX_READ_MSG_COUNT_PER_CALL = 100;
     protected AbstractMessageTransport transport;
     protected PrintWriter writer;
+    //all dispatcher output goes through here, disabled levels skip the message rendering
+    protected Log log;
     protected MessageAdapter adapter;
     protected RouterConfiguration config;
     protected boolean running;
@@ -23,7 +31,17 @@ public class MessageDispatcherImpl implements MessageDispatcher {
     protected int rfReadTimeout;
     protected int consoleReadTimeout;
     protected RouteMap routeMap;
+    //keeps routeMap across restarts when configured
+    protected RouteStore routeStore;
+    //links and their success rates learned from reported routes, fills in routes for destinations with none stored
+    protected TopologyGraph topology;
+    //orders independent routes after the best one when set
+    protected RoutePlanner planner;
     protected boolean autoCfgRequestAllowed;
+    //owns the receive side when set, requests then go out without waiting for the previous response
+    protected MessagePipeline pipeline;
+    //unsolicited config request seen by the pipeline reader, handled on the dispatcher thread
+    protected volatile boolean cfgRequested;
 
 
     public MessageDispatcherImpl(MessageAdapter adapter, AbstractMessageTransport transport,
@@ -32,17 +50,94 @@ public class MessageDispatcherImpl implements MessageDispatcher {
         this.transport = transport;
         this.config = config;
         this.writer = writer;
+        log = new Log(writer, config.getLogLevel());
         rfReadTimeout = config.getRFReadTimeout();
         consoleReadTimeout = config.getConsoleReadTimeout();
         dateFormatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
         routeMap = new RouteMap();
+        routeMap.setEvictionPolicy(config.getRouteEviction());
+        routeMap.setMaxRoutes(config.getRouteMax());
+        routeMap.setTimeToLive(config.getRouteTTL());
+        topology = new TopologyGraph();
+        if ( config.getRouteStore() != null )
+            loadRouteStore(new File(config.getRouteStore()));
+        if ( config.getPlannerRoutes() > 0 ) {
+            planner = new RoutePlanner(topology, routeMap, config.getNodeId(), config.getPlannerRoutes(), config.isPlannerNodeDisjoint());
+            planner.setInterval(config.getPlannerInterval());
+        }
         autoCfgRequestAllowed = true;
+        if ( config.getPipelineWindow() > 0 ) {
+            pipeline = new MessagePipeline(transport, adapter, config.getPipelineWindow(), consoleReadTimeout);
+            pipeline.setListener(this);
+        }
+    }
+
+    public MessagePipeline getPipeline() {
+        return pipeline;
+    }
+
+    public Log getLog() {
+        return log;
     }
 
     public RouteMap getRouteMap() {
         return routeMap;
     }
 
+    public TopologyGraph getTopology() {
+        return topology;
+    }
+
+    public RoutePlanner getPlanner() {
+        return planner;
+    }
+
+    public RouteStore getRouteStore() {
+        return routeStore;
+    }
+
+    //a store that can't be read is left alone and the router starts with an empty route table
+    protected void loadRouteStore(File file) {
+        long start = System.nanoTime();
+        RouteStore store = new RouteStore(file);
+        try {
+            int records = store.load(routeMap);
+            routeStore = store;
+            //persisted routes carry their found/failed counts, seed the links with them
+            for ( int i = 0; i < RouteMap.SLOT_COUNT; i ++ ) {
+                RouteList.Snapshot snapshot = routeMap.getSnapshot((byte) i);
+                for ( int j = 0; j < snapshot.getRouteCount(); j ++ ) {
+                    Route route = snapshot.getRoute(j);
+                    topology.update(route, route.statsFound, route.statsFailed);
+                }
+            }
+            if ( log.isEnabled(Log.INFO) ) {
+                int routes = 0;
+                for ( int i = 0; i < RouteMap.SLOT_COUNT; i ++ )
+                    routes += routeMap.getSnapshot((byte) i).getRouteCount();
+                log.info("[RouteStore] Loaded "+routes+" routes from "+records+" records of '"+file+"' in "
+                        +((System.nanoTime() - start) / 1000000.0)+" ms");
+            }
+        } catch (Throwable t) {
+            routeMap.setListener(null);
+            routeMap.clearRouteList();
+            log.error("[RouteStore] Error loading '"+file+"', starting without persisted routes: "+t.getMessage(), t);
+        }
+    }
+
+    protected void compactRouteStore() {
+        long start = System.nanoTime();
+        int records = routeStore.getRecordCount();
+        try {
+            routeStore.compact();
+            if ( log.isEnabled(Log.INFO) )
+                log.info("[RouteStore] Compacted "+records+" records to "+routeStore.getRecordCount()+" in "
+                        +((System.nanoTime() - start) / 1000000.0)+" ms");
+        } catch (Throwable t) {
+            log.error("[RouteStore] Error compacting '"+routeStore.getFile()+"': "+t.getMessage(), t);
+        }
+    }
+
     protected byte nextSeq() {
         return ++seq;
     }
@@ -56,17 +151,21 @@ public class MessageDispatcherImpl implements MessageDispatcher {
         AbstractMessage message = null;
         while (running) {
             try {
-                writer.print("\n----------- ");
-                writer.println(dateFormatter.format(new Date(System.currentTimeMillis())));
+                if ( cfgRequested ) {
+                    cfgRequested = false;
+                    processMCfgRequest(writer, null);
+                }
+                //quiet networks report nothing, age their routes here
+                routeMap.expire(System.currentTimeMillis());
+                //route changes only append, the log is rewritten here off their locks
+                if ( routeStore != null && routeStore.isCompactNeeded() )
+                    compactRouteStore();
+                if ( log.isDebug() )
+                    log.debug("\n----------- "+dateFormatter.format(new Date(System.currentTimeMillis())));
                 MRFStartReceive startReceive = new MRFStartReceive(nextSeq());
                 startReceive.timeout = rfReadTimeout;
                 message = sendMessageAndReceive(startReceive);//result = null, NOK, RFRECV, OK_MESSAGE_INTERNAL, OK_MESSAGE_IGNORED
-                writer.print("\tReceived Message:\t");
-                if ( message != null )
-                    message.toString(writer, "\t\t", null, null);
-                else
-                    writer.print("<Timeout>");
-                writer.println();
+                log.log(Log.DEBUG, "\tReceived Message:\t", message, "\t\t", "<Timeout>");
                 if ( message != null ) {
                     switch ( message.getSubCode() ) {
                         case Constants.NS_SUBCODE_CFGREQUEST: processMCfgRequest(writer, (MConfigRequest) message); break;
@@ -80,11 +179,8 @@ public class MessageDispatcherImpl implements MessageDispatcher {
                         case SerialMessageConstants.SM_SUBCODE_NOK: break;
                     }
                 }
-                writer.println();
             } catch (Throwable t) {
-                writer.println("[MessageDispatcher] Error: " + t.getMessage());
-                t.printStackTrace(writer);
-                writer.flush();
+                log.error("[MessageDispatcher] Error: " + t.getMessage(), t);
 //                readMessagesAndDiscardAll();
 //                t.printStackTrace(writer);
             }
@@ -93,13 +189,13 @@ public class MessageDispatcherImpl implements MessageDispatcher {
 
     public void processMRFGetRoute(PrintWriter writer, MRFGetRoute message) throws Exception {
         Route route = null;
-        RouteList list = routeMap.getRouteList(message.dst, false);
-        if ( list != null ) {
-            int count = list.getRouteCount();
-            Route r = list.getRoute(message.index);
-            if ( r != null )
-                route = r;
-        }
+        //same ranking the preceding MRFGetRouteCount answered from, index 0 is the best known route
+        RouteList.Snapshot snapshot = routeMap.getPinnedSnapshot(message.dst, message.seq);
+        //none under this seq, rank and pin the way MRFGetRouteCount would have
+        if ( snapshot == null )
+            snapshot = routeMap.pinSnapshot(message.dst, message.seq, getOrderedSnapshot(message.dst));
+        if ( (message.index & 0xFF) < snapshot.getRouteCount() )
+            route = snapshot.getRoute(message.index & 0xFF);
         AbstractMessage result;
         if ( route == null ) {
             MNOK nok = new MNOK(message.seq);
@@ -110,37 +206,68 @@ public class MessageDispatcherImpl implements MessageDispatcher {
             msg.route = route;
             result = msg;
         }
-        writer.print("\tSending:\t");
-        result.toString(writer, "\t\t", null, null);
-        writer.println();
+        log.log(Log.DEBUG, "\tSending:\t", result, "\t\t", null);
         sendMessage(result);
     }
 
     public void processMRFGetRouteCount(PrintWriter writer, MRFGetRouteCount message) throws Exception {
         MRFGetRouteCountRes msg = new MRFGetRouteCountRes(message.seq);
-        RouteList list = routeMap.getRouteList(message.dst, false);
-        if ( list != null )
-            msg.count = (byte) list.getRouteCount();
-        writer.print("\tSending MRFGetRouteCountRes:\t");
-        msg.toString(writer, "\t\t", null, null);
-        writer.println();
+        //pinned so the MRFGetRoute calls that follow under this seq see the same routes in the same order
+        msg.count = (byte) routeMap.pinSnapshot(message.dst, message.seq, getOrderedSnapshot(message.dst)).getRouteCount();
+        log.log(Log.DEBUG, "\tSending MRFGetRouteCountRes:\t", msg, "\t\t", null);
         sendMessage(msg);
     }
 
+    //routes to dst as reported to the Controller: stored or synthesized, then ordered by the planner when set
+    protected RouteList.Snapshot getOrderedSnapshot(byte dst) {
+        RouteList.Snapshot snapshot = routeMap.getSnapshot(dst);
+        if ( snapshot.getRouteCount() == 0 )
+            snapshot = synthesizeRoute(dst, snapshot);
+        if ( planner != null )
+            snapshot = planner.order(dst, snapshot);
+        return snapshot;
+    }
+
     public void processMRFRouteFailed(PrintWriter writer, MRFRouteFailed message) {
-        writer.print("\tRoute failed: "+message);
+        log.debug("\tRoute failed: ", message);
         RouteList list = routeMap.getRouteList(message.route.dst, true);
-        Route route = list.getRoute(message.route, true, config.getNodeId());
-        message.route.addStatsFailed();
-        writer.flush();
+        //updates and re-ranks the stored copy, message.route may be a reused view
+        list.updateStats(message.route, false, true, config.getNodeId());
+        topology.update(message.route, false);
+        if ( log.isEnabled(Log.INFO) ) {
+            int weakest = topology.getWeakestLink(message.route);
+            if ( weakest >= 0 ) {
+                byte a = weakest == 0 ? message.route.src : message.route.getHop(weakest - 1);
+                byte b = weakest == message.route.hopCount ? message.route.dst : message.route.getHop(weakest);
+                if ( topology.isWeak(a, b) )
+                    log.info("\tWeak link: "+a+"-"+b+", reliability="+topology.getReliability(a, b)+", samples="+topology.getSamples(a, b));
+            }
+        }
+        routeMap.expire(System.currentTimeMillis());
+        if ( planner != null )
+            planner.topologyChanged();
     }
 
     public void processMRFRouteFound(PrintWriter writer, MRFRouteFound message) {
-        writer.print("\tRoute found: "+message);
+        log.debug("\tRoute found: ", message);
         RouteList list = routeMap.getRouteList(message.route.dst, true);
-        Route route = list.getRoute(message.route, true, config.getNodeId());
-        message.route.addStatsFound();
-        writer.flush();
+        //updates and re-ranks the stored copy, message.route may be a reused view
+        list.updateStats(message.route, true, true, config.getNodeId());
+        topology.update(message.route, true);
+        routeMap.expire(System.currentTimeMillis());
+        if ( planner != null )
+            planner.topologyChanged();
+    }
+
+    //the most reliable path over known links when no route to dst is stored, so the Controller gets a routed delivery
+    //instead of falling back to flood, as a snapshot of its own or the given one if there is no path
+    //the path is not stored, it only enters the route table once the Controller reports it
+    protected RouteList.Snapshot synthesizeRoute(byte dst, RouteList.Snapshot snapshot) {
+        Route route = topology.findRoute(config.getNodeId(), dst);
+        if ( route == null )
+            return snapshot;
+        log.debug("\tSynthesized route: ", route);
+        return RouteList.Snapshot.of(route);
     }
 
     public void processMCfgRequest(PrintWriter writer, MConfigRequest message) throws Exception {
@@ -150,53 +277,122 @@ public class MessageDispatcherImpl implements MessageDispatcher {
     public void processMRFReceive(PrintWriter writer, MRFReceive message) throws Exception {
         MRFReceiveACK ack = new MRFReceiveACK(message.seq);
         ack.datalen = 0;
-        writer.print("\tSending MRFReceiveACK:\t");
-        ack.toString(writer, "\t\t", null, null);
-        writer.println();
-        writer.flush();
+        log.log(Log.DEBUG, "\tSending MRFReceiveACK:\t", ack, "\t\t", null);
+        if ( pipeline != null ) {
+            //the listener has already handled any callbacks, this is the final answer
+            AbstractMessage result = pipeline.sendAndReceive(ack, consoleReadTimeout);
+            log.debug("[processMRFReceive] Message received: ", result);
+            if ( result != null && result.getSubCode() == Constants.NS_SUBCODE_CFGREQUEST )
+                processMCfgRequest(writer, (MConfigRequest) result);
+            log.debug("[processMRFReceive] Done");
+            return;
+        }
         sendMessage(ack);
         boolean finished = false;
         while (!finished) {
             MessageData data = readMessageUntil(consoleReadTimeout, message.seq);
             if ( data != null ) {
                 AbstractMessage result = adapter.deserialize(data);
-                writer.print("[processMRFReceive] Message received: ");
-                result.toString(writer, null, null, null);
-                writer.println();
-                writer.flush();
+                log.debug("[processMRFReceive] Message received: ", result);
                 if ( result != null ) {
                     switch ( result.getSubCode() ) {
                         case Constants.NS_SUBCODE_CFGREQUEST: processMCfgRequest(writer, (MConfigRequest) result); finished = true; break;
-                        case SerialMessageConstants.SM_SUBCODE_OK: writer.println("... [processMRFReceive] SM_SUBCODE_OK received"); finished = true; break;
-                        case Constants.NS_SUBCODE_INTERNAL: writer.println("... [processMRFReceive] NS_SUBCODE_INTERNAL received"); finished = true; break;
-                        case SerialMessageConstants.SM_SUBCODE_NOK: writer.println("... [processMRFReceive] SM_SUBCODE_NOK received"); finished = true; break;//throw exception?
+                        case SerialMessageConstants.SM_SUBCODE_OK: log.debug("... [processMRFReceive] SM_SUBCODE_OK received"); finished = true; break;
+                        case Constants.NS_SUBCODE_INTERNAL: log.debug("... [processMRFReceive] NS_SUBCODE_INTERNAL received"); finished = true; break;
+                        case SerialMessageConstants.SM_SUBCODE_NOK: log.debug("... [processMRFReceive] SM_SUBCODE_NOK received"); finished = true; break;//throw exception?
                     }
                 }
             }
         }
-        writer.println("[processMRFReceive] Done");
-        writer.flush();
+        log.debug("[processMRFReceive] Done");
     }
 
     @Override
     public void init() throws Exception {
-        readMessagesAndDiscardAll();
-        doConfigBasic();
-        doConfigNetwork();
+        if ( planner != null )
+            planner.start();
+        if ( pipeline != null ) {
+            pipeline.start();
+            //both configs are independent, only the RF init has to wait for them
+            CompletableFuture<AbstractMessage> basic = pipeline.sendAsync(newConfigBasic());
+            CompletableFuture<AbstractMessage> network = pipeline.sendAsync(newConfigNetwork());
+            checkConfigResponse("doConfigBasic", await(basic));
+            checkConfigResponse("doConfigNetwork", await(network));
+        } else {
+            readMessagesAndDiscardAll();
+            doConfigBasic();
+            doConfigNetwork();
+        }
         doRFInit();
     }
 
     @Override
     public void deinit() throws Exception {
         running = false;
-        doRFDeinit();
+        try {
+            doRFDeinit();
+        } finally {
+            if ( pipeline != null )
+                pipeline.stop();
+            if ( planner != null )
+                planner.stop();
+            if ( routeStore != null ) {
+                routeMap.setListener(null);
+                //changes dropped by a full log are only in the map
+                if ( routeStore.isCompactNeeded() )
+                    compactRouteStore();
+                routeStore.close();
+            }
+        }
+    }
+
+    //waits for a pipelined response, null on timeout
+    protected AbstractMessage await(CompletableFuture<AbstractMessage> future) throws Exception {
+        try {
+            return future.get(consoleReadTimeout + MessagePipeline.POLL_TIMEOUT * 2L, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            //the reader stopped before expiring it
+            future.cancel(false);
+            return null;
+        } catch (ExecutionException e) {
+            if ( e.getCause() instanceof TransportTimeoutException )
+                return null;
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    protected void checkConfigResponse(String name, AbstractMessage result) throws Exception {
+        log.log(Log.INFO, "["+name+"] Response: ", result, "\t\t", null);
+        if ( result == null || !(result instanceof MOK) )
+            throw new Exception("Error in "+name);
+    }
+
+    //callbacks the Controller sends during a pending request, handled straight on the pipeline reader thread
+    @Override
+    public boolean messageReceived(AbstractMessage message, MessageData data) throws Exception {
+        if ( message == null )
+            return false;
+        switch ( message.getSubCode() ) {
+            case Constants.NS_SUBCODE_RFROUTEFOUND: processMRFRouteFound(writer, (MRFRouteFound) message); return true;
+            case Constants.NS_SUBCODE_RFROUTEFAILED: processMRFRouteFailed(writer, (MRFRouteFailed) message); return true;
+            case Constants.NS_SUBCODE_RFGETROUTECOUNT: processMRFGetRouteCount(writer, (MRFGetRouteCount) message); return true;
+            case Constants.NS_SUBCODE_RFGETROUTE: processMRFGetRoute(writer, (MRFGetRoute) message); return true;
+            case Constants.NS_SUBCODE_CFGREQUEST:
+                //a response to a pending request is left to its caller, reconfiguring here would block the reader
+                if ( pipeline.getPendingCount() > 0 )
+                    return false;
+                if ( !isAutoCfgRequestAllowed() )
+                    throw new IllegalStateException("Received NS_SUBCODE_CFGREQUEST, but not allowed! Test run will fail!");
+                cfgRequested = true;
+                return true;
+        }
+        return false;
     }
 
     protected void doRFInit() throws Exception {
         MRFInit msg = new MRFInit(nextSeq());
         AbstractMessage result = sendMessageAndReceive(msg);
-        writer.print("[doRFInit] Response: ");
-        result.toString(writer, "\t\t", null, null);
+        log.log(Log.INFO, "[doRFInit] Response: ", result, "\t\t", null);
         if ( result == null || !(result instanceof MOK) )
             throw new Exception("Error sending MRFInit");
     }
@@ -204,39 +400,45 @@ public class MessageDispatcherImpl implements MessageDispatcher {
     protected void doRFDeinit() throws Exception {
         MRFDeinit msg = new MRFDeinit(nextSeq());
         AbstractMessage result = sendMessageAndReceive(msg);
-        writer.print("[MRFDenit] Response: ");
-        result.toString(writer, "\t\t", null, null);
+        log.log(Log.INFO, "[MRFDenit] Response: ", result, "\t\t", null);
         if ( result == null || !(result instanceof MOK) )
             throw new Exception("Error sending MRFDenit");
     }
 
-    protected void doConfigBasic() throws Exception {
+    protected MConfigBasic newConfigBasic() {
         MConfigBasic msg = new MConfigBasic(nextSeq());
         msg.nwkcaps = config.getNwkCaps();
         msg.delivery = config.getDelivery();
         msg.retry = config.retry;
-        AbstractMessage result = sendMessageAndReceive(msg);
-        writer.print("[doConfigBasic] Response: ");
-        if ( result != null )
-            result.toString(writer, "\t\t", null, null);
-        if ( result == null || !(result instanceof MOK) )
-            throw new Exception("Error sending MConfigBasic");
+        return msg;
     }
 
-    protected void doConfigNetwork() throws Exception {
+    protected MConfigNetwork newConfigNetwork() {
         MConfigNetwork msg = new MConfigNetwork(nextSeq());
         msg.nodeid = config.getNodeId();
         msg.nwkid = config.getNwkId();
         msg.channel = config.getChannel();
-        AbstractMessage result = sendMessageAndReceive(msg);
-        writer.print("[doConfigNetwork] Response: ");
-        if ( result != null )
-            result.toString(writer, "\t\t", null, null);
+        return msg;
+    }
+
+    protected void doConfigBasic() throws Exception {
+        AbstractMessage result = sendMessageAndReceive(newConfigBasic());
+        log.log(Log.INFO, "[doConfigBasic] Response: ", result, "\t\t", null);
+        if ( result == null || !(result instanceof MOK) )
+            throw new Exception("Error sending MConfigBasic");
+    }
+
+    protected void doConfigNetwork() throws Exception {
+        AbstractMessage result = sendMessageAndReceive(newConfigNetwork());
+        log.log(Log.INFO, "[doConfigNetwork] Response: ", result, "\t\t", null);
         if ( result == null || !(result instanceof MOK) )
             throw new Exception("Error sending MConfigNetwork");
     }
 
     protected void readMessagesAndDiscardAll() {
+        //the pipeline reader owns the input, anything stray is counted as unmatched there
+        if ( pipeline != null )
+            return;
         boolean hasMessages = true;
         int count = 0;//prevent endless loop for some unknown reason
         while ( hasMessages && count < MAX_READ_MSG_COUNT_PER_CALL) {
@@ -252,40 +454,28 @@ public class MessageDispatcherImpl implements MessageDispatcher {
     }
 
     protected void sendMessage(AbstractMessage msg) throws Exception {
-        writer.println("[sendMessage] Msg: "+msg);
-        msg.toString(writer, "\t\t", null, null);
-        writer.println();
-        writer.flush();
-        MessageData data = new MessageData();
-        msg.serialize(data);
-        transport.sendMessage(data);
-        writer.println("[sendMessage][DONE] Msg: " + msg);
+        log.log(Log.DEBUG, "[sendMessage] Msg: ", msg, "\t\t", null);
+        transport.sendMessage(msg);
+        log.trace("[sendMessage][DONE] Msg: ", msg);
     }
 
     protected AbstractMessage sendMessageAndReceive(AbstractMessage msg) throws Exception {
-        writer.println();
-        writer.println("[sendMessageAndReceive] Entered");
+        log.trace("\n[sendMessageAndReceive] Entered");
+        if ( pipeline != null ) {
+            log.debug("[sendMessageAndReceive] Msg: ", msg);
+            AbstractMessage result = pipeline.sendAndReceive(msg, consoleReadTimeout);
+            log.log(Log.DEBUG, "[sendMessageAndReceive] Received Message: ", result, "\t\t", "<Null or timeout>");
+            return result;
+        }
         readMessagesAndDiscardAll();
         sendMessage(msg);
-        writer.println("[sendMessageAndReceive] Receiving with timeout: " + consoleReadTimeout);
+        if ( log.isTrace() )
+            log.trace("[sendMessageAndReceive] Receiving with timeout: " + consoleReadTimeout);
         MessageData data = readMessageUntil(consoleReadTimeout, msg.seq);
-        writer.print("[sendMessageAndReceive] Received Data: ");
-        if ( data != null )
-            data.toString(writer, "\t\t", null, null);
-        else
-            writer.print("<Null or timeout>");
-        writer.println();
-        writer.flush();
+        log.log(Log.TRACE, "[sendMessageAndReceive] Received Data: ", data, "\t\t", "<Null or timeout>");
         AbstractMessage result = data == null ? null : adapter.deserialize(data);
-        writer.print("[sendMessageAndReceive] Received Message: ");
-        if ( result != null )
-            result.toString(writer, "\t\t", null, null);
-        else
-            writer.println("<Null or timeout>");
-        writer.println();
-        writer.println("[sendMessageAndReceive] Exited");
-        writer.println();
-        writer.flush();
+        log.log(Log.DEBUG, "[sendMessageAndReceive] Received Message: ", result, "\t\t", "<Null or timeout>");
+        log.trace("[sendMessageAndReceive] Exited\n");
         return result;
     }
 
@@ -298,7 +488,7 @@ public class MessageDispatcherImpl implements MessageDispatcher {
         }
         readMessagesAndDiscardAll();
         if ( !result ) {
-            writer.println("Received NS_SUBCODE_CFGREQUEST, but not allowed! Test run will fail!");
+            log.log(Log.ERROR, "Received NS_SUBCODE_CFGREQUEST, but not allowed! Test run will fail!");
             throw new IllegalStateException("Received NS_SUBCODE_CFGREQUEST, but not allowed! Test run will fail!");
         }
         return result;
@@ -332,23 +522,17 @@ public class MessageDispatcherImpl implements MessageDispatcher {
                         if (message != null && message.getSubCode() == Constants.NS_SUBCODE_CFGREQUEST) {
                             breakout = autoConfig(message);
                         } else {
-                            writer.println("<Unexpected message> " + message);
-                            if (message != null)
-                                message.toString(writer, null, null, null);
-                            writer.println();
-                            writer.flush();
+                            log.log(Log.WARN, "<Unexpected message> ", message);
                         }
                     }
                     if ( breakout )
                         break;
                 }
             } catch (TransportTimeoutException e) {
-                writer.println("*** Transport timeout error: "+e.getMessage());
-                writer.flush();
+                if ( log.isEnabled(Log.WARN) )
+                    log.warn("*** Transport timeout error: "+e.getMessage());
             } catch (Exception e) {
-                writer.println("*** Read error: "+e.getMessage());
-                e.printStackTrace(writer);
-                writer.flush();
+                log.error("*** Read error: "+e.getMessage(), e);
             }
             //invoked here to ensure at least one read in case readTimeout is really low or zero
             if (System.currentTimeMillis() - start >= readTimeout)
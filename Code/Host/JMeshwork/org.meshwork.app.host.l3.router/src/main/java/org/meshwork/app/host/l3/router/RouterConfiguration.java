@@ -1,6 +1,11 @@
 package org.meshwork.app.host.l3.router;
 
+import org.meshwork.core.host.l3.LFURouteEvictionPolicy;
+import org.meshwork.core.host.l3.LRURouteEvictionPolicy;
+import org.meshwork.core.host.l3.RouteEvictionPolicy;
+import org.meshwork.core.host.l3.RoutePlanner;
 import org.meshwork.core.util.Converter;
+import org.meshwork.core.util.Log;
 
 import java.io.InputStream;
 import java.util.Properties;
@@ -20,6 +25,25 @@ public class RouterConfiguration {
     public static final String CONFIG_KEY_CHANNEL    = "router.channel";
     public static final String CONFIG_KEY_CONSOLE_READ_TIMEOUT    = "router.console.read.timeout";
     public static final String CONFIG_KEY_RF_READ_TIMEOUT    = "router.rf.read.timeout";
+    //optional, requests in flight at once, 0 keeps the synchronous send-and-wait mode
+    public static final String CONFIG_KEY_PIPELINE_WINDOW    = "router.pipeline.window";
+    //optional, off|error|warn|info|debug|trace or 0-5, per-message dumps are debug and above
+    public static final String CONFIG_KEY_LOG_LEVEL    = "router.log.level";
+    public static final int DEFAULT_LOG_LEVEL = Log.DEBUG;
+    //optional, file the route table and its stats are kept in across restarts, unset keeps routes in memory only
+    public static final String CONFIG_KEY_ROUTE_STORE    = "router.route.store";
+    //optional, most routes kept per destination, 0 means unbounded
+    public static final String CONFIG_KEY_ROUTE_MAX    = "router.route.max";
+    //optional, milliseconds a route is kept without a found/failed report, 0 means forever
+    public static final String CONFIG_KEY_ROUTE_TTL    = "router.route.ttl";
+    //optional, lru|lfu, which route a full destination drops for a new one
+    public static final String CONFIG_KEY_ROUTE_EVICTION    = "router.route.eviction";
+    //optional, independent routes kept per destination for retries, 0 turns the route planner off
+    public static final String CONFIG_KEY_PLANNER_ROUTES    = "router.planner.routes";
+    //optional, link|node, what planned routes may not share
+    public static final String CONFIG_KEY_PLANNER_DISJOINT    = "router.planner.disjoint";
+    //optional, milliseconds between planning rounds when no route reports arrive
+    public static final String CONFIG_KEY_PLANNER_INTERVAL    = "router.planner.interval";
 
     //MConfigBasic
     protected byte nwkcaps;
@@ -36,6 +60,15 @@ public class RouterConfiguration {
 
     //Serial
     protected int consoleReadTimeout;
+    protected int pipelineWindow;
+    protected int logLevel = DEFAULT_LOG_LEVEL;
+    protected String routeStore;
+    protected int routeMax;
+    protected long routeTTL;
+    protected RouteEvictionPolicy routeEviction = LRURouteEvictionPolicy.INSTANCE;
+    protected int plannerRoutes;
+    protected boolean plannerNodeDisjoint;
+    protected int plannerInterval = RoutePlanner.DEFAULT_INTERVAL;
 
     public RouterConfiguration() {
     }
@@ -61,6 +94,35 @@ public class RouterConfiguration {
         channel = Converter.toByte(CONFIG_KEY_CHANNEL, p.getProperty(CONFIG_KEY_CHANNEL));
         consoleReadTimeout = Converter.toInt(CONFIG_KEY_CONSOLE_READ_TIMEOUT, p.getProperty(CONFIG_KEY_CONSOLE_READ_TIMEOUT));
         rfReadTimeout = Converter.toInt(CONFIG_KEY_RF_READ_TIMEOUT, p.getProperty(CONFIG_KEY_RF_READ_TIMEOUT));
+        if ( p.getProperty(CONFIG_KEY_PIPELINE_WINDOW) != null )
+            pipelineWindow = Converter.toInt(CONFIG_KEY_PIPELINE_WINDOW, p.getProperty(CONFIG_KEY_PIPELINE_WINDOW));
+        if ( p.getProperty(CONFIG_KEY_LOG_LEVEL) != null )
+            logLevel = Log.parseLevel(p.getProperty(CONFIG_KEY_LOG_LEVEL));
+        if ( p.getProperty(CONFIG_KEY_ROUTE_STORE) != null && p.getProperty(CONFIG_KEY_ROUTE_STORE).trim().length() > 0 )
+            routeStore = p.getProperty(CONFIG_KEY_ROUTE_STORE).trim();
+        if ( p.getProperty(CONFIG_KEY_ROUTE_MAX) != null )
+            routeMax = Converter.toInt(CONFIG_KEY_ROUTE_MAX, p.getProperty(CONFIG_KEY_ROUTE_MAX));
+        if ( p.getProperty(CONFIG_KEY_ROUTE_TTL) != null )
+            routeTTL = Converter.toInt(CONFIG_KEY_ROUTE_TTL, p.getProperty(CONFIG_KEY_ROUTE_TTL));
+        if ( p.getProperty(CONFIG_KEY_ROUTE_EVICTION) != null ) {
+            String eviction = p.getProperty(CONFIG_KEY_ROUTE_EVICTION).trim().toLowerCase();
+            if ( "lru".equals(eviction) )
+                routeEviction = LRURouteEvictionPolicy.INSTANCE;
+            else if ( "lfu".equals(eviction) )
+                routeEviction = LFURouteEvictionPolicy.INSTANCE;
+            else
+                throw new IllegalArgumentException("Invalid "+CONFIG_KEY_ROUTE_EVICTION+": "+eviction);
+        }
+        if ( p.getProperty(CONFIG_KEY_PLANNER_ROUTES) != null )
+            plannerRoutes = Converter.toInt(CONFIG_KEY_PLANNER_ROUTES, p.getProperty(CONFIG_KEY_PLANNER_ROUTES));
+        if ( p.getProperty(CONFIG_KEY_PLANNER_DISJOINT) != null ) {
+            String disjoint = p.getProperty(CONFIG_KEY_PLANNER_DISJOINT).trim().toLowerCase();
+            if ( !"link".equals(disjoint) && !"node".equals(disjoint) )
+                throw new IllegalArgumentException("Invalid "+CONFIG_KEY_PLANNER_DISJOINT+": "+disjoint);
+            plannerNodeDisjoint = "node".equals(disjoint);
+        }
+        if ( p.getProperty(CONFIG_KEY_PLANNER_INTERVAL) != null )
+            plannerInterval = Converter.toInt(CONFIG_KEY_PLANNER_INTERVAL, p.getProperty(CONFIG_KEY_PLANNER_INTERVAL));
     }
 
     public byte getNodeId() {
@@ -91,6 +153,24 @@ public class RouterConfiguration {
 
     public int getRFReadTimeout() { return rfReadTimeout; }
 
+    public int getPipelineWindow() { return pipelineWindow; }
+
+    public int getLogLevel() { return logLevel; }
+
+    public String getRouteStore() { return routeStore; }
+
+    public int getRouteMax() { return routeMax; }
+
+    public long getRouteTTL() { return routeTTL; }
+
+    public RouteEvictionPolicy getRouteEviction() { return routeEviction; }
+
+    public int getPlannerRoutes() { return plannerRoutes; }
+
+    public boolean isPlannerNodeDisjoint() { return plannerNodeDisjoint; }
+
+    public int getPlannerInterval() { return plannerInterval; }
+
     public void setNwkCaps(byte nwkcaps) {
         this.nwkcaps = nwkcaps;
     }
@@ -123,4 +203,40 @@ public class RouterConfiguration {
         this.consoleReadTimeout = consoleReadTimeout;
     }
 
+    public void setPipelineWindow(int pipelineWindow) {
+        this.pipelineWindow = pipelineWindow;
+    }
+
+    public void setLogLevel(int logLevel) {
+        this.logLevel = logLevel;
+    }
+
+    public void setRouteStore(String routeStore) {
+        this.routeStore = routeStore;
+    }
+
+    public void setRouteMax(int routeMax) {
+        this.routeMax = routeMax;
+    }
+
+    public void setRouteTTL(long routeTTL) {
+        this.routeTTL = routeTTL;
+    }
+
+    public void setRouteEviction(RouteEvictionPolicy routeEviction) {
+        this.routeEviction = routeEviction;
+    }
+
+    public void setPlannerRoutes(int plannerRoutes) {
+        this.plannerRoutes = plannerRoutes;
+    }
+
+    public void setPlannerNodeDisjoint(boolean plannerNodeDisjoint) {
+        this.plannerNodeDisjoint = plannerNodeDisjoint;
+    }
+
+    public void setPlannerInterval(int plannerInterval) {
+        this.plannerInterval = plannerInterval;
+    }
+
 }
@@ -4,11 +4,19 @@ import org.meshwork.app.host.l3.router.MessageDispatcherImpl;
 import org.meshwork.app.host.l3.router.Router;
 import org.meshwork.app.host.l3.router.RouterConfiguration;
 import org.meshwork.core.AbstractMessageTransport;
+import org.meshwork.core.emulator.l3.EmulatedNetwork;
+import org.meshwork.core.emulator.l3.IdealNetwork;
+import org.meshwork.core.emulator.l3.NetworkSerialEmulator;
 import org.meshwork.core.host.l3.MessageAdapter;
+import org.meshwork.core.simulator.l3.MeshSimulator;
+import org.meshwork.core.simulator.l3.SimulatorConfiguration;
 import org.meshwork.core.transport.serial.jssc.SerialConfiguration;
+import org.meshwork.core.transport.loopback.LoopbackConfiguration;
+import org.meshwork.core.transport.loopback.LoopbackMessageTransport;
 import org.meshwork.core.transport.serial.jssc.SerialMessageTransport;
 
 import java.io.*;
+import java.util.Properties;
 
 /**
  * Created by Sinisha Djukic on 14-2-25.
@@ -21,6 +29,12 @@ public abstract class AbstractConsole {
     public static final int EXIT_INITIALIZATION_ERROR           = 30;
 
     public String[] args;
+    //loopback.* keys of the serial config file, used when the device is LoopbackMessageTransport.DEVICE_NAME
+    protected LoopbackConfiguration loopbackConfig = new LoopbackConfiguration();
+    //sim.* keys of the serial config file, used when the device is MeshSimulator.DEVICE_NAME
+    protected SimulatorConfiguration simulatorConfig = new SimulatorConfiguration();
+    //Controller on the peer end of the loopback pair when the device is NetworkSerialEmulator.DEVICE_NAME or MeshSimulator.DEVICE_NAME
+    protected NetworkSerialEmulator emulator;
 
     public static void closeSilently(InputStream is) {
         try {
@@ -42,6 +56,9 @@ public abstract class AbstractConsole {
         System.out.println("       <router config>=<file name>");
         System.out.println("       <serial config>=<file name>");
         System.out.println("       <serial device>=<device name/path");
+        System.out.println("                       or "+LoopbackMessageTransport.DEVICE_NAME+" for an in-memory pair, see loopback.* keys");
+        System.out.println("                       or "+NetworkSerialEmulator.DEVICE_NAME+" for an emulated Controller on such a pair");
+        System.out.println("                       or "+MeshSimulator.DEVICE_NAME+" for an emulated Controller in a simulated mesh, see sim.* keys");
         System.out.println("Example: router.cfg serial.cfg /dev/ttyUSB0");
         System.out.println("Note that all configs can point to the same file.");
         System.out.println();
@@ -68,6 +85,8 @@ public abstract class AbstractConsole {
             this.args = args;
             RouterConfiguration routerConfig = initRouterConfiguration(args[0].trim());
             SerialConfiguration serialConfig = initSerialConfiguration(args[1].trim());
+            loopbackConfig = initLoopbackConfiguration(args[1].trim());
+            simulatorConfig = initSimulatorConfiguration(args[1].trim());
             AbstractMessageTransport transport = initTransport(serialConfig, args[args.length-1]);
             initApp(routerConfig, serialConfig, transport, System.out);
         } catch (Throwable t) {
@@ -77,7 +96,10 @@ public abstract class AbstractConsole {
     }
 
     protected void initApp(RouterConfiguration routerConfig, SerialConfiguration serialConfig, AbstractMessageTransport transport, PrintStream ps) throws Exception {
-        MessageAdapter adapter = initMessageAdapter();
+        MessageAdapter adapter = initMessageAdapter(routerConfig);
+        //views are done with each frame before the next read, so the frames can be reused as well
+        if ( transport instanceof SerialMessageTransport )
+            ((SerialMessageTransport) transport).setReuseFrames(isViews(routerConfig));
         PrintWriter writer = initPrintWriter(ps, true);
         MessageDispatcherImpl dispatcher = initMessageDispatcher(adapter, transport, routerConfig, writer);
         Router router = initRouter();
@@ -95,8 +117,13 @@ public abstract class AbstractConsole {
 
     protected abstract MessageDispatcherImpl initMessageDispatcher(MessageAdapter adapter, AbstractMessageTransport transport, RouterConfiguration routerConfig, PrintWriter writer) throws Exception;
 
-    protected MessageAdapter initMessageAdapter() {
-        return new MessageAdapter();
+    //received messages are decoded into reusable views unless the pipeline reader hands them to other threads
+    protected MessageAdapter initMessageAdapter(RouterConfiguration routerConfig) {
+        return new MessageAdapter(isViews(routerConfig));
+    }
+
+    protected boolean isViews(RouterConfiguration routerConfig) {
+        return routerConfig.getPipelineWindow() < 1;
     }
 
     public static InputStream getInputStream(String configFile) {
@@ -111,12 +138,80 @@ public abstract class AbstractConsole {
         return fis;
     }
 
-    protected SerialMessageTransport initTransport(SerialConfiguration serialConfig, String port) throws Exception {
+    //the loopback device gives the host end of a new pair, nothing answers on the peer end unless attached to it
+    protected AbstractMessageTransport initTransport(SerialConfiguration serialConfig, String port) throws Exception {
+        if ( LoopbackMessageTransport.DEVICE_NAME.equals(port) )
+            return LoopbackMessageTransport.createPair(loopbackConfig);
+        if ( NetworkSerialEmulator.DEVICE_NAME.equals(port) || MeshSimulator.DEVICE_NAME.equals(port) ) {
+            LoopbackMessageTransport result = LoopbackMessageTransport.createPair(loopbackConfig);
+            emulator = initEmulator(result.getPeer(), initEmulatedNetwork(port));
+            emulator.start();
+            return result;
+        }
         SerialMessageTransport result = new SerialMessageTransport();
         result.init(serialConfig, port);
         return result;
     }
 
+    protected NetworkSerialEmulator initEmulator(AbstractMessageTransport transport, EmulatedNetwork network) {
+        return new NetworkSerialEmulator(network, transport);
+    }
+
+    protected EmulatedNetwork initEmulatedNetwork(String port) {
+        if ( MeshSimulator.DEVICE_NAME.equals(port) )
+            return new MeshSimulator(simulatorConfig);
+        return new IdealNetwork();
+    }
+
+    protected SimulatorConfiguration initSimulatorConfiguration(String config) throws Exception {
+        SimulatorConfiguration result = null;
+        InputStream is = null;
+        try {
+            result = new SimulatorConfiguration();
+            result.loadConfiguration(is = getInputStream(config));
+        } catch (Throwable t) {
+            exit(EXIT_CONFIG_FILE_ERROR, "Error parsing simulator configuration file '"+config+"' due to: "+t.getMessage());
+        } finally {
+            if ( is != null )
+                closeSilently(is);
+        }
+        return result;
+    }
+
+    //all keys of the given files, later files override earlier ones
+    protected Properties loadProperties(String... configs) {
+        Properties result = new Properties();
+        for ( String config : configs ) {
+            InputStream is = null;
+            try {
+                is = getInputStream(config.trim());
+                if ( is != null )
+                    result.load(is);
+            } catch (Throwable t) {
+                exit(EXIT_CONFIG_FILE_ERROR, "Error reading configuration file '"+config+"' due to: "+t.getMessage());
+            } finally {
+                if ( is != null )
+                    closeSilently(is);
+            }
+        }
+        return result;
+    }
+
+    protected LoopbackConfiguration initLoopbackConfiguration(String config) throws Exception {
+        LoopbackConfiguration result = null;
+        InputStream is = null;
+        try {
+            result = new LoopbackConfiguration();
+            result.loadConfiguration(is = getInputStream(config));
+        } catch (Throwable t) {
+            exit(EXIT_CONFIG_FILE_ERROR, "Error parsing loopback configuration file '"+config+"' due to: "+t.getMessage());
+        } finally {
+            if ( is != null )
+                closeSilently(is);
+        }
+        return result;
+    }
+
     protected RouterConfiguration initRouterConfiguration(String config) throws Exception {
         RouterConfiguration result = null;
         InputStream is = null;
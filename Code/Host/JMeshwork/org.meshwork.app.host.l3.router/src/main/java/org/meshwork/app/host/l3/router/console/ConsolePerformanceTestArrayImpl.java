@@ -9,6 +9,7 @@ import org.meshwork.core.transport.serial.jssc.SerialConfiguration;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Properties;
 
 /**
  * Created by Sinisha Djukic on 14-2-25.
@@ -75,6 +76,9 @@ public class ConsolePerformanceTestArrayImpl extends AbstractConsole {
         tests.add(floodStats);
         TestSummaryStats summaryStats = new TestSummaryStats(tests);
         PerfMessageDispatcherImpl result = new PerfMessageDispatcherImpl(adapter, transport, routerConfig, writer, summaryStats);
+        Properties config = loadProperties(args[0], args[1], args[2]);
+        if ( config.getProperty(TestResults.CONFIG_KEY_RESULTS) != null )
+            result.setResultsFile(new File(config.getProperty(TestResults.CONFIG_KEY_RESULTS).trim()), config);
 
         byte nodes = 0;
         int testNodeCount = args.length - 4;//last param is the test router node, so exclude it
@@ -4,11 +4,15 @@ import org.meshwork.app.host.l3.router.MessageDispatcherImpl;
 import org.meshwork.app.host.l3.router.RouterConfiguration;
 import org.meshwork.app.host.l3.router.console.perf.*;
 import org.meshwork.core.AbstractMessageTransport;
+import org.meshwork.core.emulator.l3.NetworkSerialEmulator;
 import org.meshwork.core.host.l3.MessageAdapter;
+import org.meshwork.core.simulator.l3.MeshSimulator;
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Properties;
 
 /**
  * Created by Sinisha Djukic on 14-2-25.
@@ -28,6 +32,8 @@ public class ConsolePerformanceTestImpl extends AbstractConsole {
         System.out.println("       <serial config>=<file name>");
         System.out.println("       <test config>=<file name>");
         System.out.println("       <serial device>=<device name/path>");
+        System.out.println("                       or "+NetworkSerialEmulator.DEVICE_NAME+" to profile the host against an emulated Controller");
+        System.out.println("                       or "+MeshSimulator.DEVICE_NAME+" to run the tests in a simulated mesh, see sim.* keys");
         System.out.println("Example: router.cfg serial.cfg perftest.cfg /dev/ttyUSB0");
         System.out.println("Note that all configs can point to the same file.");
         System.out.println();
@@ -74,7 +80,11 @@ public class ConsolePerformanceTestImpl extends AbstractConsole {
         tests.add(routedStats);
         tests.add(floodStats);
         TestSummaryStats summaryStats = new TestSummaryStats(tests);
-        return new PerfMessageDispatcherImpl(adapter, transport, routerConfig, writer, summaryStats);
+        PerfMessageDispatcherImpl result = new PerfMessageDispatcherImpl(adapter, transport, routerConfig, writer, summaryStats);
+        Properties config = loadProperties(args[0], args[1], args[2]);
+        if ( config.getProperty(TestResults.CONFIG_KEY_RESULTS) != null )
+            result.setResultsFile(new File(config.getProperty(TestResults.CONFIG_KEY_RESULTS).trim()), config);
+        return result;
     }
 
 }
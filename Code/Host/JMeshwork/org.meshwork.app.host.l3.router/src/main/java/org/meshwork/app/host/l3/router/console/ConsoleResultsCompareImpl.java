@@ -0,0 +1,141 @@
+package org.meshwork.app.host.l3.router.console;
+
+import org.meshwork.app.host.l3.router.console.perf.TestResults;
+
+import java.io.File;
+import java.io.PrintWriter;
+
+/**
+ * Compares two TestResults files and exits with EXIT_REGRESSION when the candidate has lower throughput or higher
+ * tail latency than the baseline beyond the given thresholds, so it can gate upgrades in scripts.
+ * Nothing is sent to a Controller, so unlike the AbstractConsole apps this one has no dispatcher. Its other exit codes
+ * are the AbstractConsole ones.
+ */
+public class ConsoleResultsCompareImpl {
+
+    public static final int EXIT_REGRESSION                     = 40;
+
+    public static final double DEFAULT_THROUGHPUT_THRESHOLD     = 10;//%
+    public static final double DEFAULT_LATENCY_THRESHOLD        = 20;//%
+    public static final double DEFAULT_LATENCY_FLOOR            = 1;//ms
+
+    //tail percentiles checked for every test and destination node
+    public static final String[] LATENCY_KEYS = {TestResults.KEY_P99, TestResults.KEY_P999};
+
+    protected double throughputThreshold = DEFAULT_THROUGHPUT_THRESHOLD;
+    protected double latencyThreshold = DEFAULT_LATENCY_THRESHOLD;
+    //latency changes below this are jitter, whatever the percentage
+    protected double latencyFloor = DEFAULT_LATENCY_FLOOR;
+    protected int regressionCount;
+
+    public static void main(String[] args) {
+        new ConsoleResultsCompareImpl().run(args);
+    }
+
+    public ConsoleResultsCompareImpl() {
+    }
+
+    protected void printUsage() {
+        System.out.println("Usage: <baseline results> <candidate results> [<throughput threshold> [<latency threshold> [<latency floor>]]]");
+        System.out.println("       <baseline results>=<file name> written by a perf test, see "+TestResults.CONFIG_KEY_RESULTS);
+        System.out.println("       <candidate results>=<file name>");
+        System.out.println("       <throughput threshold>=<max throughput drop in %>, default "+DEFAULT_THROUGHPUT_THRESHOLD);
+        System.out.println("       <latency threshold>=<max p99 and p99.9 latency rise in %>, default "+DEFAULT_LATENCY_THRESHOLD);
+        System.out.println("       <latency floor>=<latency rise in ms always accepted>, default "+DEFAULT_LATENCY_FLOOR);
+        System.out.println("Example: baseline.csv candidate.csv 5 10");
+        System.out.println("Exits with "+EXIT_REGRESSION+" if any regression is found.");
+        System.out.println();
+    }
+
+    protected void checkParams(String[] args) {
+        if ( args == null || args.length == 0 || "-h".equalsIgnoreCase(args[0]) || "-help".equalsIgnoreCase(args[0]) || args.length < 2 || args.length > 5 ) {
+            printUsage();
+            AbstractConsole.exit(AbstractConsole.EXIT_USAGE, null);
+        }
+    }
+
+    protected void printAppHeader() {
+        System.out.println("L3 Performance Results Compare App");
+        System.out.println("Copyleft 2014, Meshwork Project, Sinisha Djukic");
+    }
+
+    public void run(String[] args) {
+        printAppHeader();
+        checkParams(args);
+        initThresholds(args);
+        compare(readResults(args[0].trim()), readResults(args[1].trim()));
+        AbstractConsole.exit(regressionCount > 0 ? EXIT_REGRESSION : AbstractConsole.EXIT_OK, null);
+    }
+
+    protected void initThresholds(String[] args) {
+        try {
+            if ( args.length > 2 )
+                throughputThreshold = Double.parseDouble(args[2].trim());
+            if ( args.length > 3 )
+                latencyThreshold = Double.parseDouble(args[3].trim());
+            if ( args.length > 4 )
+                latencyFloor = Double.parseDouble(args[4].trim());
+        } catch (NumberFormatException e) {
+            AbstractConsole.exit(AbstractConsole.EXIT_USAGE, "Invalid threshold due to: "+e.getMessage());
+        }
+    }
+
+    //prints every comparison and counts the regressions
+    protected void compare(TestResults baseline, TestResults candidate) {
+        PrintWriter writer = new PrintWriter(System.out, true);
+        writer.println("Throughput threshold (%): "+throughputThreshold+", latency threshold (%): "+latencyThreshold+", latency floor (ms): "+latencyFloor);
+        writer.println("-------------------");
+        for ( String test : baseline.getTests() ) {
+            writer.println("Test Name: "+test);
+            if ( !candidate.getTests().contains(test) ) {
+                writer.println("\tMissing in the candidate\tREGRESSION");
+                regressionCount ++;
+                continue;
+            }
+            compareThroughput(writer, baseline, candidate, test);
+            compareLatency(writer, baseline, candidate, test, TestResults.NODE_ALL);
+            for ( String node : baseline.getNodes(test) )
+                compareLatency(writer, baseline, candidate, test, node);
+            writer.println();
+        }
+        writer.println("Regressions: "+regressionCount);
+        writer.flush();
+    }
+
+    protected TestResults readResults(String file) {
+        try {
+            return TestResults.read(new File(file));
+        } catch (Throwable t) {
+            AbstractConsole.exit(AbstractConsole.EXIT_CONFIG_FILE_ERROR, "Error reading results file '"+file+"' due to: "+t.getMessage());
+        }
+        return null;
+    }
+
+    protected void compareThroughput(PrintWriter writer, TestResults baseline, TestResults candidate, String test) {
+        double before = baseline.getDouble(TestResults.TYPE_COUNTER, test, TestResults.NODE_ALL, TestResults.KEY_THROUGHPUT);
+        double after = candidate.getDouble(TestResults.TYPE_COUNTER, test, TestResults.NODE_ALL, TestResults.KEY_THROUGHPUT);
+        boolean regression = before > 0 && !(after >= before * (1 - throughputThreshold / 100));
+        printComparison(writer, "Throughput (msg/s)", before, after, regression);
+    }
+
+    //missing percentiles in the candidate only count when the baseline had any
+    protected void compareLatency(PrintWriter writer, TestResults baseline, TestResults candidate, String test, String node) {
+        String name = TestResults.NODE_ALL.equals(node) ? "Latency" : "Node "+node;
+        for ( String key : LATENCY_KEYS ) {
+            double before = baseline.getDouble(TestResults.TYPE_LATENCY, test, node, key) / 1000;
+            double after = candidate.getDouble(TestResults.TYPE_LATENCY, test, node, key) / 1000;
+            if ( Double.isNaN(before) )
+                continue;
+            boolean regression = !(after <= before * (1 + latencyThreshold / 100) || after - before <= latencyFloor);
+            printComparison(writer, name+" "+key+" (ms)", before, after, regression);
+        }
+    }
+
+    protected void printComparison(PrintWriter writer, String name, double before, double after, boolean regression) {
+        String change = before == 0 || Double.isNaN(after) ? "" : String.format(" (%+.1f%%)", 100 * (after - before) / before);
+        writer.println("\t"+String.format("%24s", name)+": "+before+" -> "+after+change+(regression ? "\tREGRESSION" : ""));
+        if ( regression )
+            regressionCount ++;
+    }
+
+}
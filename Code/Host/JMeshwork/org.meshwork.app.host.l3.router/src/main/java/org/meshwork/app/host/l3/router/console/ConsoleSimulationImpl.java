@@ -0,0 +1,116 @@
+package org.meshwork.app.host.l3.router.console;
+
+import org.meshwork.app.host.l3.router.console.perf.SimulationReport;
+import org.meshwork.app.host.l3.router.console.perf.SimulationScenario;
+import org.meshwork.app.host.l3.router.console.perf.SimulationTask;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs the performance tests of any number of scenarios in simulated meshes, in parallel, and prints one report.
+ * Every run builds its own router, so unlike the AbstractConsole apps this one has no dispatcher of its own. It uses
+ * the same exit codes.
+ */
+public class ConsoleSimulationImpl {
+
+    //0 for one worker per core
+    protected int parallelism;
+    protected final ArrayList<SimulationScenario> scenarios = new ArrayList<SimulationScenario>();
+
+    public static void main(String[] args) {
+        new ConsoleSimulationImpl().run(args);
+    }
+
+    public ConsoleSimulationImpl() {
+    }
+
+    protected void printUsage() {
+        System.out.println("Usage: <parallelism> <scenario config> [<scenario config> ...]");
+        System.out.println("       <parallelism>=<worker count>, 0 for one per core");
+        System.out.println("       <scenario config>=<file name> with the router.*, sim.* and perftest.* keys");
+        System.out.println("Example: 0 grid.cfg random.cfg");
+        System.out.println("Each scenario runs "+SimulationScenario.CONFIG_KEY_RUNS+" times, every run logs to "+SimulationTask.LOG_DIR);
+        System.out.println();
+    }
+
+    protected void checkParams(String[] args) {
+        if ( args == null || args.length == 0 || "-h".equalsIgnoreCase(args[0]) || "-help".equalsIgnoreCase(args[0]) || args.length < 2 ) {
+            printUsage();
+            AbstractConsole.exit(AbstractConsole.EXIT_USAGE, null);
+        }
+    }
+
+    protected void printAppHeader() {
+        System.out.println("L3 Simulation Host App");
+        System.out.println("Copyleft 2014, Meshwork Project, Sinisha Djukic");
+    }
+
+    protected void printFinishedMessage() {
+        System.out.println("L3 Simulation finished!");
+        System.out.println();
+    }
+
+    public void run(String[] args) {
+        printAppHeader();
+        checkParams(args);
+        initScenarios(args);
+        runScenarios();
+        printFinishedMessage();
+        AbstractConsole.exit(AbstractConsole.EXIT_OK, null);
+    }
+
+    //parallelism and one scenario per config file
+    protected void initScenarios(String[] args) {
+        try {
+            parallelism = Integer.parseInt(args[0].trim());
+            if ( parallelism < 0 )
+                throw new IllegalArgumentException("Parallelism cannot be negative: "+parallelism);
+        } catch (Throwable t) {
+            AbstractConsole.exit(AbstractConsole.EXIT_USAGE, "Invalid parallelism '"+args[0]+"' due to: "+t.getMessage());
+        }
+        for ( int i = 1; i < args.length; i ++ ) {
+            String config = args[i].trim();
+            try {
+                SimulationScenario scenario = new SimulationScenario(config, i - 1);
+                scenario.loadConfiguration(new File(config));
+                scenarios.add(scenario);
+            } catch (Throwable t) {
+                AbstractConsole.exit(AbstractConsole.EXIT_CONFIG_FILE_ERROR, "Error parsing scenario configuration file '"+config+"' due to: "+t.getMessage());
+            }
+        }
+    }
+
+    protected void runScenarios() {
+        PrintWriter writer = new PrintWriter(System.out, true);
+        ForkJoinPool pool = parallelism == 0 ? new ForkJoinPool() : new ForkJoinPool(parallelism);
+        try {
+            writer.println("Running "+scenarios.size()+" scenarios on "+pool.getParallelism()+" workers...");
+            writer.flush();
+            long start = System.currentTimeMillis();
+            SimulationReport report = pool.invoke(new SimulationTask(scenarios));
+            writer.println();
+            writer.println("======================================");
+            writer.println("SIMULATION REPORT");
+            report.printReport(writer);
+            writer.println("Total wall time (ms): "+(System.currentTimeMillis() - start));
+            writer.println("======================================");
+            for ( SimulationScenario scenario : scenarios ) {
+                File results = scenario.getResultsFile();
+                if ( results == null )
+                    continue;
+                report.createResults(scenario).write(results);
+                writer.println("Results of '"+scenario.getName()+"' written to: "+results.getAbsolutePath());
+            }
+            writer.flush();
+        } catch (Throwable t) {
+            t.printStackTrace();
+            AbstractConsole.exit(AbstractConsole.EXIT_INITIALIZATION_ERROR, "Error running scenarios due to: "+t.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
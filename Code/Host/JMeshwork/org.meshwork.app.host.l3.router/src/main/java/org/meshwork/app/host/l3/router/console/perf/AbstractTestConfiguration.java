@@ -1,20 +1,49 @@
 package org.meshwork.app.host.l3.router.console.perf;
 
+import org.meshwork.core.util.Converter;
+
 import java.io.InputStream;
+import java.util.Properties;
 
 /**
  * Created by Sinisha Djukic on 14-2-26.
  */
 public abstract class AbstractTestConfiguration {
+
+    public static final String ARRIVAL_CONSTANT = "constant";
+    public static final String ARRIVAL_POISSON  = "poisson";
+
     //delay between iterations
     public int iterationDelay;
     //iterations by count
     public int maxIterations;
     //iterations by time in seconds
     public int maxTime;
+    //open loop: sends per second over all destinations, 0 keeps the closed loop
+    public double rate;
+    //open loop: ARRIVAL_CONSTANT or ARRIVAL_POISSON spacing of the sends
+    public String arrival = ARRIVAL_CONSTANT;
+    //open loop: max sends in flight, 0 or above the pipeline window for the window
+    public int outstanding;
 
     public abstract void loadConfiguration(InputStream is) throws Exception;
 
+    //the open loop keys are optional
+    protected void loadOpenLoopConfiguration(Properties p, String rateKey, String arrivalKey, String outstandingKey) {
+        if ( p.getProperty(rateKey) != null )
+            rate = Converter.toDouble(rateKey, p.getProperty(rateKey));
+        if ( p.getProperty(arrivalKey) != null )
+            arrival = p.getProperty(arrivalKey).trim().toLowerCase();
+        if ( p.getProperty(outstandingKey) != null )
+            outstanding = Converter.toInt(outstandingKey, p.getProperty(outstandingKey));
+        if ( rate < 0 )
+            throw new IllegalArgumentException("Property '"+rateKey+"' cannot be negative: "+rate);
+        if ( !ARRIVAL_CONSTANT.equals(arrival) && !ARRIVAL_POISSON.equals(arrival) )
+            throw new IllegalArgumentException("Property '"+arrivalKey+"' must be "+ARRIVAL_CONSTANT+" or "+ARRIVAL_POISSON+": "+arrival);
+        if ( outstanding < 0 )
+            throw new IllegalArgumentException("Property '"+outstandingKey+"' cannot be negative: "+outstanding);
+    }
+
     public int getIterationDelay() {
         return iterationDelay;
     }
@@ -26,4 +55,20 @@ public abstract class AbstractTestConfiguration {
     public int getMaxIterations() {
         return maxIterations;
     }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public String getArrival() {
+        return arrival;
+    }
+
+    public boolean isPoisson() {
+        return ARRIVAL_POISSON.equals(arrival);
+    }
+
+    public int getOutstanding() {
+        return outstanding;
+    }
 }
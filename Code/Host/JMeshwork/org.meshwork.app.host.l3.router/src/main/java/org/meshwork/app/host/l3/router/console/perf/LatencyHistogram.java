@@ -0,0 +1,132 @@
+package org.meshwork.app.host.l3.router.console.perf;
+
+/**
+ * Fixed-memory latency histogram with log-linear buckets, in the style of HdrHistogram. Values below
+ * SUB_BUCKET_COUNT are exact, above that every power of two is split into SUB_BUCKET_HALF buckets,
+ * so any recorded value is off by less than 1/SUB_BUCKET_HALF (about 1.6%). Values are in micros,
+ * anything above MAX_VALUE (about 1.2 hours) is counted as MAX_VALUE. Not thread safe.
+ */
+public class LatencyHistogram {
+
+    public static final int SUB_BUCKET_BITS  = 7;
+    public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    public static final int SUB_BUCKET_HALF  = SUB_BUCKET_COUNT >> 1;
+    public static final int MAX_EXPONENT     = 25;
+    public static final long MAX_VALUE       = (1L << (SUB_BUCKET_BITS + MAX_EXPONENT)) - 1;
+    public static final int BUCKET_COUNT     = SUB_BUCKET_COUNT + MAX_EXPONENT * SUB_BUCKET_HALF;
+
+    protected final long[] counts = new long[BUCKET_COUNT];
+    protected long count;
+    protected long total;
+    protected long min = Long.MAX_VALUE;
+    protected long max;
+
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    public void record(long value, long times) {
+        if ( value < 0 )
+            throw new IllegalArgumentException("Value cannot be negative: "+value);
+        if ( value > MAX_VALUE )
+            value = MAX_VALUE;
+        counts[getIndex(value)] += times;
+        count += times;
+        total += value * times;
+        if ( value < min )
+            min = value;
+        if ( value > max )
+            max = value;
+    }
+
+    public void add(LatencyHistogram other) {
+        if ( other == null )
+            throw new IllegalArgumentException("LatencyHistogram cannot be null!");
+        for ( int i = 0; i < BUCKET_COUNT; i ++ )
+            counts[i] += other.counts[i];
+        count += other.count;
+        total += other.total;
+        if ( other.min < min )
+            min = other.min;
+        if ( other.max > max )
+            max = other.max;
+    }
+
+    public void reset() {
+        for ( int i = 0; i < BUCKET_COUNT; i ++ )
+            counts[i] = 0;
+        count = 0;
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public static int getIndex(long value) {
+        if ( value < SUB_BUCKET_COUNT )
+            return (int) value;
+        //shift that brings the value into [SUB_BUCKET_HALF, SUB_BUCKET_COUNT)
+        int exponent = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKET_COUNT + (exponent - 1) * SUB_BUCKET_HALF + (int) (value >> exponent) - SUB_BUCKET_HALF;
+    }
+
+    //lowest value that falls into the bucket
+    public static long getLowestValue(int index) {
+        if ( index < SUB_BUCKET_COUNT )
+            return index;
+        int exponent = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+        long sub = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return sub << exponent;
+    }
+
+    public static long getHighestValue(int index) {
+        return index + 1 < BUCKET_COUNT ? getLowestValue(index + 1) - 1 : MAX_VALUE;
+    }
+
+    //highest value of the bucket holding the given percentile, capped by the largest recorded value
+    public long getValueAtPercentile(double percentile) {
+        if ( count == 0 )
+            return 0;
+        long rank = (long) Math.ceil(percentile / 100 * count);
+        if ( rank < 1 )
+            rank = 1;
+        long seen = 0;
+        for ( int i = 0; i < BUCKET_COUNT; i ++ ) {
+            seen += counts[i];
+            if ( seen >= rank )
+                return Math.min(getHighestValue(i), max);
+        }
+        return max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getCountAt(int index) {
+        return counts[index];
+    }
+
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    //p50/p90/p99/p99.9/max in ms
+    public String toPercentileString() {
+        return "p50="+toMillis(getValueAtPercentile(50))+", p90="+toMillis(getValueAtPercentile(90))+
+                ", p99="+toMillis(getValueAtPercentile(99))+", p99.9="+toMillis(getValueAtPercentile(99.9))+
+                ", max="+toMillis(getMax());
+    }
+
+    public static float toMillis(long micros) {
+        return micros / 1000f;
+    }
+
+}
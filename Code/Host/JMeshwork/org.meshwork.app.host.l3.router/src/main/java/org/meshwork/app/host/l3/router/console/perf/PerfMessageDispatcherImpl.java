@@ -7,9 +7,15 @@ import org.meshwork.core.AbstractMessageTransport;
 import org.meshwork.core.MessageData;
 import org.meshwork.core.SerialMessageConstants;
 import org.meshwork.core.host.l3.*;
+import org.meshwork.core.util.Log;
 
+import java.io.File;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Created by Sinisha Djukic on 14-2-25.
@@ -17,6 +23,9 @@ import java.util.ArrayList;
 public class PerfMessageDispatcherImpl extends MessageDispatcherImpl {
 
     protected TestSummaryStats summaryStats;
+    //TestResults file written after the tests, optional
+    protected File resultsFile;
+    protected Properties resultsConfig;
 
     public PerfMessageDispatcherImpl(MessageAdapter adapter, AbstractMessageTransport transport, RouterConfiguration config, PrintWriter writer, TestSummaryStats summaryStats) {
         super(adapter, transport, config, writer);
@@ -58,6 +67,8 @@ public class PerfMessageDispatcherImpl extends MessageDispatcherImpl {
         if ( stats.size() > 0 ) {
             summaryStats.printResults(writer);
         }
+        if ( resultsFile != null )
+            writeResults();
         writer.println("PERFORMANCE TESTS: END");
         writer.println("======================================");
         writer.flush();
@@ -67,6 +78,21 @@ public class PerfMessageDispatcherImpl extends MessageDispatcherImpl {
         return summaryStats;
     }
 
+    //config goes into the results as is
+    public void setResultsFile(File resultsFile, Properties config) {
+        this.resultsFile = resultsFile;
+        this.resultsConfig = config;
+    }
+
+    protected void writeResults() {
+        try {
+            TestResults.create(resultsConfig, summaryStats).write(resultsFile);
+            writer.println("Results written to: "+resultsFile.getAbsolutePath());
+        } catch (Throwable t) {
+            writer.println("Error writing results to '"+resultsFile+"' due to: "+t.getMessage());
+        }
+    }
+
     protected void testSendImpl(TestStats stats, ArrayList<Byte> dst, int iterationDelaySeconds) {
         AbstractTestConfiguration testConfig = stats.getTestConfiguration();
         long time = testConfig.getMaxTime() * 1000;
@@ -82,18 +108,27 @@ public class PerfMessageDispatcherImpl extends MessageDispatcherImpl {
                 iterations = iterations < 1 ? Integer.MAX_VALUE : iterations;
                 writer.println("[testSendImpl] Max time: "+time);
                 writer.println("[testSendImpl] Max iterations: "+iterations);
+                if ( testConfig.getRate() > 0 ) {
+                    testSendOpenLoop(stats, dst, time, iterations);
+                    return;
+                }
                 int iter = iterations;
                 long start = System.currentTimeMillis();
                 AbstractMessage resp = null;
 //                byte[] senddata = new byte[] {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE};
                 byte[] senddata = new byte[4];
                 byte dstnode;
+                //one request reused for the whole run, only seq and dst change
+                MRFSend req = new MRFSend((byte) 0);
+                req.port = 5;//to simplify the test config we fix the port
+                req.data = senddata;
+                req.datalen = (byte) senddata.length;
                 do {
-                    writer.println();
-                    long timeDelta = System.currentTimeMillis() - start;
-                    writer.println("[testSendImpl] Test run ["+(iterations-iter)+" of "+iterations+"="+((int)((100*(iterations-iter))/iterations))+"%], seconds ["
-                                                              +timeDelta+" of "+time+"="+((int)((100*timeDelta)/time))+"%]");
-                    writer.println();
+                    if ( log.isEnabled(Log.INFO) ) {
+                        long timeDelta = System.currentTimeMillis() - start;
+                        log.info("\n[testSendImpl] Test run ["+(iterations-iter)+" of "+iterations+"="+((int)((100*(iterations-iter))/iterations))+"%], seconds ["
+                                                              +timeDelta+" of "+time+"="+((int)((100*timeDelta)/time))+"%]\n");
+                    }
                     int dataSeq = iterations - iter;
                     senddata[0] = (byte) (( dataSeq >> 24 ) & 0xFF);
                     senddata[1] = (byte) (( dataSeq >> 16 ) & 0xFF);
@@ -105,31 +140,27 @@ public class PerfMessageDispatcherImpl extends MessageDispatcherImpl {
 //                        //TODO cleanup this shortcut
 //                        if ( stats.getTestUID() == TestSendFloodStats.UID_SEND_FLOOD )
 //                            routeMap.clearRouteList();
-                        writer.println();
-                        writer.println(".............");
+                        log.debug("\n.............");
                         dstnode = dst.get(i);
-                        MRFSend req = new MRFSend(nextSeq());
+                        req.seq = nextSeq();
                         req.dst = dstnode;
-                        req.port = 5;//to simplify the test config we fix the port
-                        req.data = senddata;
-                        req.datalen = (byte) (req.data == null ? 0 : req.data.length);
                         try {
+                            long sendStart = System.nanoTime();
                             resp = processMRFSend(req);
+                            //only completed round trips, a lost response would only record the read timeout
+                            if ( resp != null )
+                                stats.recordLatency(dstnode, (System.nanoTime() - sendStart) / 1000);
                             if ( resp != null && resp.getSubCode() == Constants.NS_SUBCODE_RFSENDACK ) {
                                 stats.successCount ++;
                             } else {
                                 stats.failCount ++;
                             }
-                            writer.println();
                         } catch (Throwable t) {
-                            writer.println("Error sending '"+resp+"' to '"+dstnode+"' due to: "+t.getMessage());
-                            t.printStackTrace(writer);
+                            log.error("Error sending '"+resp+"' to '"+dstnode+"' due to: "+t.getMessage(), t);
                             stats.failCount ++;
                         }
                         stats.runCount ++;
-                        writer.println(".............");
-                        writer.println();
-                        writer.flush();
+                        log.debug(".............\n");
                     }
                     if ( sleepTime > 0 ) {
                         try {
@@ -138,8 +169,85 @@ public class PerfMessageDispatcherImpl extends MessageDispatcherImpl {
                         }
                     }
                 } while ( (System.currentTimeMillis() - start < time) && (iterations > 0 && (--iter > 0)) );
-                stats.runTime = (int) (System.currentTimeMillis() - start ) / 1000;
+                stats.runTimeMillis = System.currentTimeMillis() - start;
+                stats.runTime = (int) stats.runTimeMillis / 1000;
+            }
+        }
+    }
+
+    //sends on a fixed schedule regardless of the responses, up to the outstanding limit at a time. Latency runs from
+    //the scheduled send time, so a stalled Controller shows in the percentiles instead of just lowering the send rate
+    protected void testSendOpenLoop(final TestStats stats, ArrayList<Byte> dst, long time, int iterations) {
+        AbstractTestConfiguration testConfig = stats.getTestConfiguration();
+        int window = pipeline == null ? 1 : pipeline.getWindow();
+        int outstanding = testConfig.getOutstanding() < 1 ? window : Math.min(testConfig.getOutstanding(), window);
+        double interval = 1000000000d / testConfig.getRate();
+        writer.println("[testSendOpenLoop] Rate (msg/s): "+testConfig.getRate()+", arrival: "+testConfig.getArrival()+", outstanding: "+outstanding);
+        final Semaphore inFlight = new Semaphore(outstanding);
+        Random random = new Random();
+        int dstcount = dst.size();
+        long total = iterations == Integer.MAX_VALUE ? Long.MAX_VALUE : (long) iterations * dstcount;
+        long limit = time >= Long.MAX_VALUE / 1000000 ? Long.MAX_VALUE : time * 1000000;
+        byte[] senddata = new byte[4];
+        //sendAsync has serialized the request by the time it returns, so it is reused like in the closed loop
+        MRFSend req = new MRFSend((byte) 0);
+        req.port = 5;
+        req.data = senddata;
+        req.datalen = (byte) senddata.length;
+        long start = System.nanoTime();
+        double offset = 0;
+        for ( long n = 0; n < total && (long) offset < limit; n ++ ) {
+            final long scheduled = start + (long) offset;
+            offset += testConfig.isPoisson() ? -Math.log(1 - random.nextDouble()) * interval : interval;
+            long wait;
+            while ( (wait = scheduled - System.nanoTime()) > 0 )
+                LockSupport.parkNanos(wait);
+            inFlight.acquireUninterruptibly();
+            final byte dstnode = dst.get((int) (n % dstcount));
+            senddata[0] = (byte) (( n >> 24 ) & 0xFF);
+            senddata[1] = (byte) (( n >> 16 ) & 0xFF);
+            senddata[2] = (byte) (( n >> 8  ) & 0xFF);
+            senddata[3] = (byte) (( n >> 0  ) & 0xFF);
+            req.seq = nextSeq();
+            req.dst = dstnode;
+            final long sendStart = System.nanoTime();
+            if ( pipeline != null ) {
+                pipeline.sendAsync(req).whenComplete((result, error) -> {
+                    completeOpenLoopSend(stats, dstnode, result, scheduled, sendStart);
+                    inFlight.release();
+                });
+            } else {
+                AbstractMessage resp = null;
+                try {
+                    resp = processMRFSend(req);
+                } catch (Throwable t) {
+                    log.error("Error sending to '"+dstnode+"' due to: "+t.getMessage(), t);
+                }
+                completeOpenLoopSend(stats, dstnode, resp, scheduled, sendStart);
+                inFlight.release();
+            }
+        }
+        //all permits back means no send is in flight
+        inFlight.acquireUninterruptibly(outstanding);
+        synchronized (stats) {
+            stats.runTimeMillis = (System.nanoTime() - start) / 1000000;
+            stats.runTime = (int) (stats.runTimeMillis / 1000);
+        }
+    }
+
+    //runs on the pipeline reader thread
+    protected void completeOpenLoopSend(TestStats stats, byte dst, AbstractMessage resp, long scheduled, long sendStart) {
+        long now = System.nanoTime();
+        synchronized (stats) {
+            if ( resp != null ) {
+                stats.recordLatency(dst, (now - scheduled) / 1000);
+                stats.serviceLatency.record((now - sendStart) / 1000);
             }
+            if ( resp != null && resp.getSubCode() == Constants.NS_SUBCODE_RFSENDACK )
+                stats.successCount ++;
+            else
+                stats.failCount ++;
+            stats.runCount ++;
         }
     }
 
@@ -152,13 +260,15 @@ public class PerfMessageDispatcherImpl extends MessageDispatcherImpl {
                     case Constants.NS_SUBCODE_RFSENDACK: processMRFSendAck(writer, (MRFSendACK) result); sendSeqComplete = true; break;
                     case SerialMessageConstants.SM_SUBCODE_NOK: sendSeqComplete = true; break;
                 }
-                if ( !sendSeqComplete ) {
+                if ( !sendSeqComplete && pipeline != null ) {
+                    //callbacks were consumed by the pipeline listener, whatever came back is final
+                    sendSeqComplete = true;
+                } else if ( !sendSeqComplete ) {
                     MessageData data = readMessageUntil(consoleReadTimeout, req.seq);
                     if ( data != null )
                         result = adapter.deserialize(data);
                     else {
-                        writer.println("[processMRFSend] Error! Message seq number could not be read: "+req.seq);
-                        writer.flush();
+                        log.log(Log.ERROR, "[processMRFSend] Error! Message seq number could not be read: "+req.seq);
                     }
                 }
             } else {
@@ -170,11 +280,7 @@ public class PerfMessageDispatcherImpl extends MessageDispatcherImpl {
     }
 
     public void processMRFSendAck(PrintWriter writer, MRFSendACK result) {
-        writer.println("Received MRFSendACK");
-        if (result != null)
-            result.toString(writer, null, null, null);
-        writer.println();
-        writer.flush();
+        log.log(Log.DEBUG, "Received MRFSendACK\n", result, null, null);
     }
 
     public void testSendDirect(TestSendDirectStats stats) {
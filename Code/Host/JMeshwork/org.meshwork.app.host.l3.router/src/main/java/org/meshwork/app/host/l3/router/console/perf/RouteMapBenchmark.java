@@ -0,0 +1,120 @@
+package org.meshwork.app.host.l3.router.console.perf;
+
+import org.meshwork.core.host.l3.Constants;
+import org.meshwork.core.host.l3.Route;
+import org.meshwork.core.host.l3.RouteList;
+import org.meshwork.core.host.l3.RouteMap;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures time and allocation per route table lookup the way the dispatcher does them while the Controller waits:
+ * MRFGetRouteCount, MRFGetRoute by index and the found/failed update lookup by route.
+ * Usage: RouteMapBenchmark [destinations] [routesPerDestination] [iterations]
+ */
+public class RouteMapBenchmark {
+
+    protected static final int WARMUP_ROUNDS = 3;
+
+    protected final RouteMap routeMap;
+    protected final byte[] dsts;
+    protected final Route[] probes;
+    //consumed results so the JIT can't drop the lookups
+    protected long sink;
+
+    public RouteMapBenchmark(int dstCount, int routesPerDst) {
+        routeMap = new RouteMap();
+        dsts = new byte[dstCount];
+        probes = new Route[dstCount];
+        for ( int i = 0; i < dstCount; i ++ ) {
+            byte dst = (byte) (Constants.MIN_NODE_ID + i);
+            dsts[i] = dst;
+            RouteList list = routeMap.getRouteList(dst, true);
+            for ( int j = 0; j < routesPerDst; j ++ ) {
+                Route route = new Route();
+                route.src = 1;
+                route.dst = dst;
+                route.hopCount = (byte) (1 + j % Constants.MAX_ROUTING_HOPS);
+                route.hops = new byte[route.hopCount];
+                for ( int k = 0; k < route.hopCount; k ++ )
+                    route.hops[k] = (byte) (2 + (j + k) % 200);
+                list.addRoute(route);
+                //the last route is the worst case for the lookup by route
+                probes[i] = route.copy();
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        int dstCount = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int routesPerDst = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 1000000;
+        dstCount = Math.max(1, Math.min(dstCount, (Constants.MAX_NODE_ID & 0xFF) - Constants.MIN_NODE_ID + 1));
+        RouteMapBenchmark benchmark = new RouteMapBenchmark(dstCount, Math.max(1, routesPerDst));
+        System.out.println("RouteMapBenchmark: destinations="+dstCount+", routes/destination="+routesPerDst+", iterations="+iterations);
+        for ( int i = 0; i < WARMUP_ROUNDS; i ++ ) {
+            benchmark.getRouteCount(iterations);
+            benchmark.getRouteByIndex(iterations);
+            benchmark.getRouteByRoute(iterations);
+        }
+        benchmark.report("GetRouteCount", 0, iterations);
+        benchmark.report("GetRoute", 1, iterations);
+        benchmark.report("RouteFound/Failed", 2, iterations);
+    }
+
+    protected void report(String name, int test, int iterations) {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocMx = mx instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) mx : null;
+        long tid = Thread.currentThread().getId();
+        long bytes = allocMx == null ? -1 : allocMx.getThreadAllocatedBytes(tid);
+        long start = System.nanoTime();
+        switch ( test ) {
+            case 0: getRouteCount(iterations); break;
+            case 1: getRouteByIndex(iterations); break;
+            default: getRouteByRoute(iterations); break;
+        }
+        long time = System.nanoTime() - start;
+        bytes = allocMx == null ? -1 : allocMx.getThreadAllocatedBytes(tid) - bytes;
+        System.out.println(String.format("  %-20s %8.1f ns/op %10s bytes/op", name, (double) time / iterations,
+                bytes < 0 ? "n/a" : String.format("%.3f", (double) bytes / iterations)));
+    }
+
+    protected void getRouteCount(int iterations) {
+        long result = 0;
+        for ( int i = 0; i < iterations; i ++ ) {
+            RouteList list = routeMap.getRouteList(dsts[i % dsts.length], false);
+            if ( list != null )
+                result += list.getRouteCount();
+        }
+        sink += result;
+    }
+
+    protected void getRouteByIndex(int iterations) {
+        long result = 0;
+        for ( int i = 0; i < iterations; i ++ ) {
+            RouteList list = routeMap.getRouteList(dsts[i % dsts.length], false);
+            if ( list != null ) {
+                int count = list.getRouteCount();
+                if ( count > 0 )
+                    result += list.getRoute(i % count).hopCount;
+            }
+        }
+        sink += result;
+    }
+
+    protected void getRouteByRoute(int iterations) {
+        long result = 0;
+        for ( int i = 0; i < iterations; i ++ ) {
+            Route probe = probes[i % probes.length];
+            RouteList list = routeMap.getRouteList(probe.dst, false);
+            if ( list != null ) {
+                Route route = list.getRoute(probe, false, (byte) 0);
+                if ( route != null )
+                    result += route.hopCount;
+            }
+        }
+        sink += result;
+    }
+
+}
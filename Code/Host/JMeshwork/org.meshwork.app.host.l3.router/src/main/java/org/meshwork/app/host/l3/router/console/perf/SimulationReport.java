@@ -0,0 +1,124 @@
+package org.meshwork.app.host.l3.router.console.perf;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * Results of any number of scenario runs. Reports of disjoint sets of runs merge into one, the printed report
+ * is ordered by scenario index and run so it does not depend on which worker finished first.
+ */
+public class SimulationReport {
+
+    //TestResults type of the rows with the mesh counters
+    public static final String RESULTS_TYPE_SIMULATION = "simulation";
+
+    public ArrayList<SimulationResult> results = new ArrayList<SimulationResult>();
+
+    public SimulationReport() {
+    }
+
+    public SimulationReport(SimulationResult result) {
+        add(result);
+    }
+
+    public void add(SimulationResult result) {
+        if ( result == null )
+            throw new IllegalArgumentException("SimulationResult cannot be null!");
+        results.add(result);
+    }
+
+    public SimulationReport merge(SimulationReport other) {
+        if ( other == null )
+            throw new IllegalArgumentException("SimulationReport cannot be null!");
+        results.addAll(other.results);
+        return this;
+    }
+
+    public ArrayList<SimulationResult> getResults() {
+        return results;
+    }
+
+    //test stats of all successful runs of the scenario, plus the mesh counters
+    public TestResults createResults(SimulationScenario scenario) {
+        TestSummaryStats summary = scenario.createSummaryStats();
+        int runs = 0;
+        int failed = 0;
+        long transmitted = 0;
+        long lost = 0;
+        long virtualTime = 0;
+        for ( SimulationResult result : results ) {
+            if ( result.scenario != scenario )
+                continue;
+            runs ++;
+            if ( result.isFailed() ) {
+                failed ++;
+                continue;
+            }
+            summary.add(result.stats);
+            transmitted += result.transmittedCount;
+            lost += result.lostCount;
+            virtualTime += result.virtualTime;
+        }
+        TestResults result = TestResults.create(scenario.getProperties(), summary);
+        result.put(RESULTS_TYPE_SIMULATION, "", "", "runs", runs);
+        result.put(RESULTS_TYPE_SIMULATION, "", "", "failedRuns", failed);
+        result.put(RESULTS_TYPE_SIMULATION, "", "", "frames", transmitted);
+        result.put(RESULTS_TYPE_SIMULATION, "", "", "lostFrames", lost);
+        result.put(RESULTS_TYPE_SIMULATION, "", "", "virtualTime", virtualTime);
+        return result;
+    }
+
+    public void printReport(PrintWriter writer) {
+        ArrayList<SimulationResult> sorted = new ArrayList<SimulationResult>(results);
+        Collections.sort(sorted, new Comparator<SimulationResult>() {
+            @Override
+            public int compare(SimulationResult a, SimulationResult b) {
+                if ( a.scenario.getIndex() != b.scenario.getIndex() )
+                    return Integer.compare(a.scenario.getIndex(), b.scenario.getIndex());
+                return Integer.compare(a.run, b.run);
+            }
+        });
+        int size = sorted.size();
+        writer.println("Total Scenario Runs: "+size);
+        writer.println("-------------------");
+        for ( int i = 0; i < size; ) {
+            SimulationScenario scenario = sorted.get(i).scenario;
+            TestSummaryStats summary = scenario.createSummaryStats();
+            int runs = 0;
+            int failed = 0;
+            long transmitted = 0;
+            long lost = 0;
+            long virtualTime = 0;
+            long wallTime = 0;
+            writer.println("Scenario: "+scenario.getName());
+            for ( ; i < size && sorted.get(i).scenario == scenario; i ++ ) {
+                SimulationResult result = sorted.get(i);
+                writer.println("\t Run "+result.run+": seed="+result.seed+", nodes="+result.nodeCount+", links="+result.linkCount+
+                        ", virtual time (s)="+(result.virtualTime / 1000000f)+", wall time (ms)="+result.wallTime+
+                        (result.isFailed() ? ", error="+result.error : ""));
+                runs ++;
+                if ( result.isFailed() ) {
+                    failed ++;
+                    continue;
+                }
+                summary.add(result.stats);
+                transmitted += result.transmittedCount;
+                lost += result.lostCount;
+                virtualTime += result.virtualTime;
+                wallTime += result.wallTime;
+            }
+            writer.println("\t           Runs: "+runs);
+            writer.println("\t    Failed runs: "+failed);
+            writer.println("\t         Frames: "+transmitted);
+            writer.println("\t    Lost frames: "+lost+(transmitted > 0 ? " ("+(100f * lost / transmitted)+"%)" : ""));
+            writer.println("\tVirtual time (s): "+(virtualTime / 1000000f));
+            writer.println("\t  Wall time (ms): "+wallTime);
+            writer.println();
+            summary.printResults(writer);
+        }
+        writer.flush();
+    }
+
+}
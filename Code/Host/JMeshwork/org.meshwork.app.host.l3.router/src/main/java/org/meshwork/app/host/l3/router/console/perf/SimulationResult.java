@@ -0,0 +1,47 @@
+package org.meshwork.app.host.l3.router.console.perf;
+
+import org.meshwork.core.simulator.l3.MeshSimulator;
+
+/**
+ * Outcome of one run of a SimulationScenario.
+ */
+public class SimulationResult {
+
+    public SimulationScenario scenario;
+    public int run;
+    public long seed;
+    public TestSummaryStats stats;
+    public int nodeCount;
+    public int linkCount;
+    public long virtualTime;//micros
+    public long sendTime;//micros spent in send()
+    public long transmittedCount;
+    public long lostCount;
+    public long wallTime;//ms
+    public String error;
+
+    public SimulationResult(SimulationScenario scenario, int run, long seed, TestSummaryStats stats) {
+        if ( scenario == null )
+            throw new IllegalArgumentException("SimulationScenario cannot be null!");
+        if ( stats == null )
+            throw new IllegalArgumentException("TestSummaryStats cannot be null!");
+        this.scenario = scenario;
+        this.run = run;
+        this.seed = seed;
+        this.stats = stats;
+    }
+
+    public void setNetworkStats(MeshSimulator network) {
+        nodeCount = network.getGraph().getNodeCount();
+        linkCount = network.getGraph().getLinkCount();
+        virtualTime = network.getTime();
+        sendTime = network.getTotalSendTime();
+        transmittedCount = network.getTransmittedCount();
+        lostCount = network.getLostCount();
+    }
+
+    public boolean isFailed() {
+        return error != null;
+    }
+
+}
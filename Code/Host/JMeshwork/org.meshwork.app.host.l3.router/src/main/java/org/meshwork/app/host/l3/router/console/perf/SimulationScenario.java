@@ -0,0 +1,158 @@
+package org.meshwork.app.host.l3.router.console.perf;
+
+import org.meshwork.app.host.l3.router.RouterConfiguration;
+import org.meshwork.core.emulator.l3.NetworkSerialEmulator;
+import org.meshwork.core.host.l3.MessageAdapter;
+import org.meshwork.core.simulator.l3.MeshSimulator;
+import org.meshwork.core.simulator.l3.SimulatorConfiguration;
+import org.meshwork.core.transport.loopback.LoopbackConfiguration;
+import org.meshwork.core.transport.loopback.LoopbackMessageTransport;
+import org.meshwork.core.util.Converter;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Properties;
+
+/**
+ * One simulated setup: the router.*, sim.* and perftest.* keys of a single file. Each run gets its own simulated mesh,
+ * emulated Controller and host, so runs are independent and only differ in their seed.
+ */
+public class SimulationScenario {
+
+    public static final String CONFIG_KEY_RUNS  = "sim.runs";//repetitions with derived seeds, optional
+
+    //golden ratio step, consecutive seeds end up far apart
+    public static final long SEED_STEP = 0x9E3779B97F4A7C15L;
+
+    protected final String name;
+    protected final int index;
+    protected RouterConfiguration routerConfig;
+    protected SimulatorConfiguration simulatorConfig;
+    protected TestSendDirectConfiguration directConfig;
+    protected TestSendRoutedConfiguration routedConfig;
+    protected TestSendFloodConfiguration floodConfig;
+    protected int runs = 1;
+    //all keys of the file, for the results
+    protected Properties properties;
+    //seed of run 0, the configured sim.seed or one derived from the index
+    protected long seed;
+
+    public SimulationScenario(String name, int index) {
+        if ( name == null )
+            throw new IllegalArgumentException("Name cannot be null!");
+        this.name = name;
+        this.index = index;
+    }
+
+    //every configuration reads the same file
+    public void loadConfiguration(File file) throws Exception {
+        byte[] content = Files.readAllBytes(file.toPath());
+        Properties p = new Properties();
+        p.load(new ByteArrayInputStream(content));
+        properties = p;
+        if ( p.getProperty(CONFIG_KEY_RUNS) != null )
+            runs = Converter.toInt(CONFIG_KEY_RUNS, p.getProperty(CONFIG_KEY_RUNS));
+        if ( runs < 1 )
+            throw new IllegalArgumentException("Run count must be positive: "+runs);
+        routerConfig = new RouterConfiguration();
+        routerConfig.loadConfiguration(new ByteArrayInputStream(content));
+        //runs must not share a route table file
+        routerConfig.setRouteStore(null);
+        //without the pipeline the host drains the line for 10 ms before every request, which would dominate the run
+        if ( routerConfig.getPipelineWindow() < 1 )
+            routerConfig.setPipelineWindow(1);
+        simulatorConfig = new SimulatorConfiguration();
+        simulatorConfig.loadConfiguration(new ByteArrayInputStream(content));
+        directConfig = new TestSendDirectConfiguration();
+        directConfig.loadConfiguration(new ByteArrayInputStream(content));
+        routedConfig = new TestSendRoutedConfiguration();
+        routedConfig.loadConfiguration(new ByteArrayInputStream(content));
+        floodConfig = new TestSendFloodConfiguration();
+        floodConfig.loadConfiguration(new ByteArrayInputStream(content));
+        seed = simulatorConfig.getSeed() != 0 ? simulatorConfig.getSeed() : (index + 1) * SEED_STEP;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getRuns() {
+        return runs;
+    }
+
+    public long getSeed(int run) {
+        return seed + run * SEED_STEP;
+    }
+
+    public Properties getProperties() {
+        return properties;
+    }
+
+    //TestResults file of the merged runs, null if none is configured
+    public File getResultsFile() {
+        String value = properties.getProperty(TestResults.CONFIG_KEY_RESULTS);
+        return value == null ? null : new File(value.trim());
+    }
+
+    public RouterConfiguration getRouterConfiguration() {
+        return routerConfig;
+    }
+
+    public SimulatorConfiguration getSimulatorConfiguration() {
+        return simulatorConfig;
+    }
+
+    //fresh counters for a run or for merging runs, the configurations are only read so all of them share those
+    public TestSummaryStats createSummaryStats() {
+        ArrayList<TestStats> tests = new ArrayList<TestStats>();
+        tests.add(new TestSendDirectStats(directConfig));
+        tests.add(new TestSendRoutedStats(routedConfig));
+        tests.add(new TestSendFloodStats(floodConfig));
+        return new TestSummaryStats(tests);
+    }
+
+    //runs all tests in the calling thread, the emulator and the host pipeline add their own threads
+    public SimulationResult run(int run, PrintWriter writer) {
+        long runSeed = getSeed(run);
+        SimulationResult result = new SimulationResult(this, run, runSeed, createSummaryStats());
+        long start = System.currentTimeMillis();
+        MeshSimulator network = null;
+        NetworkSerialEmulator emulator = null;
+        LoopbackMessageTransport transport = null;
+        try {
+            network = new MeshSimulator(simulatorConfig, runSeed);
+            transport = LoopbackMessageTransport.createPair(new LoopbackConfiguration());
+            emulator = new NetworkSerialEmulator(network, transport.getPeer());
+            emulator.start();
+            PerfMessageDispatcherImpl dispatcher = new PerfMessageDispatcherImpl(new MessageAdapter(false), transport, routerConfig, writer, result.stats);
+            dispatcher.init();
+            try {
+                dispatcher.testStartAllTests();
+            } finally {
+                dispatcher.deinit();
+            }
+        } catch (Throwable t) {
+            result.error = t.getMessage() == null ? t.toString() : t.getMessage();
+            writer.println("Error running scenario '"+name+"' run "+run+" due to: "+result.error);
+            t.printStackTrace(writer);
+        } finally {
+            if ( emulator != null )
+                emulator.stop();
+            if ( transport != null )
+                transport.close();
+            writer.flush();
+        }
+        result.wallTime = System.currentTimeMillis() - start;
+        if ( network != null )
+            result.setNetworkStats(network);
+        return result;
+    }
+
+}
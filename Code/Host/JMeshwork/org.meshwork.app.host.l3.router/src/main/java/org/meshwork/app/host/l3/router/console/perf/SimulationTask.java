@@ -0,0 +1,85 @@
+package org.meshwork.app.host.l3.router.console.perf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs a range of (scenario, run) jobs on a fork/join pool by splitting it in halves down to single runs.
+ * Each run logs to its own file, the merged report is returned to the caller.
+ */
+public class SimulationTask extends RecursiveTask<SimulationReport> {
+
+    public static final String LOG_DIR = "./logs/";
+
+    protected final List<SimulationScenario> scenarios;
+    protected final int[] scenarioIndex;
+    protected final int[] runIndex;
+    protected final int from;
+    protected final int to;
+
+    //all runs of all scenarios
+    public SimulationTask(List<SimulationScenario> scenarios) {
+        if ( scenarios == null )
+            throw new IllegalArgumentException("Scenarios cannot be null!");
+        int count = 0;
+        for ( SimulationScenario scenario : scenarios )
+            count += scenario.getRuns();
+        this.scenarios = scenarios;
+        scenarioIndex = new int[count];
+        runIndex = new int[count];
+        int job = 0;
+        for ( int i = 0; i < scenarios.size(); i ++ ) {
+            for ( int run = 0; run < scenarios.get(i).getRuns(); run ++ ) {
+                scenarioIndex[job] = i;
+                runIndex[job] = run;
+                job ++;
+            }
+        }
+        from = 0;
+        to = count;
+    }
+
+    protected SimulationTask(SimulationTask parent, int from, int to) {
+        scenarios = parent.scenarios;
+        scenarioIndex = parent.scenarioIndex;
+        runIndex = parent.runIndex;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected SimulationReport compute() {
+        if ( to - from == 0 )
+            return new SimulationReport();
+        if ( to - from == 1 )
+            return new SimulationReport(run(scenarios.get(scenarioIndex[from]), runIndex[from]));
+        int middle = (from + to) >>> 1;
+        SimulationTask left = new SimulationTask(this, from, middle);
+        left.fork();
+        SimulationReport right = new SimulationTask(this, middle, to).compute();
+        return left.join().merge(right);
+    }
+
+    protected SimulationResult run(SimulationScenario scenario, int run) {
+        File dir = new File(LOG_DIR);
+        dir.mkdirs();
+        File log = new File(dir, "sim_"+scenario.getIndex()+"_"+run+".txt");
+        PrintWriter writer = null;
+        try {
+            writer = new PrintWriter(new FileOutputStream(log), false);
+            writer.println("Scenario: "+scenario.getName()+", run: "+run+", seed: "+scenario.getSeed(run));
+            return scenario.run(run, writer);
+        } catch (Throwable t) {
+            SimulationResult result = new SimulationResult(scenario, run, scenario.getSeed(run), scenario.createSummaryStats());
+            result.error = "Error writing log '"+log+"' due to: "+t.getMessage();
+            return result;
+        } finally {
+            if ( writer != null )
+                writer.close();
+        }
+    }
+
+}
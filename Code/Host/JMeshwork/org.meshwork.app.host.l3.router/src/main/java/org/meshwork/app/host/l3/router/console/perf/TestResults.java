@@ -0,0 +1,250 @@
+package org.meshwork.app.host.l3.router.console.perf;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * Machine readable results of a perf run, stored as CSV with one value per row: type,test,node,key,value.
+ * Rows hold the configuration, the environment, the counters and the latency percentiles and histograms of every
+ * test, overall (node NODE_ALL) and per destination node. Latencies are in micros, histogram rows are the non-empty
+ * LatencyHistogram buckets keyed by their lowest value.
+ */
+public class TestResults {
+
+    public static final String CONFIG_KEY_RESULTS = "perftest.results";//file name, optional
+
+    public static final String FORMAT_VERSION = "1";
+    public static final String HEADER = "type,test,node,key,value";
+
+    public static final String TYPE_META        = "meta";
+    public static final String TYPE_ENV         = "env";
+    public static final String TYPE_CONFIG      = "config";
+    public static final String TYPE_COUNTER     = "counter";
+    public static final String TYPE_LATENCY     = "latency";
+    public static final String TYPE_SERVICE     = "service";
+    public static final String TYPE_HISTOGRAM   = "histogram";
+
+    public static final String NODE_ALL = "*";
+
+    public static final String KEY_FORMAT       = "format";
+    public static final String KEY_RUN_COUNT    = "runCount";
+    public static final String KEY_SUCCESS_COUNT = "successCount";
+    public static final String KEY_FAIL_COUNT   = "failCount";
+    public static final String KEY_RUN_TIME     = "runTimeMillis";
+    public static final String KEY_SEND_RATE    = "sendRate";//sends/s
+    public static final String KEY_THROUGHPUT   = "throughput";//successful sends/s
+    public static final String KEY_COUNT        = "count";
+    public static final String KEY_MEAN         = "mean";
+    public static final String KEY_MIN          = "min";
+    public static final String KEY_P50          = "p50";
+    public static final String KEY_P90          = "p90";
+    public static final String KEY_P99          = "p99";
+    public static final String KEY_P999         = "p99.9";
+    public static final String KEY_MAX          = "max";
+
+    //type/test/node/key -> value, in insertion order
+    protected final LinkedHashMap<String, String> rows = new LinkedHashMap<String, String>();
+    //test names in insertion order
+    protected final LinkedHashSet<String> tests = new LinkedHashSet<String>();
+
+    public TestResults() {
+        put(TYPE_META, "", "", KEY_FORMAT, FORMAT_VERSION);
+    }
+
+    //config rows are sorted by key, so files of the same configuration diff cleanly
+    public static TestResults create(Properties config, TestSummaryStats summaryStats) {
+        if ( summaryStats == null )
+            throw new IllegalArgumentException("TestSummaryStats cannot be null!");
+        TestResults result = new TestResults();
+        result.putEnvironment();
+        if ( config != null )
+            for ( String key : new TreeSet<String>(config.stringPropertyNames()) )
+                result.put(TYPE_CONFIG, "", "", key, config.getProperty(key));
+        for ( TestStats stats : summaryStats.getTestStats() )
+            result.putTestStats(stats);
+        return result;
+    }
+
+    public void putEnvironment() {
+        String[] keys = {"java.version", "java.vendor", "java.vm.name", "os.name", "os.arch", "os.version"};
+        for ( String key : keys )
+            put(TYPE_ENV, "", "", key, System.getProperty(key));
+        put(TYPE_ENV, "", "", "processors", Runtime.getRuntime().availableProcessors());
+        put(TYPE_ENV, "", "", "maxMemory", Runtime.getRuntime().maxMemory());
+        put(TYPE_ENV, "", "", "timestamp", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date()));
+    }
+
+    public void putTestStats(TestStats stats) {
+        String test = stats.getTestName();
+        long millis = stats.getRunTimeMillis();
+        put(TYPE_COUNTER, test, NODE_ALL, KEY_RUN_COUNT, stats.getRunCount());
+        put(TYPE_COUNTER, test, NODE_ALL, KEY_SUCCESS_COUNT, stats.getSuccessCount());
+        put(TYPE_COUNTER, test, NODE_ALL, KEY_FAIL_COUNT, stats.getFailCount());
+        put(TYPE_COUNTER, test, NODE_ALL, KEY_RUN_TIME, millis);
+        put(TYPE_COUNTER, test, NODE_ALL, KEY_SEND_RATE, millis == 0 ? 0 : 1000d * stats.getRunCount() / millis);
+        put(TYPE_COUNTER, test, NODE_ALL, KEY_THROUGHPUT, millis == 0 ? 0 : 1000d * stats.getSuccessCount() / millis);
+        putHistogram(TYPE_LATENCY, test, NODE_ALL, stats.getLatency());
+        for ( int i = 0; i < stats.dstLatency.length; i ++ )
+            if ( stats.dstLatency[i] != null )
+                putHistogram(TYPE_LATENCY, test, String.valueOf(i), stats.dstLatency[i]);
+        if ( stats.serviceLatency.getCount() > 0 )
+            putHistogram(TYPE_SERVICE, test, NODE_ALL, stats.serviceLatency);
+    }
+
+    //percentile rows under the given type, bucket rows under TYPE_HISTOGRAM
+    public void putHistogram(String type, String test, String node, LatencyHistogram histogram) {
+        put(type, test, node, KEY_COUNT, histogram.getCount());
+        put(type, test, node, KEY_MEAN, histogram.getMean());
+        put(type, test, node, KEY_MIN, histogram.getMin());
+        put(type, test, node, KEY_P50, histogram.getValueAtPercentile(50));
+        put(type, test, node, KEY_P90, histogram.getValueAtPercentile(90));
+        put(type, test, node, KEY_P99, histogram.getValueAtPercentile(99));
+        put(type, test, node, KEY_P999, histogram.getValueAtPercentile(99.9));
+        put(type, test, node, KEY_MAX, histogram.getMax());
+        String histogramTest = TYPE_LATENCY.equals(type) ? test : test+"/"+type;
+        for ( int i = 0; i < LatencyHistogram.BUCKET_COUNT; i ++ )
+            if ( histogram.getCountAt(i) > 0 )
+                put(TYPE_HISTOGRAM, histogramTest, node, String.valueOf(LatencyHistogram.getLowestValue(i)), histogram.getCountAt(i));
+    }
+
+    public void put(String type, String test, String node, String key, Object value) {
+        if ( type == null || test == null || node == null || key == null )
+            throw new IllegalArgumentException("Type, test, node and key cannot be null!");
+        rows.put(toRowKey(type, test, node, key), value == null ? "" : value.toString());
+        if ( TYPE_COUNTER.equals(type) )
+            tests.add(test);
+    }
+
+    public String get(String type, String test, String node, String key) {
+        return rows.get(toRowKey(type, test, node, key));
+    }
+
+    //NaN when missing
+    public double getDouble(String type, String test, String node, String key) {
+        String value = get(type, test, node, key);
+        if ( value == null || value.length() == 0 )
+            return Double.NaN;
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    public Set<String> getTests() {
+        return tests;
+    }
+
+    //nodes with latency rows for the given test, without NODE_ALL
+    public List<String> getNodes(String test) {
+        ArrayList<String> result = new ArrayList<String>();
+        String prefix = toRowKey(TYPE_LATENCY, test, "", "");
+        prefix = prefix.substring(0, prefix.length() - 1);
+        for ( String row : rows.keySet() ) {
+            if ( row.startsWith(prefix) && row.endsWith("\u0000"+KEY_COUNT) ) {
+                String node = row.substring(prefix.length(), row.length() - KEY_COUNT.length() - 1);
+                if ( !NODE_ALL.equals(node) )
+                    result.add(node);
+            }
+        }
+        return result;
+    }
+
+    protected static String toRowKey(String type, String test, String node, String key) {
+        return type+"\u0000"+test+"\u0000"+node+"\u0000"+key;
+    }
+
+    public void write(File file) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    public void write(Writer out) throws IOException {
+        out.write(HEADER);
+        out.write('\n');
+        for ( Map.Entry<String, String> row : rows.entrySet() ) {
+            String[] fields = row.getKey().split("\u0000", -1);
+            for ( int i = 0; i < fields.length; i ++ ) {
+                out.write(escape(fields[i]));
+                out.write(',');
+            }
+            out.write(escape(row.getValue()));
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    public static TestResults read(File file) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    public static TestResults read(BufferedReader in) throws IOException {
+        TestResults result = new TestResults();
+        result.rows.clear();
+        String line = in.readLine();
+        if ( line == null || !HEADER.equals(line.trim()) )
+            throw new IOException("Not a results file, expected header: "+HEADER);
+        int number = 1;
+        while ( (line = in.readLine()) != null ) {
+            number ++;
+            if ( line.trim().length() == 0 )
+                continue;
+            List<String> fields = split(line);
+            if ( fields.size() != 5 )
+                throw new IOException("Line "+number+" has "+fields.size()+" fields instead of 5: "+line);
+            result.put(fields.get(0), fields.get(1), fields.get(2), fields.get(3), fields.get(4));
+        }
+        String format = result.get(TYPE_META, "", "", KEY_FORMAT);
+        if ( !FORMAT_VERSION.equals(format) )
+            throw new IOException("Unsupported results format: "+format);
+        return result;
+    }
+
+    //quotes fields with separators or quotes, line breaks are flattened since rows are read line by line
+    protected static String escape(String value) {
+        value = value.replace('\r', ' ').replace('\n', ' ');
+        if ( value.indexOf(',') < 0 && value.indexOf('"') < 0 )
+            return value;
+        return "\""+value.replace("\"", "\"\"")+"\"";
+    }
+
+    protected static List<String> split(String line) {
+        ArrayList<String> result = new ArrayList<String>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for ( int i = 0; i < line.length(); i ++ ) {
+            char c = line.charAt(i);
+            if ( quoted ) {
+                if ( c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"' ) {
+                    sb.append('"');
+                    i ++;
+                } else if ( c == '"' ) {
+                    quoted = false;
+                } else {
+                    sb.append(c);
+                }
+            } else if ( c == '"' ) {
+                quoted = true;
+            } else if ( c == ',' ) {
+                result.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        result.add(sb.toString());
+        return result;
+    }
+
+}
@@ -15,6 +15,9 @@ public class TestSendDirectConfiguration extends AbstractTestConfiguration {
     public static final String CONFIG_KEY_ITERATION_DELAY   = "perftest.senddirect.iterationdelay";//millis
     public static final String CONFIG_KEY_MAX_ITERATIONS    = "perftest.senddirect.maxiterations";
     public static final String CONFIG_KEY_MAX_TIME          = "perftest.senddirect.maxtime";//seconds
+    public static final String CONFIG_KEY_RATE              = "perftest.senddirect.rate";//msgs/s, optional
+    public static final String CONFIG_KEY_ARRIVAL           = "perftest.senddirect.arrival";//constant|poisson, optional
+    public static final String CONFIG_KEY_OUTSTANDING       = "perftest.senddirect.outstanding";//optional
 
     //list of destination nodes to send to
     public ArrayList<Byte> dstlist;
@@ -27,6 +30,7 @@ public class TestSendDirectConfiguration extends AbstractTestConfiguration {
         iterationDelay = Converter.toInt(CONFIG_KEY_ITERATION_DELAY, p.getProperty(CONFIG_KEY_ITERATION_DELAY));
         maxIterations = Converter.toInt(CONFIG_KEY_MAX_ITERATIONS, p.getProperty(CONFIG_KEY_MAX_ITERATIONS));
         maxTime = Converter.toInt(CONFIG_KEY_MAX_TIME, p.getProperty(CONFIG_KEY_MAX_TIME));
+        loadOpenLoopConfiguration(p, CONFIG_KEY_RATE, CONFIG_KEY_ARRIVAL, CONFIG_KEY_OUTSTANDING);
     }
 
 
@@ -15,6 +15,9 @@ public class TestSendFloodConfiguration extends AbstractTestConfiguration {
     public static final String CONFIG_KEY_ITERATION_DELAY   = "perftest.sendflood.iterationdelay";//millis
     public static final String CONFIG_KEY_MAX_ITERATIONS    = "perftest.sendflood.maxiterations";
     public static final String CONFIG_KEY_MAX_TIME          = "perftest.sendflood.maxtime";//seconds
+    public static final String CONFIG_KEY_RATE              = "perftest.sendflood.rate";//msgs/s, optional
+    public static final String CONFIG_KEY_ARRIVAL           = "perftest.sendflood.arrival";//constant|poisson, optional
+    public static final String CONFIG_KEY_OUTSTANDING       = "perftest.sendflood.outstanding";//optional
 
     //list of destination nodes to send to
     public ArrayList<Byte> dstlist;
@@ -26,6 +29,7 @@ public class TestSendFloodConfiguration extends AbstractTestConfiguration {
         iterationDelay = Converter.toInt(CONFIG_KEY_ITERATION_DELAY, p.getProperty(CONFIG_KEY_ITERATION_DELAY));
         maxIterations = Converter.toInt(CONFIG_KEY_MAX_ITERATIONS, p.getProperty(CONFIG_KEY_MAX_ITERATIONS));
         maxTime = Converter.toInt(CONFIG_KEY_MAX_TIME, p.getProperty(CONFIG_KEY_MAX_TIME));
+        loadOpenLoopConfiguration(p, CONFIG_KEY_RATE, CONFIG_KEY_ARRIVAL, CONFIG_KEY_OUTSTANDING);
     }
 
 
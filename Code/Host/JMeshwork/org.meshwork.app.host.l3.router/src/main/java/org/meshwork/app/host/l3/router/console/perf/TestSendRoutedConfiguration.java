@@ -15,6 +15,9 @@ public class TestSendRoutedConfiguration extends AbstractTestConfiguration {
     public static final String CONFIG_KEY_ITERATION_DELAY   = "perftest.sendrouted.iterationdelay";
     public static final String CONFIG_KEY_MAX_ITERATIONS    = "perftest.sendrouted.maxiterations";
     public static final String CONFIG_KEY_MAX_TIME          = "perftest.sendrouted.maxtime";//seconds
+    public static final String CONFIG_KEY_RATE              = "perftest.sendrouted.rate";//msgs/s, optional
+    public static final String CONFIG_KEY_ARRIVAL           = "perftest.sendrouted.arrival";//constant|poisson, optional
+    public static final String CONFIG_KEY_OUTSTANDING       = "perftest.sendrouted.outstanding";//optional
 
     //list of routes to send to
     //last element of every list is the ultimate destination
@@ -35,6 +38,7 @@ public class TestSendRoutedConfiguration extends AbstractTestConfiguration {
         iterationDelay = Converter.toInt(CONFIG_KEY_ITERATION_DELAY, p.getProperty(CONFIG_KEY_ITERATION_DELAY));
         maxIterations = Converter.toInt(CONFIG_KEY_MAX_ITERATIONS, p.getProperty(CONFIG_KEY_MAX_ITERATIONS));
         maxTime = Converter.toInt(CONFIG_KEY_MAX_TIME, p.getProperty(CONFIG_KEY_MAX_TIME));
+        loadOpenLoopConfiguration(p, CONFIG_KEY_RATE, CONFIG_KEY_ARRIVAL, CONFIG_KEY_OUTSTANDING);
     }
 
 }
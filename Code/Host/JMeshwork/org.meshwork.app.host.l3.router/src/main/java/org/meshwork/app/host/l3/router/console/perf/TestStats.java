@@ -9,10 +9,17 @@ public abstract class TestStats {
 
     public int testUID;
     public int runTime;
+    //same as runTime, in millis for the results file
+    public long runTimeMillis;
     public int runCount;
     public int successCount;
     public int failCount;
     public AbstractTestConfiguration config;
+    //MRFSend to MRFSendACK/NOK round trips of the whole test and per destination node, the latter created on first use
+    public LatencyHistogram latency = new LatencyHistogram();
+    public LatencyHistogram[] dstLatency = new LatencyHistogram[256];
+    //open loop only: actual send to response, without the wait for the schedule
+    public LatencyHistogram serviceLatency = new LatencyHistogram();
 
     public AbstractTestConfiguration getTestConfiguration() {
         return config;
@@ -26,6 +33,10 @@ public abstract class TestStats {
         return runTime;
     }
 
+    public long getRunTimeMillis() {
+        return runTimeMillis;
+    }
+
     public int getRunCount() {
         return runCount;
     }
@@ -38,6 +49,41 @@ public abstract class TestStats {
         return failCount;
     }
 
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public LatencyHistogram getLatency(byte dst) {
+        return dstLatency[dst & 0xFF];
+    }
+
+    public void recordLatency(byte dst, long micros) {
+        latency.record(micros);
+        getOrCreateLatency(dst & 0xFF).record(micros);
+    }
+
+    protected LatencyHistogram getOrCreateLatency(int dst) {
+        if ( dstLatency[dst] == null )
+            dstLatency[dst] = new LatencyHistogram();
+        return dstLatency[dst];
+    }
+
+    //adds the counters of another run of the same test, so independent runs can be reported as one
+    public void add(TestStats other) {
+        if ( other == null )
+            throw new IllegalArgumentException("TestStats cannot be null!");
+        runTime += other.runTime;
+        runTimeMillis += other.runTimeMillis;
+        runCount += other.runCount;
+        successCount += other.successCount;
+        failCount += other.failCount;
+        latency.add(other.latency);
+        serviceLatency.add(other.serviceLatency);
+        for ( int i = 0; i < dstLatency.length; i ++ )
+            if ( other.dstLatency[i] != null )
+                getOrCreateLatency(i).add(other.dstLatency[i]);
+    }
+
     public abstract String getTestName();
     public abstract String getTestDescription();
     public abstract String getTestDetails();
@@ -56,6 +102,14 @@ public abstract class TestStats {
             writer.println("\t     Run time (s): "+runTime);
             writer.println("\tSend rate (msg/s): "+(runTime == 0 ? 0f : ((float)getRunCount() / runTime)));
         }
+        if ( latency.getCount() > 0 ) {
+            writer.println("\t     Latency (ms): "+latency.toPercentileString());
+            for ( int i = 0; i < dstLatency.length; i ++ )
+                if ( dstLatency[i] != null && dstLatency[i].getCount() > 0 )
+                    writer.println("\t"+String.format("%17s", "Node "+i+" (ms)")+": "+dstLatency[i].toPercentileString());
+        }
+        if ( serviceLatency.getCount() > 0 )
+            writer.println("\tService time (ms): "+serviceLatency.toPercentileString());
         writer.println("\t      Description: "+getTestDescription());
         writer.println("\t          Details: "+getTestDetails());
         writer.println();
@@ -18,6 +18,16 @@ public class TestSummaryStats {
         return testStats;
     }
 
+    //adds each test of other to the test with the same UID, tests missing here are skipped
+    public void add(TestSummaryStats other) {
+        if ( other == null )
+            throw new IllegalArgumentException("TestSummaryStats cannot be null!");
+        for ( TestStats test : testStats )
+            for ( TestStats otherTest : other.testStats )
+                if ( test.getTestUID() == otherTest.getTestUID() )
+                    test.add(otherTest);
+    }
+
     public void printResults(PrintWriter writer) {
         int tests = testStats.size();
         writer.println("Total Test Cases: "+tests);
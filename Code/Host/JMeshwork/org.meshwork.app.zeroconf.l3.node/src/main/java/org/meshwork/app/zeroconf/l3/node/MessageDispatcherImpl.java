@@ -229,9 +229,7 @@ public class MessageDispatcherImpl implements MessageDispatcher {
         msg.toString(writer, "\t\t", null, null);
         writer.println();
         writer.flush();
-        MessageData data = new MessageData();
-        msg.serialize(data);
-        transport.sendMessage(data);
+        transport.sendMessage(msg);
         writer.println("[sendMessage][DONE] Msg: " + msg);
     }
 
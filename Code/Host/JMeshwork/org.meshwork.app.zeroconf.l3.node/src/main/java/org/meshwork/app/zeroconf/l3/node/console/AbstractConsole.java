@@ -6,6 +6,8 @@ import org.meshwork.app.zeroconf.l3.node.ZeroConfiguration;
 import org.meshwork.core.AbstractMessageTransport;
 import org.meshwork.core.zeroconf.l3.MessageAdapter;
 import org.meshwork.core.transport.serial.jssc.SerialConfiguration;
+import org.meshwork.core.transport.loopback.LoopbackConfiguration;
+import org.meshwork.core.transport.loopback.LoopbackMessageTransport;
 import org.meshwork.core.transport.serial.jssc.SerialMessageTransport;
 
 import java.io.*;
@@ -21,6 +23,8 @@ public abstract class AbstractConsole {
     public static final int EXIT_INITIALIZATION_ERROR           = 30;
 
     public String[] args;
+    //loopback.* keys of the serial config file, used when the device is LoopbackMessageTransport.DEVICE_NAME
+    protected LoopbackConfiguration loopbackConfig = new LoopbackConfiguration();
 
     public static void closeSilently(InputStream is) {
         try {
@@ -64,6 +68,7 @@ public abstract class AbstractConsole {
             this.args = args;
             ZeroConfiguration routerConfig = initRouterConfiguration(args[0].trim());
             SerialConfiguration serialConfig = initSerialConfiguration(args[1].trim());
+            loopbackConfig = initLoopbackConfiguration(args[1].trim());
             AbstractMessageTransport transport = initTransport(serialConfig, args[args.length-1]);
             initApp(routerConfig, serialConfig, transport, System.out);
         } catch (Throwable t) {
@@ -107,12 +112,30 @@ public abstract class AbstractConsole {
         return fis;
     }
 
-    protected SerialMessageTransport initTransport(SerialConfiguration serialConfig, String port) throws Exception {
+    //the loopback device gives the host end of a new pair, nothing answers on the peer end unless attached to it
+    protected AbstractMessageTransport initTransport(SerialConfiguration serialConfig, String port) throws Exception {
+        if ( LoopbackMessageTransport.DEVICE_NAME.equals(port) )
+            return LoopbackMessageTransport.createPair(loopbackConfig);
         SerialMessageTransport result = new SerialMessageTransport();
         result.init(serialConfig, port);
         return result;
     }
 
+    protected LoopbackConfiguration initLoopbackConfiguration(String config) throws Exception {
+        LoopbackConfiguration result = null;
+        InputStream is = null;
+        try {
+            result = new LoopbackConfiguration();
+            result.loadConfiguration(is = getInputStream(config));
+        } catch (Throwable t) {
+            exit(EXIT_CONFIG_FILE_ERROR, "Error parsing loopback configuration file '"+config+"' due to: "+t.getMessage());
+        } finally {
+            if ( is != null )
+                closeSilently(is);
+        }
+        return result;
+    }
+
     protected ZeroConfiguration initRouterConfiguration(String config) throws Exception {
         ZeroConfiguration result = null;
         InputStream is = null;
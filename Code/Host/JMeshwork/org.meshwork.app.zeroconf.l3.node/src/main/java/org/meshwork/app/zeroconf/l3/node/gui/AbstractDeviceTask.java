@@ -47,9 +47,7 @@ public abstract class AbstractDeviceTask extends AbstractTask {
 
     protected void sendMessage(AbstractMessage msg) throws Exception {
         GUILogger.info("[sendMessage] Msg: " + msg);
-        MessageData data = new MessageData();
-        msg.serialize(data);
-        transport.sendMessage(data);
+        transport.sendMessage(msg);
         GUILogger.info("[sendMessage][DONE] Msg: " + msg);
     }
 
@@ -0,0 +1,186 @@
+package org.meshwork.benchmark;
+
+import jssc.SerialPort;
+import jssc.SerialPortEventListener;
+import org.meshwork.core.AbstractMessage;
+import org.meshwork.core.host.l3.MRFReceive;
+import org.meshwork.core.host.l3.MRFReceiveACK;
+import org.meshwork.core.host.l3.MRFSend;
+import org.meshwork.core.host.l3.MessageAdapter;
+import org.meshwork.core.transport.serial.jssc.SerialConfiguration;
+import org.meshwork.core.transport.serial.jssc.SerialFrameCodec;
+import org.meshwork.core.transport.serial.jssc.SerialMessageTransport;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Measures time and allocation per message through SerialMessageTransport with the default configuration.
+ * Sends include serialization, framing and the port write, the port discards what is written so no device is needed.
+ * Receives feed an encoded MRFReceive to the decoder and read it back through a views MessageAdapter, like the router
+ * does when the pipeline is off. Sends and receives with frame reuse on must allocate 0 bytes/op, otherwise
+ * the run fails with a non-zero exit code. Lossless receives still allocate a frame each and are only reported.
+ * Usage: SerialSendBenchmark [iterations]
+ */
+public class SerialSendBenchmark {
+
+    protected static final int WARMUP_ROUNDS = 3;
+    protected static final int READ_TIMEOUT = 1000;
+
+    //accepts everything and writes nowhere
+    protected static class DiscardingSerialPort extends SerialPort {
+
+        protected long writtenCount;
+
+        public DiscardingSerialPort() {
+            super("benchmark");
+        }
+
+        @Override
+        public boolean isOpened() {
+            return true;
+        }
+
+        @Override
+        public boolean purgePort(int flags) {
+            return true;
+        }
+
+        @Override
+        public boolean writeBytes(byte[] buffer) {
+            writtenCount += buffer.length;
+            return true;
+        }
+
+        @Override
+        public void addEventListener(SerialPortEventListener listener, int mask) {
+        }
+
+        @Override
+        public boolean removeEventListener() {
+            return true;
+        }
+    }
+
+    //framing and lossless are otherwise only set from a SerialConfiguration when opening a real port
+    protected static class BenchmarkTransport extends SerialMessageTransport {
+
+        public BenchmarkTransport(String framing, boolean lossless) {
+            this.framing = framing;
+            this.lossless = lossless;
+        }
+
+        //stands in for the bytes of a serial event
+        public void feed(byte[] bytes, int len) {
+            decoder.feed(bytes, 0, len);
+        }
+
+        //the message framed as the device would send it
+        public byte[] encode(AbstractMessage message) {
+            ByteBuffer buf = ByteBuffer.allocate(1 + SerialFrameCodec.MAX_FRAME_LEN);
+            int len = message.serialize(buf);
+            byte[] encoded = new byte[codec.getMaxEncodedLength(len)];
+            int encodedLen = codec.encode(buf.array(), 0, len, encoded, 0);
+            return Arrays.copyOf(encoded, encodedLen);
+        }
+    }
+
+    protected final BenchmarkTransport transport;
+    protected final DiscardingSerialPort port;
+    protected final MessageAdapter adapter;
+    protected final MRFSend send;
+    protected final MRFReceiveACK receiveAck;
+    protected final byte[] receiveFrame;
+
+    public SerialSendBenchmark(String framing, boolean lossless) throws Exception {
+        port = new DiscardingSerialPort();
+        transport = new BenchmarkTransport(framing, lossless);
+        transport.initPort(port);
+        transport.setReuseFrames(true);
+        adapter = new MessageAdapter(true);
+        //same shape as the perf test requests
+        send = new MRFSend((byte) 0);
+        send.dst = 2;
+        send.port = 5;
+        send.data = new byte[4];
+        send.datalen = (byte) send.data.length;
+        receiveAck = new MRFReceiveACK((byte) 0);
+        receiveAck.datalen = 0;
+        //and of their echoes
+        MRFReceive receive = new MRFReceive((byte) 0);
+        receive.src = 2;
+        receive.port = 5;
+        receive.data = new byte[4];
+        receive.datalen = (byte) receive.data.length;
+        receiveFrame = transport.encode(receive);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        System.out.println("SerialSendBenchmark: iterations="+iterations);
+        int failed = 0;
+        String[] framings = {SerialConfiguration.FRAMING_RAW, SerialConfiguration.FRAMING_CRC};
+        for ( String framing : framings ) {
+            for ( int lossless = 0; lossless < 2; lossless ++ ) {
+                SerialSendBenchmark benchmark = new SerialSendBenchmark(framing, lossless == 1);
+                for ( int i = 0; i < WARMUP_ROUNDS; i ++ ) {
+                    benchmark.send(benchmark.send, iterations);
+                    benchmark.send(benchmark.receiveAck, iterations);
+                    benchmark.receive(iterations);
+                }
+                String suffix = " ("+framing+(lossless == 1 ? ", lossless)" : ")");
+                if ( !benchmark.report("MRFSend"+suffix, benchmark.send, iterations, true) )
+                    failed ++;
+                if ( !benchmark.report("MRFReceiveACK"+suffix, benchmark.receiveAck, iterations, true) )
+                    failed ++;
+                if ( !benchmark.report("MRFReceive"+suffix, null, iterations,
+                        benchmark.transport.isReuseFrames() && !benchmark.transport.isLossless()) )
+                    failed ++;
+            }
+        }
+        if ( failed > 0 ) {
+            System.out.println("SerialSendBenchmark: FAILED, "+failed+" case(s) allocated in steady state");
+            System.exit(1);
+        }
+        System.out.println("SerialSendBenchmark: OK");
+    }
+
+    //sends the message, or receives when it is null, and returns false if an allocation free case allocated
+    protected boolean report(String name, AbstractMessage message, int iterations, boolean allocationFree) throws Exception {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocMx = mx instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) mx : null;
+        long tid = Thread.currentThread().getId();
+        long bytes = allocMx == null ? -1 : allocMx.getThreadAllocatedBytes(tid);
+        long start = System.nanoTime();
+        if ( message == null )
+            receive(iterations);
+        else
+            send(message, iterations);
+        long time = System.nanoTime() - start;
+        bytes = allocMx == null ? -1 : allocMx.getThreadAllocatedBytes(tid) - bytes;
+        boolean ok = !allocationFree || bytes <= 0;
+        System.out.println(String.format("  %-32s %8.1f ns/op %10s bytes/op%s", name, (double) time / iterations,
+                bytes < 0 ? "n/a" : String.format("%.3f", (double) bytes / iterations),
+                ok ? "" : "  FAILED, expected 0"));
+        return ok;
+    }
+
+    protected void send(AbstractMessage message, int iterations) throws Exception {
+        for ( int i = 0; i < iterations; i ++ ) {
+            message.seq = (byte) i;
+            transport.sendMessage(message);
+        }
+    }
+
+    protected void receive(int iterations) throws Exception {
+        for ( int i = 0; i < iterations; i ++ ) {
+            transport.feed(receiveFrame, receiveFrame.length);
+            MRFReceive message = (MRFReceive) adapter.deserialize(transport.readMessage(READ_TIMEOUT));
+            if ( message.datalen != send.datalen )
+                throw new IllegalStateException("Unexpected MRFReceive data length: "+message.datalen);
+        }
+    }
+
+}
@@ -5,6 +5,7 @@ import org.meshwork.core.util.Printable;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-10.
@@ -21,15 +22,16 @@ public abstract class AbstractMessage implements Printable {
         this.subCode = subCode;
     }
 
+    //debugging aid only, log through org.meshwork.core.util.Log so disabled levels skip the rendering
     public String toString() {
-        StringBuffer sb = new StringBuffer(getClass().getName());
+        StringBuilder sb = new StringBuilder(96);
+        sb.append(getClass().getName());
         sb.append(": Seq=").append(seq).append(", Code=").append(code).append(", SubCode=").append(subCode);
-        StringWriter sw = new StringWriter();
+        StringWriter sw = new StringWriter(64);
         PrintWriter pw = new PrintWriter(sw);
         toString(pw, null, null, null);
         pw.flush();
-        sw.flush();
-        sb.append(", ").append(sw);
+        sb.append(", ").append(sw.getBuffer());
         return sb.toString();
     }
 
@@ -50,6 +52,28 @@ public abstract class AbstractMessage implements Printable {
         msg.len = (byte) (3 + (msg.data == null ? 0 : msg.data.length));
     }
 
+    //writes the message body (everything after SUBCODE) at the buffer position
+    //the default goes through serializeImpl(MessageData) and allocates, every host L3 and zeroconf message overrides it
+    public void serializeImpl(ByteBuffer buf) {
+        MessageData msg = new MessageData();
+        serializeImpl(msg);
+        if ( msg.data != null )
+            buf.put(msg.data);
+    }
+
+    //writes the complete LEN | SEQ | CODE | SUBCODE | DATA frame at the buffer position and returns its length
+    public final int serialize(ByteBuffer buf) {
+        int start = buf.position();
+        buf.put((byte) 0);
+        buf.put(seq);
+        buf.put(getCode());
+        buf.put(getSubCode());
+        serializeImpl(buf);
+        int frameLen = buf.position() - start;
+        buf.put(start, (byte) (frameLen - 1));
+        return frameLen;
+    }
+
     public final byte getCode() {
         return code;
     }
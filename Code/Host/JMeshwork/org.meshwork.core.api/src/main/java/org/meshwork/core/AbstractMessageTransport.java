@@ -13,6 +13,9 @@ public interface AbstractMessageTransport {
     public MessageData readMessage(int timeout) throws TransportTimeoutException, IOException;
 
     public int sendMessage(MessageData message) throws IOException;
+
+    //serializes straight into the transport's own buffer, no MessageData needed
+    public int sendMessage(AbstractMessage message) throws IOException;
     
     public boolean isOpen();
 }
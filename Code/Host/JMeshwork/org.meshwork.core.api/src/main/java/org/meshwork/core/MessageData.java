@@ -31,7 +31,7 @@ public class MessageData implements Printable {
         };
     }
     public String toString() {
-        StringBuffer sb = new StringBuffer(getClass().getName());
+        StringBuilder sb = new StringBuilder(64).append(getClass().getName());
         sb.append(", Len=").append(len).append(": Seq=").append(seq).append(", Code=").append(code).append(", SubCode=").append(subCode);
         return sb.toString();
     }
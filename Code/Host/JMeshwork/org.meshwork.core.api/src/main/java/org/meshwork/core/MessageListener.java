@@ -0,0 +1,11 @@
+package org.meshwork.core;
+
+/**
+ * Receives every message read by a MessagePipeline before it is matched against the pending requests.
+ */
+public interface MessageListener {
+
+    //return true if the message was consumed and must not complete a pending request with the same seq
+    public boolean messageReceived(AbstractMessage message, MessageData data) throws Exception;
+
+}
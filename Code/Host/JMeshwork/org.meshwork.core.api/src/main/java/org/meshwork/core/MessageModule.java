@@ -0,0 +1,11 @@
+package org.meshwork.core;
+
+/**
+ * A serial protocol's set of messages, e.g. NetworkSerial or ZeroConfSerial, registered into a MessageRegistry.
+ */
+public interface MessageModule {
+
+    //prototype instances, one per (code, subCode) pair, used to deserialize incoming frames
+    public AbstractMessage[] getMessageTypes();
+
+}
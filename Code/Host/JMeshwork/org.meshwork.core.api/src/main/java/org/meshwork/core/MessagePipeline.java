@@ -0,0 +1,320 @@
+package org.meshwork.core;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Asynchronous request layer on top of a transport. Requests are written as soon as the in-flight window allows,
+ * a single reader thread owns the receive side and completes the pending request whose seq matches the response.
+ * Messages which are callbacks or unsolicited go to the listener first, which may consume them.
+ * The transport must not discard buffered input on read or send (e.g. the serial transport in lossless mode),
+ * otherwise responses to the other outstanding requests are lost.
+ */
+public class MessagePipeline implements Runnable {
+
+    public static final int DEFAULT_WINDOW = 4;
+    public static final int DEFAULT_TIMEOUT = 30000;
+    //max time the reader blocks in the transport, bounds the timeout detection latency
+    public static final int POLL_TIMEOUT = 20;
+    //seq is a single byte, so at most that many requests can be told apart
+    public static final int MAX_WINDOW = 255;
+
+    protected static class Request {
+        protected final byte seq;
+        protected final long deadline;
+        protected final CompletableFuture<AbstractMessage> future;
+
+        protected Request(byte seq, long deadline) {
+            this.seq = seq;
+            this.deadline = deadline;
+            this.future = new CompletableFuture<AbstractMessage>();
+        }
+    }
+
+    protected final AbstractMessageTransport transport;
+    protected final AbstractMessageAdapter adapter;
+    protected final int window;
+    protected final Semaphore permits;
+    protected final Request[] pending;
+    protected int pendingCount;
+    protected int timeout;
+    protected volatile MessageListener listener;
+    protected volatile boolean running;
+    protected Thread reader;
+
+    protected long completedCount;
+    protected long timeoutCount;
+    protected long unmatchedCount;
+
+    public MessagePipeline(AbstractMessageTransport transport, AbstractMessageAdapter adapter) {
+        this(transport, adapter, DEFAULT_WINDOW, DEFAULT_TIMEOUT);
+    }
+
+    public MessagePipeline(AbstractMessageTransport transport, AbstractMessageAdapter adapter, int window, int timeout) {
+        if ( transport == null )
+            throw new IllegalArgumentException("Transport cannot be null!");
+        if ( adapter == null )
+            throw new IllegalArgumentException("Adapter cannot be null!");
+        if ( window < 1 || window > MAX_WINDOW )
+            throw new IllegalArgumentException("Window must be between 1 and "+MAX_WINDOW+": "+window);
+        this.transport = transport;
+        this.adapter = adapter;
+        this.window = window;
+        this.timeout = timeout;
+        permits = new Semaphore(window, true);
+        pending = new Request[256];
+    }
+
+    public void setListener(MessageListener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        if ( running )
+            return;
+        running = true;
+        reader = new Thread(this, "MessagePipeline reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    public void stop() {
+        Thread temp;
+        synchronized (this) {
+            running = false;
+            temp = reader;
+            reader = null;
+        }
+        if ( temp != null ) {
+            temp.interrupt();
+            try {
+                temp.join(POLL_TIMEOUT * 10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        failAll(new IOException("Pipeline stopped"));
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public CompletableFuture<AbstractMessage> sendAsync(AbstractMessage message) {
+        return sendAsync(message, timeout);
+    }
+
+    //blocks while the in-flight window is full, the returned future completes with the response, or exceptionally
+    //with TransportTimeoutException when none arrives within the timeout
+    public CompletableFuture<AbstractMessage> sendAsync(AbstractMessage message, int timeout) {
+        //without the reader nothing would ever complete or expire the request
+        if ( !running ) {
+            CompletableFuture<AbstractMessage> result = new CompletableFuture<AbstractMessage>();
+            result.completeExceptionally(new IOException("Pipeline not running"));
+            return result;
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            CompletableFuture<AbstractMessage> result = new CompletableFuture<AbstractMessage>();
+            result.completeExceptionally(e);
+            return result;
+        }
+        final Request request = new Request(message.seq, System.currentTimeMillis() + timeout);
+        if ( !add(request) ) {
+            permits.release();
+            request.future.completeExceptionally(new IllegalStateException("Request with seq "+message.seq+" already in flight"));
+            return request.future;
+        }
+        //frees the slot on cancellation by the caller as well
+        request.future.whenComplete((result, error) -> remove(request));
+        try {
+            transport.sendMessage(message);
+        } catch (Exception e) {
+            request.future.completeExceptionally(e);
+        }
+        return request.future;
+    }
+
+    //synchronous convenience wrapper, returns null on timeout
+    //the reader expires the request, the bounded wait only covers a reader that stopped meanwhile
+    public AbstractMessage sendAndReceive(AbstractMessage message, int timeout) throws Exception {
+        CompletableFuture<AbstractMessage> future = sendAsync(message, timeout);
+        try {
+            return future.get(timeout + POLL_TIMEOUT * 2L, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            //frees the window slot
+            future.cancel(false);
+            return null;
+        } catch (ExecutionException e) {
+            if ( e.getCause() instanceof TransportTimeoutException )
+                return null;
+            if ( e.getCause() instanceof Exception )
+                throw (Exception) e.getCause();
+            throw e;
+        }
+    }
+
+    protected synchronized boolean add(Request request) {
+        int index = request.seq & 0xFF;
+        if ( pending[index] != null )
+            return false;
+        pending[index] = request;
+        pendingCount ++;
+        return true;
+    }
+
+    //returns true and frees a window slot only for the caller which actually removed the request
+    protected boolean remove(Request request) {
+        synchronized (this) {
+            int index = request.seq & 0xFF;
+            if ( pending[index] != request )
+                return false;
+            pending[index] = null;
+            pendingCount --;
+        }
+        permits.release();
+        return true;
+    }
+
+    protected synchronized Request get(byte seq) {
+        return pending[seq & 0xFF];
+    }
+
+    @Override
+    public void run() {
+        while ( running ) {
+            MessageData data = null;
+            try {
+                data = transport.readMessage(nextPollTimeout());
+            } catch (TransportTimeoutException e) {
+                //nothing received, just check the deadlines
+            } catch (IOException e) {
+                if ( !running )
+                    break;
+                if ( !transport.isOpen() ) {
+                    failAll(e);
+                    break;
+                }
+            }
+            if ( data != null )
+                dispatch(data);
+            expire(System.currentTimeMillis());
+        }
+    }
+
+    protected void dispatch(MessageData data) {
+        AbstractMessage message;
+        try {
+            message = adapter.deserialize(data);
+        } catch (Exception e) {
+            //not decodable, the request it belongs to will time out
+            unmatchedCount ++;
+            return;
+        }
+        MessageListener temp = listener;
+        if ( temp != null ) {
+            try {
+                if ( temp.messageReceived(message, data) )
+                    return;
+            } catch (Exception e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+        Request request = get(data.seq);
+        if ( request != null && remove(request) ) {
+            completedCount ++;
+            request.future.complete(message);
+        } else {
+            unmatchedCount ++;
+        }
+    }
+
+    protected int nextPollTimeout() {
+        long now = System.currentTimeMillis();
+        long result = POLL_TIMEOUT;
+        synchronized (this) {
+            if ( pendingCount > 0 ) {
+                for ( int i = 0; i < pending.length; i ++ ) {
+                    Request r = pending[i];
+                    if ( r != null && r.deadline - now < result )
+                        result = r.deadline - now;
+                }
+            }
+        }
+        return (int) Math.max(1, result);
+    }
+
+    protected void expire(long now) {
+        Request[] expired = null;
+        int count = 0;
+        synchronized (this) {
+            if ( pendingCount == 0 )
+                return;
+            for ( int i = 0; i < pending.length; i ++ ) {
+                Request r = pending[i];
+                if ( r != null && r.deadline <= now ) {
+                    if ( expired == null )
+                        expired = new Request[pendingCount];
+                    expired[count++] = r;
+                }
+            }
+        }
+        for ( int i = 0; i < count; i ++ ) {
+            if ( remove(expired[i]) ) {
+                timeoutCount ++;
+                expired[i].future.completeExceptionally(new TransportTimeoutException("No response for seq "+expired[i].seq));
+            }
+        }
+    }
+
+    protected void failAll(Exception cause) {
+        Request[] all;
+        int count = 0;
+        synchronized (this) {
+            all = new Request[pendingCount];
+            for ( int i = 0; i < pending.length && count < all.length; i ++ )
+                if ( pending[i] != null )
+                    all[count++] = pending[i];
+        }
+        for ( int i = 0; i < count; i ++ )
+            if ( remove(all[i]) )
+                all[i].future.completeExceptionally(cause);
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    public long getCompletedCount() {
+        return completedCount;
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    //responses which matched no pending request, e.g. late ones after a timeout
+    public long getUnmatchedCount() {
+        return unmatchedCount;
+    }
+
+}
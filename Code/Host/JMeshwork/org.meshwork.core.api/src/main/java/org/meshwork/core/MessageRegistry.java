@@ -0,0 +1,56 @@
+package org.meshwork.core;
+
+import java.io.IOException;
+
+/**
+ * Message lookup by (code, subCode), composed from one or more protocol modules so that several protocols can
+ * share the same transport. The lookup is a single index into a flat 256x256 table, without any boxing.
+ */
+public class MessageRegistry implements AbstractMessageAdapter {
+
+    protected final AbstractMessage[] messageTypes = new AbstractMessage[256 * 256];
+    protected int count;
+
+    public MessageRegistry() {
+    }
+
+    public MessageRegistry(MessageModule... modules) {
+        for ( MessageModule module : modules )
+            register(module);
+    }
+
+    protected static int index(byte code, byte subCode) {
+        return ((code & 0xFF) << 8) | (subCode & 0xFF);
+    }
+
+    public void register(MessageModule module) {
+        for ( AbstractMessage messageType : module.getMessageTypes() )
+            register(messageType);
+    }
+
+    public void register(AbstractMessage messageType) {
+        int index = index(messageType.getCode(), messageType.getSubCode());
+        AbstractMessage existing = messageTypes[index];
+        if ( existing != null && existing.getClass() != messageType.getClass() )
+            throw new IllegalArgumentException("Code="+messageType.getCode()+", SubCode="+messageType.getSubCode()
+                                               +" already registered for "+existing.getClass().getName());
+        if ( existing == null )
+            count ++;
+        messageTypes[index] = messageType;
+    }
+
+    public AbstractMessage getMessageType(byte code, byte subCode) {
+        return messageTypes[index(code, subCode)];
+    }
+
+    public int getMessageTypeCount() {
+        return count;
+    }
+
+    @Override
+    public AbstractMessage deserialize(MessageData data) throws IOException {
+        AbstractMessage messageType = messageTypes[index(data.code, data.subCode)];
+        return messageType != null ? messageType.deserialize(data) : null;
+    }
+
+}
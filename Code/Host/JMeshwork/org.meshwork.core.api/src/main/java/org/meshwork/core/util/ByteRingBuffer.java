@@ -0,0 +1,88 @@
+package org.meshwork.core.util;
+
+/**
+ * Fixed-size byte FIFO used to accumulate raw transport bytes until complete frames can be decoded.
+ * Not thread-safe, callers are expected to synchronize externally.
+ */
+public class ByteRingBuffer {
+
+    protected final byte[] buffer;
+    protected final int mask;
+    //absolute read and write positions, only their difference and masked values are ever used
+    protected int head;
+    protected int tail;
+
+    public ByteRingBuffer(int capacity) {
+        if ( capacity < 1 )
+            throw new IllegalArgumentException("Capacity must be positive: "+capacity);
+        int size = Integer.highestOneBit(capacity);
+        if ( size < capacity )
+            size <<= 1;
+        buffer = new byte[size];
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    public int available() {
+        return tail - head;
+    }
+
+    public int free() {
+        return buffer.length - available();
+    }
+
+    public boolean isEmpty() {
+        return tail == head;
+    }
+
+    //writes as many bytes as fit and returns their count
+    public int write(byte[] src, int off, int len) {
+        int count = Math.min(len, free());
+        for ( int i = 0; i < count; i ++ )
+            buffer[(tail + i) & mask] = src[off + i];
+        tail += count;
+        return count;
+    }
+
+    public boolean write(byte b) {
+        if ( free() == 0 )
+            return false;
+        buffer[tail++ & mask] = b;
+        return true;
+    }
+
+    //returns the byte at the given offset from the read position without consuming it
+    public byte peek(int index) {
+        if ( index < 0 || index >= available() )
+            throw new IndexOutOfBoundsException("Index: "+index+", available: "+available());
+        return buffer[(head + index) & mask];
+    }
+
+    public byte read() {
+        if ( isEmpty() )
+            throw new IndexOutOfBoundsException("Buffer is empty");
+        return buffer[head++ & mask];
+    }
+
+    public int read(byte[] dst, int off, int len) {
+        int count = Math.min(len, available());
+        for ( int i = 0; i < count; i ++ )
+            dst[off + i] = buffer[(head + i) & mask];
+        head += count;
+        return count;
+    }
+
+    public int skip(int count) {
+        int result = Math.min(count, available());
+        head += result;
+        return result;
+    }
+
+    public void clear() {
+        head = tail;
+    }
+
+}
@@ -50,4 +50,16 @@ public class Converter {
         return Integer.parseInt(propValue);
     }
 
+    public static long toLong(String propKey, String propValue) {
+        if ( propValue == null )
+            throw new IllegalArgumentException("Property '"+propKey+"' cannot be null!");
+        return Long.parseLong(propValue);
+    }
+
+    public static double toDouble(String propKey, String propValue) {
+        if ( propValue == null )
+            throw new IllegalArgumentException("Property '"+propKey+"' cannot be null!");
+        return Double.parseDouble(propValue);
+    }
+
 }
@@ -0,0 +1,139 @@
+package org.meshwork.core.util;
+
+import java.io.PrintWriter;
+
+/**
+ * Level-gated output for dispatchers and transports. Printable arguments are only rendered when their level is
+ * enabled, so disabled log calls cost a comparison and nothing else. Callers building strings themselves should
+ * check isEnabled() first.
+ */
+public class Log {
+
+    public static final int OFF     = 0;
+    public static final int ERROR   = 1;
+    public static final int WARN    = 2;
+    public static final int INFO    = 3;
+    public static final int DEBUG   = 4;
+    public static final int TRACE   = 5;
+
+    protected static final String[] LEVEL_NAMES = {"off", "error", "warn", "info", "debug", "trace"};
+
+    protected final PrintWriter writer;
+    protected volatile int level;
+
+    public Log(PrintWriter writer, int level) {
+        if ( writer == null )
+            throw new IllegalArgumentException("Writer cannot be null!");
+        this.writer = writer;
+        this.level = level;
+    }
+
+    //level by name or number, case-insensitive
+    public static int parseLevel(String value) {
+        String temp = value.trim().toLowerCase();
+        for ( int i = 0; i < LEVEL_NAMES.length; i ++ )
+            if ( LEVEL_NAMES[i].equals(temp) )
+                return i;
+        int result = Integer.parseInt(temp);
+        if ( result < OFF || result > TRACE )
+            throw new IllegalArgumentException("Invalid log level: "+value);
+        return result;
+    }
+
+    public static String getLevelName(int level) {
+        return level >= OFF && level <= TRACE ? LEVEL_NAMES[level] : String.valueOf(level);
+    }
+
+    public PrintWriter getWriter() {
+        return writer;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public boolean isEnabled(int level) {
+        return level <= this.level && level > OFF;
+    }
+
+    public boolean isDebug() {
+        return isEnabled(DEBUG);
+    }
+
+    public boolean isTrace() {
+        return isEnabled(TRACE);
+    }
+
+    public void log(int level, String text) {
+        if ( !isEnabled(level) )
+            return;
+        synchronized (writer) {
+            writer.println(text);
+            writer.flush();
+        }
+    }
+
+    //prints the text followed by the rendered Printable, a null one prints nullText instead
+    public void log(int level, String text, Printable printable, String rowPrefix, String nullText) {
+        if ( !isEnabled(level) )
+            return;
+        synchronized (writer) {
+            if ( text != null )
+                writer.print(text);
+            if ( printable != null )
+                printable.toString(writer, rowPrefix, null, null);
+            else if ( nullText != null )
+                writer.print(nullText);
+            writer.println();
+            writer.flush();
+        }
+    }
+
+    public void log(int level, String text, Printable printable) {
+        log(level, text, printable, null, "<null>");
+    }
+
+    public void log(int level, String text, Throwable t) {
+        if ( !isEnabled(level) )
+            return;
+        synchronized (writer) {
+            writer.println(text);
+            if ( t != null )
+                t.printStackTrace(writer);
+            writer.flush();
+        }
+    }
+
+    public void error(String text, Throwable t) {
+        log(ERROR, text, t);
+    }
+
+    public void warn(String text) {
+        log(WARN, text);
+    }
+
+    public void info(String text) {
+        log(INFO, text);
+    }
+
+    public void debug(String text) {
+        log(DEBUG, text);
+    }
+
+    public void debug(String text, Printable printable) {
+        log(DEBUG, text, printable);
+    }
+
+    public void trace(String text) {
+        log(TRACE, text);
+    }
+
+    public void trace(String text, Printable printable) {
+        log(TRACE, text, printable);
+    }
+
+}
@@ -0,0 +1,48 @@
+package org.meshwork.core.util;
+
+import org.meshwork.core.MessageData;
+
+/**
+ * Fixed ring of reusable MessageData for decoders, so steady-state receiving allocates nothing. get() hands out the
+ * slots in turn, each one with a data array of exactly the requested length, cached per slot and length.
+ * A slot is overwritten size frames later, so size must exceed the number of frames its user can hold at once,
+ * e.g. the receive queue capacity plus the one being consumed and the one being decoded.
+ * Not thread-safe, callers are expected to synchronize externally.
+ */
+public class MessageDataPool {
+
+    protected final MessageData[] slots;
+    //slot -> data length -> array
+    protected final byte[][][] arrays;
+    protected int next;
+
+    public MessageDataPool(int size, int maxDataLen) {
+        if ( size < 1 )
+            throw new IllegalArgumentException("Size must be positive: "+size);
+        slots = new MessageData[size];
+        arrays = new byte[size][maxDataLen + 1][];
+        for ( int i = 0; i < size; i ++ )
+            slots[i] = new MessageData();
+    }
+
+    public int size() {
+        return slots.length;
+    }
+
+    //next slot with its data sized to dataLen, null data when 0, the header fields are left to the caller
+    public MessageData get(int dataLen) {
+        int slot = next;
+        next = slot + 1 == slots.length ? 0 : slot + 1;
+        MessageData result = slots[slot];
+        if ( dataLen == 0 ) {
+            result.data = null;
+        } else {
+            byte[] data = arrays[slot][dataLen];
+            if ( data == null )
+                data = arrays[slot][dataLen] = new byte[dataLen];
+            result.data = data;
+        }
+        return result;
+    }
+
+}
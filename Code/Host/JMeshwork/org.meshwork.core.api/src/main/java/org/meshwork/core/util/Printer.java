@@ -7,7 +7,8 @@ import java.io.PrintWriter;
  */
 public class Printer {
 
-    public static final synchronized void printHex(PrintWriter writer, byte[] data,
+    //stateless, callers writing to a shared writer synchronize on it themselves
+    public static final void printHex(PrintWriter writer, byte[] data,
                                       int maxCount, int maxPerRow,
                                       String rowPrefix, String rowSuffix, String separator) {
         int len = data == null ? 0 : data.length;
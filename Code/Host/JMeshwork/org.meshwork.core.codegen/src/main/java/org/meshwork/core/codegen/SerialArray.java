@@ -0,0 +1,29 @@
+package org.meshwork.core.codegen;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * byte[] field whose length is given by a preceding SerialField of the same class.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface SerialArray {
+
+    int index();
+
+    //name of the length field, which must have a lower index
+    String length();
+
+    //decoding fails for longer arrays
+    int max() default 255;
+
+    //reuse the existing array only if it has exactly the decoded length, otherwise if it is large enough
+    boolean exact() default true;
+
+    //decode an empty array as null
+    boolean nullIfEmpty() default false;
+
+}
@@ -0,0 +1,368 @@
+package org.meshwork.core.codegen;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a <Class>Codec with bounds-checked decode, encode into a ByteBuffer and size methods
+ * for every class with SerialField, SerialArray or SerialEmbedded fields.
+ */
+@SupportedAnnotationTypes({"org.meshwork.core.codegen.SerialField",
+                           "org.meshwork.core.codegen.SerialArray",
+                           "org.meshwork.core.codegen.SerialEmbedded"})
+public class SerialCodecProcessor extends AbstractProcessor {
+
+    public static final String CODEC_SUFFIX = "Codec";
+
+    protected static final int KIND_FIELD = 0;
+    protected static final int KIND_ARRAY = 1;
+    protected static final int KIND_EMBEDDED = 2;
+
+    protected static class Field {
+        protected VariableElement element;
+        protected String name;
+        protected int kind;
+        protected int index;
+        //SerialField
+        protected int size;
+        protected TypeKind type;
+        //SerialArray
+        protected String length;
+        protected int max;
+        protected boolean exact;
+        protected boolean nullIfEmpty;
+        //SerialEmbedded
+        protected String embeddedType;
+        protected String embeddedCodec;
+    }
+
+    protected final Set<String> generated = new HashSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Map<TypeElement, List<Field>> classes = new LinkedHashMap<TypeElement, List<Field>>();
+        collect(roundEnv.getElementsAnnotatedWith(SerialField.class), classes);
+        collect(roundEnv.getElementsAnnotatedWith(SerialArray.class), classes);
+        collect(roundEnv.getElementsAnnotatedWith(SerialEmbedded.class), classes);
+        for ( Map.Entry<TypeElement, List<Field>> entry : classes.entrySet() ) {
+            TypeElement type = entry.getKey();
+            if ( generated.add(type.getQualifiedName().toString()) && validate(type, entry.getValue()) )
+                generate(type, entry.getValue());
+        }
+        return true;
+    }
+
+    protected void collect(Set<? extends Element> elements, Map<TypeElement, List<Field>> classes) {
+        for ( Element element : elements ) {
+            if ( element.getKind() != ElementKind.FIELD )
+                continue;
+            VariableElement variable = (VariableElement) element;
+            Field field = toField(variable);
+            if ( field == null )
+                continue;
+            TypeElement owner = (TypeElement) variable.getEnclosingElement();
+            List<Field> fields = classes.get(owner);
+            if ( fields == null ) {
+                fields = new ArrayList<Field>();
+                classes.put(owner, fields);
+            }
+            fields.add(field);
+        }
+    }
+
+    protected Field toField(VariableElement variable) {
+        SerialField serialField = variable.getAnnotation(SerialField.class);
+        SerialArray serialArray = variable.getAnnotation(SerialArray.class);
+        SerialEmbedded serialEmbedded = variable.getAnnotation(SerialEmbedded.class);
+        int count = (serialField != null ? 1 : 0) + (serialArray != null ? 1 : 0) + (serialEmbedded != null ? 1 : 0);
+        if ( count > 1 ) {
+            error(variable, "Only one serial annotation allowed per field");
+            return null;
+        }
+        Set<Modifier> modifiers = variable.getModifiers();
+        if ( modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.FINAL) ) {
+            error(variable, "Serial fields must be non-private, non-static and non-final");
+            return null;
+        }
+        Field result = new Field();
+        result.element = variable;
+        result.name = variable.getSimpleName().toString();
+        TypeMirror type = variable.asType();
+        if ( serialField != null ) {
+            result.kind = KIND_FIELD;
+            result.index = serialField.index();
+            result.type = type.getKind();
+            int natural = naturalSize(result.type);
+            if ( natural == 0 ) {
+                error(variable, "SerialField must be byte, short, int or long");
+                return null;
+            }
+            result.size = serialField.size() == 0 ? natural : serialField.size();
+            if ( result.size < 1 || result.size > natural ) {
+                error(variable, "SerialField size must be between 1 and "+natural);
+                return null;
+            }
+        } else if ( serialArray != null ) {
+            result.kind = KIND_ARRAY;
+            result.index = serialArray.index();
+            if ( type.getKind() != TypeKind.ARRAY || ((ArrayType) type).getComponentType().getKind() != TypeKind.BYTE ) {
+                error(variable, "SerialArray must be a byte[]");
+                return null;
+            }
+            result.length = serialArray.length();
+            result.max = serialArray.max();
+            result.exact = serialArray.exact();
+            result.nullIfEmpty = serialArray.nullIfEmpty();
+        } else {
+            result.kind = KIND_EMBEDDED;
+            result.index = serialEmbedded.index();
+            if ( type.getKind() != TypeKind.DECLARED ) {
+                error(variable, "SerialEmbedded must be a class type");
+                return null;
+            }
+            TypeElement embedded = (TypeElement) ((DeclaredType) type).asElement();
+            result.embeddedType = embedded.getQualifiedName().toString();
+            result.embeddedCodec = result.embeddedType + CODEC_SUFFIX;
+        }
+        return result;
+    }
+
+    protected static int naturalSize(TypeKind kind) {
+        switch ( kind ) {
+            case BYTE: return 1;
+            case SHORT: return 2;
+            case INT: return 4;
+            case LONG: return 8;
+            default: return 0;
+        }
+    }
+
+    protected boolean validate(TypeElement type, List<Field> fields) {
+        Collections.sort(fields, new Comparator<Field>() {
+            @Override
+            public int compare(Field a, Field b) {
+                return a.index < b.index ? -1 : (a.index == b.index ? 0 : 1);
+            }
+        });
+        boolean result = true;
+        Map<String, Field> seen = new HashMap<String, Field>();
+        for ( int i = 0; i < fields.size(); i ++ ) {
+            Field field = fields.get(i);
+            if ( i > 0 && fields.get(i - 1).index == field.index ) {
+                error(field.element, "Duplicate serial index "+field.index+" in "+type.getSimpleName());
+                result = false;
+            }
+            if ( field.kind == KIND_ARRAY ) {
+                Field length = seen.get(field.length);
+                if ( length == null || length.kind != KIND_FIELD ) {
+                    error(field.element, "Length field '"+field.length+"' must be a SerialField with a lower index");
+                    result = false;
+                }
+            }
+            seen.put(field.name, field);
+        }
+        return result;
+    }
+
+    protected void generate(TypeElement type, List<Field> fields) {
+        String packageName = ((PackageElement) processingEnv.getElementUtils().getPackageOf(type)).getQualifiedName().toString();
+        String typeName = type.getSimpleName().toString();
+        String codecName = typeName + CODEC_SUFFIX;
+        StringBuilder sb = new StringBuilder(4096);
+        if ( packageName.length() > 0 )
+            sb.append("package ").append(packageName).append(";\n\n");
+        sb.append("import java.io.IOException;\n");
+        sb.append("import java.nio.ByteBuffer;\n\n");
+        sb.append("/**\n");
+        sb.append(" * Generated by ").append(SerialCodecProcessor.class.getSimpleName()).append(" from the serial annotations of ")
+          .append(typeName).append(", do not edit.\n");
+        sb.append(" */\n");
+        sb.append("public final class ").append(codecName).append(" {\n\n");
+        sb.append("    private ").append(codecName).append("() {\n    }\n\n");
+
+        //decode(target, data)
+        sb.append("    public static void decode(").append(typeName).append(" target, byte[] data) throws IOException {\n");
+        sb.append("        decode(target, data, 0, data == null ? 0 : data.length);\n");
+        sb.append("    }\n\n");
+
+        //decode(target, data, off, end)
+        sb.append("    //decodes into target from data[off] up to data[end - 1], returns the offset after the last field\n");
+        sb.append("    public static int decode(").append(typeName).append(" target, byte[] data, int off, int end) throws IOException {\n");
+        sb.append("        if ( data == null ? off != end || end != 0 : off < 0 || end > data.length )\n");
+        sb.append("            throw new IOException(\"").append(typeName).append(": invalid range \"+off+\"..\"+end);\n");
+        sb.append("        int pos = off;\n");
+        for ( Field field : fields ) {
+            switch ( field.kind ) {
+                case KIND_FIELD: generateDecodeField(sb, field); break;
+                case KIND_ARRAY: generateDecodeArray(sb, field); break;
+                case KIND_EMBEDDED: generateDecodeEmbedded(sb, field); break;
+            }
+        }
+        sb.append("        return pos;\n");
+        sb.append("    }\n\n");
+
+        //encode
+        sb.append("    public static void encode(").append(typeName).append(" source, ByteBuffer buf) {\n");
+        for ( Field field : fields ) {
+            switch ( field.kind ) {
+                case KIND_FIELD:
+                    for ( int i = field.size - 1; i >= 0; i -- ) {
+                        sb.append("        buf.put((byte) ");
+                        if ( i == 0 )
+                            sb.append("source.").append(field.name);
+                        else
+                            sb.append("(source.").append(field.name).append(" >> ").append(i * 8).append(")");
+                        sb.append(");\n");
+                    }
+                    break;
+                case KIND_ARRAY:
+                    sb.append("        if ( source.").append(field.name).append(" != null && source.").append(field.length).append(" > 0 )\n");
+                    sb.append("            buf.put(source.").append(field.name).append(", 0, source.").append(field.length).append(");\n");
+                    break;
+                case KIND_EMBEDDED:
+                    sb.append("        ").append(field.embeddedCodec).append(".encode(source.").append(field.name).append(", buf);\n");
+                    break;
+            }
+        }
+        sb.append("    }\n\n");
+
+        //size
+        int fixed = 0;
+        for ( Field field : fields )
+            if ( field.kind == KIND_FIELD )
+                fixed += field.size;
+        sb.append("    //encoded size in bytes\n");
+        sb.append("    public static int size(").append(typeName).append(" source) {\n");
+        sb.append("        int result = ").append(fixed).append(";\n");
+        for ( Field field : fields ) {
+            if ( field.kind == KIND_ARRAY )
+                sb.append("        result += Math.max(0, source.").append(field.length).append(");\n");
+            else if ( field.kind == KIND_EMBEDDED )
+                sb.append("        result += ").append(field.embeddedCodec).append(".size(source.").append(field.name).append(");\n");
+        }
+        sb.append("        return result;\n");
+        sb.append("    }\n\n");
+
+        //toBytes
+        sb.append("    //encoded body as a new array, null when empty\n");
+        sb.append("    public static byte[] toBytes(").append(typeName).append(" source) {\n");
+        sb.append("        int size = size(source);\n");
+        sb.append("        if ( size == 0 )\n");
+        sb.append("            return null;\n");
+        sb.append("        ByteBuffer buf = ByteBuffer.allocate(size);\n");
+        sb.append("        encode(source, buf);\n");
+        sb.append("        return buf.array();\n");
+        sb.append("    }\n\n");
+
+        //check
+        sb.append("    private static void check(int pos, int count, int end, String field) throws IOException {\n");
+        sb.append("        if ( pos + count > end )\n");
+        sb.append("            throw new IOException(\"").append(typeName).append(": truncated at field '\"+field+\"', needed \"+count+\" bytes, have \"+(end - pos));\n");
+        sb.append("    }\n\n");
+        sb.append("}\n");
+
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(
+                    (packageName.length() > 0 ? packageName + "." : "") + codecName, type);
+            Writer writer = file.openWriter();
+            try {
+                writer.write(sb.toString());
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            error(type, "Could not write "+codecName+": "+e.getMessage());
+        }
+    }
+
+    protected void generateDecodeField(StringBuilder sb, Field field) {
+        String javaType = field.type.name().toLowerCase();
+        boolean wide = field.type == TypeKind.LONG;
+        sb.append("        check(pos, ").append(field.size).append(", end, \"").append(field.name).append("\");\n");
+        sb.append("        target.").append(field.name).append(" = ");
+        if ( field.size == 1 ) {
+            sb.append(field.type == TypeKind.BYTE ? "data[pos]" : "(" + javaType + ") (data[pos] & 0xFF)");
+        } else {
+            sb.append("(").append(javaType).append(") (");
+            for ( int i = 0; i < field.size; i ++ ) {
+                int shift = (field.size - 1 - i) * 8;
+                if ( i > 0 )
+                    sb.append(" | ");
+                sb.append("(");
+                if ( wide )
+                    sb.append("(long) ");
+                sb.append("(data[pos + ").append(i).append("] & 0xFF)");
+                if ( shift > 0 )
+                    sb.append(" << ").append(shift);
+                sb.append(")");
+            }
+            sb.append(")");
+        }
+        sb.append(";\n");
+        sb.append("        pos += ").append(field.size).append(";\n");
+    }
+
+    protected void generateDecodeArray(StringBuilder sb, Field field) {
+        String n = field.name + "Len";
+        sb.append("        int ").append(n).append(" = target.").append(field.length).append(";\n");
+        sb.append("        if ( ").append(n).append(" < 0 || ").append(n).append(" > ").append(field.max).append(" )\n");
+        sb.append("            throw new IOException(\"").append(field.element.getEnclosingElement().getSimpleName())
+          .append(": invalid ").append(field.length).append(" \"+").append(n).append(");\n");
+        sb.append("        check(pos, ").append(n).append(", end, \"").append(field.name).append("\");\n");
+        String indent = "        ";
+        if ( field.nullIfEmpty ) {
+            sb.append("        if ( ").append(n).append(" == 0 ) {\n");
+            sb.append("            target.").append(field.name).append(" = null;\n");
+            sb.append("        } else {\n");
+            indent = "            ";
+        }
+        sb.append(indent).append("if ( target.").append(field.name).append(" == null || target.").append(field.name)
+          .append(".length ").append(field.exact ? "!=" : "<").append(" ").append(n).append(" )\n");
+        sb.append(indent).append("    target.").append(field.name).append(" = new byte[").append(n).append("];\n");
+        sb.append(indent).append("System.arraycopy(data, pos, target.").append(field.name).append(", 0, ").append(n).append(");\n");
+        if ( field.nullIfEmpty )
+            sb.append("        }\n");
+        sb.append("        pos += ").append(n).append(";\n");
+    }
+
+    protected void generateDecodeEmbedded(StringBuilder sb, Field field) {
+        sb.append("        if ( target.").append(field.name).append(" == null )\n");
+        sb.append("            target.").append(field.name).append(" = new ").append(field.embeddedType).append("();\n");
+        sb.append("        pos = ").append(field.embeddedCodec).append(".decode(target.").append(field.name).append(", data, pos, end);\n");
+    }
+
+    protected void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+}
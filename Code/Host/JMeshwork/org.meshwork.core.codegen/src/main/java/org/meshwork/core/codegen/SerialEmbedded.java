@@ -0,0 +1,17 @@
+package org.meshwork.core.codegen;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Field of a type with its own serial annotations, encoded in place by that type's generated codec.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface SerialEmbedded {
+
+    int index();
+
+}
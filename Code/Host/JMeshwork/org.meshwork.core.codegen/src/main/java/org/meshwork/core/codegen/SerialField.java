@@ -0,0 +1,21 @@
+package org.meshwork.core.codegen;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Integral field sent big-endian at the given position of the message body.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface SerialField {
+
+    //position among all serial fields of the class, fields are sent in ascending order
+    int index();
+
+    //bytes on the wire, 0 means the size of the Java type
+    int size() default 0;
+
+}
@@ -0,0 +1,11 @@
+package org.meshwork.core.emulator.l3;
+
+/**
+ * Supplies the ACK payload for a received message, same as Network::ACKProvider in the firmware.
+ */
+public interface ACKProvider {
+
+    //returns the number of bytes written to ack
+    public int returnACKPayload(byte src, byte port, byte[] data, int len, byte[] ack);
+
+}
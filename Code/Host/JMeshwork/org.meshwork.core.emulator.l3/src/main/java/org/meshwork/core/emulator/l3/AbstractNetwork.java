@@ -0,0 +1,186 @@
+package org.meshwork.core.emulator.l3;
+
+import org.meshwork.core.host.l3.Constants;
+import org.meshwork.core.host.l3.Route;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration, start/stop and receive side shared by the emulated networks, subclasses implement the delivery.
+ * Nothing is received unless injected, a routed message addressed to this node is reported through routeFound()
+ * before its ACK is asked for, like NetworkV1::recv() does.
+ */
+public abstract class AbstractNetwork implements EmulatedNetwork, Constants {
+
+    protected static final class Inbound {
+        protected final byte src;
+        protected final byte port;
+        protected final byte[] data;
+        protected final Route route;
+        protected final boolean broadcast;
+
+        protected Inbound(byte src, byte port, byte[] data, Route route, boolean broadcast) {
+            this.src = src;
+            this.port = port;
+            this.data = data == null ? new byte[0] : data;
+            this.route = route;
+            this.broadcast = broadcast;
+        }
+    }
+
+    protected final LinkedBlockingQueue<Inbound> inbound;
+    protected final byte[] ackBuffer;
+    protected RouteProvider routeProvider;
+    protected byte nwkcaps;
+    protected byte delivery;
+    protected byte retry;
+    protected byte channel;
+    protected short nwkid;
+    protected byte nodeid;
+    protected byte[] key;
+    protected volatile boolean started;
+
+    protected long sentCount;
+    protected long failedCount;
+    protected long broadcastCount;
+    protected long receivedCount;
+
+    protected AbstractNetwork() {
+        inbound = new LinkedBlockingQueue<Inbound>();
+        ackBuffer = new byte[ACK_PAYLOAD_MAX];
+        delivery = DELIVERY_EXHAUSTIVE;
+    }
+
+    //queues a direct message from src for the next recv()
+    public void inject(byte src, byte port, byte[] data) {
+        inbound.add(new Inbound(src, port, data, null, false));
+    }
+
+    //queues a routed message travelling along route for the next recv()
+    public void inject(Route route, byte port, byte[] data) {
+        if ( route == null )
+            throw new IllegalArgumentException("Route cannot be null!");
+        inbound.add(new Inbound(route.src, port, data, route.copy(), false));
+    }
+
+    public void injectBroadcast(byte src, byte port, byte[] data) {
+        inbound.add(new Inbound(src, port, data, null, true));
+    }
+
+    public int getInboundCount() {
+        return inbound.size();
+    }
+
+    @Override
+    public void setNetworkCaps(byte nwkcaps) {
+        this.nwkcaps = nwkcaps;
+    }
+
+    @Override
+    public void setDelivery(byte delivery) {
+        this.delivery = delivery;
+    }
+
+    @Override
+    public void setRetry(byte retry) {
+        this.retry = retry;
+    }
+
+    @Override
+    public void setChannel(byte channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void setNetworkID(short nwkid) {
+        this.nwkid = nwkid;
+    }
+
+    @Override
+    public void setNodeID(byte nodeid) {
+        this.nodeid = nodeid;
+    }
+
+    @Override
+    public void setNetworkKey(byte[] key) {
+        this.key = key;
+    }
+
+    @Override
+    public void setRouteProvider(RouteProvider provider) {
+        this.routeProvider = provider;
+    }
+
+    public byte getNodeID() {
+        return nodeid;
+    }
+
+    public byte getDelivery() {
+        return delivery;
+    }
+
+    public byte getRetry() {
+        return retry;
+    }
+
+    //like the radio driver, fails until a node ID is configured
+    @Override
+    public boolean begin() {
+        started = nodeid != 0;
+        return started;
+    }
+
+    @Override
+    public boolean end() {
+        started = false;
+        return true;
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    @Override
+    public int recv(long timeout, ACKProvider provider) {
+        Inbound message;
+        try {
+            message = inbound.poll(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ERROR_RECV_TIMEOUT;
+        }
+        if ( message == null )
+            return ERROR_RECV_TIMEOUT;
+        receivedCount ++;
+        if ( message.broadcast )
+            return OK;
+        if ( message.route != null ) {
+            //another node's route, it was delivered without our relaying
+            if ( message.route.dst != nodeid )
+                return OK_MESSAGE_IGNORED;
+            if ( message.route.hopCount > 0 && routeProvider != null )
+                routeProvider.routeFound(message.route);
+        }
+        if ( provider != null )
+            provider.returnACKPayload(message.src, message.port, message.data, message.data.length, ackBuffer);
+        return OK;
+    }
+
+    public long getSentCount() {
+        return sentCount;
+    }
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    public long getBroadcastCount() {
+        return broadcastCount;
+    }
+
+    public long getReceivedCount() {
+        return receivedCount;
+    }
+
+}
@@ -0,0 +1,38 @@
+package org.meshwork.core.emulator.l3;
+
+/**
+ * The radio network behind an emulated Controller, the Java side of Meshwork::L3::Network as NetworkSerial uses it.
+ * Results are the Constants OK and ERROR_* codes of the firmware.
+ */
+public interface EmulatedNetwork {
+
+    public void setNetworkCaps(byte nwkcaps);
+
+    public void setDelivery(byte delivery);
+
+    public void setRetry(byte retry);
+
+    public void setChannel(byte channel);
+
+    public void setNetworkID(short nwkid);
+
+    public void setNodeID(byte nodeid);
+
+    public void setNetworkKey(byte[] key);
+
+    //asked for routes during routed sends and told about their outcome
+    public void setRouteProvider(RouteProvider provider);
+
+    public boolean begin();
+
+    public boolean end();
+
+    //the ACK payload length written to ack, or a negative error code
+    public int send(byte dst, byte port, byte[] data, int len, byte[] ack);
+
+    public int broadcast(byte port, byte[] data, int len);
+
+    //waits up to timeout millis for one message, a message addressed to this node is passed to provider for its ACK
+    public int recv(long timeout, ACKProvider provider);
+
+}
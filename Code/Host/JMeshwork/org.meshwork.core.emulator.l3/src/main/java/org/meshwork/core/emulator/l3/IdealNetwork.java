@@ -0,0 +1,90 @@
+package org.meshwork.core.emulator.l3;
+
+import org.meshwork.core.host.l3.Route;
+
+/**
+ * Network where every present node hears every other one without loss or delay, so sends cost nothing and the host
+ * is the only bottleneck. Delivery follows NetworkV1::send(): direct first, then the routes of the RouteProvider,
+ * then flood, limited to the configured delivery methods. A route over a node which is not present fails and is
+ * reported through RouteProvider.routeFailed() like the firmware does.
+ */
+public class IdealNetwork extends AbstractNetwork {
+
+    protected final boolean[] present = new boolean[256];
+
+    //all node IDs present
+    public IdealNetwork() {
+        for ( int i = MIN_NODE_ID & 0xFF; i <= (MAX_NODE_ID & 0xFF); i ++ )
+            present[i] = true;
+    }
+
+    //an absent node doesn't answer, sends to it and routes over it fail
+    public void setPresent(byte node, boolean value) {
+        present[node & 0xFF] = value;
+    }
+
+    public boolean isPresent(byte node) {
+        return present[node & 0xFF];
+    }
+
+    //a route works when it starts here and all of its nodes are present
+    protected boolean isReachable(Route route) {
+        if ( route.src != nodeid || !present[route.dst & 0xFF] )
+            return false;
+        for ( int i = 0; i < route.hopCount; i ++ )
+            if ( !present[route.getHop(i) & 0xFF] )
+                return false;
+        return true;
+    }
+
+    @Override
+    public int send(byte dst, byte port, byte[] data, int len, byte[] ack) {
+        if ( len > PAYLOAD_MAX )
+            return ERROR_PAYLOAD_TOO_LONG;
+        if ( !started )
+            return ERROR_DRIVER_SEND_FAILED;
+        sentCount ++;
+        int result = -1;
+        if ( (delivery & DELIVERY_DIRECT) != 0 )
+            result = present[dst & 0xFF] ? OK : ERROR_ACK_NOT_RECEIVED;
+        if ( result <= 0 && (delivery & DELIVERY_ROUTED) != 0 ) {
+            if ( dst == BROADCAST ) {
+                result = ERROR_DELIVERY_METHOD_INVALID;
+            } else {
+                result = ERROR_NO_KNOWN_ROUTES;
+                int routeCount = routeProvider == null ? 0 : routeProvider.getRouteCount(dst);
+                for ( int i = 0; i < routeCount; i ++ ) {
+                    Route route = routeProvider.getRoute(dst, i);
+                    if ( route == null || route.hopCount > MAX_ROUTING_HOPS )
+                        continue;
+                    if ( isReachable(route) ) {
+                        result = OK;
+                        break;
+                    }
+                    result = ERROR_ACK_NOT_RECEIVED;
+                    routeProvider.routeFailed(route);
+                }
+            }
+        }
+        //everybody hears the flood, so it finds dst directly whenever it is present
+        if ( result <= 0 && (delivery & DELIVERY_FLOOD) != 0 )
+            result = present[dst & 0xFF] ? OK : ERROR_ACK_NOT_RECEIVED;
+        if ( result != OK ) {
+            failedCount ++;
+            return result;
+        }
+        //remote nodes of the ideal network ACK without payload
+        return 0;
+    }
+
+    @Override
+    public int broadcast(byte port, byte[] data, int len) {
+        if ( len > PAYLOAD_MAX )
+            return ERROR_PAYLOAD_TOO_LONG;
+        if ( !started )
+            return ERROR_DRIVER_SEND_FAILED;
+        broadcastCount ++;
+        return OK;
+    }
+
+}
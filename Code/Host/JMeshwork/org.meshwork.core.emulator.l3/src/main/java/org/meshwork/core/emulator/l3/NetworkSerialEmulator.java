@@ -0,0 +1,386 @@
+package org.meshwork.core.emulator.l3;
+
+import org.meshwork.core.AbstractMessage;
+import org.meshwork.core.AbstractMessageTransport;
+import org.meshwork.core.MessageData;
+import org.meshwork.core.SerialMessageConstants;
+import org.meshwork.core.TransportTimeoutException;
+import org.meshwork.core.host.l3.*;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * Java port of the firmware NetworkSerial, plays the Controller on the device end of a transport, e.g. the peer end of
+ * a loopback pair, and answers the host the way NetworkSerial.cpp does. Radio traffic goes to an EmulatedNetwork,
+ * whose route lookups and reports turn into MRFGetRouteCount/MRFGetRoute/MRFRouteFound/MRFRouteFailed callbacks to
+ * the host under the seq of the request being processed, same as on the device.
+ * Requests are processed one at a time on a single thread like in the firmware. Unlike the firmware, a request which
+ * arrives while a callback waits for its answer is kept for later instead of being taken for the answer, so a
+ * pipelining host doesn't get sequence mismatches.
+ */
+public class NetworkSerialEmulator implements Runnable, RouteProvider, ACKProvider, Constants {
+
+    //device name the consoles map to a loopback pair with an emulator on its peer end
+    public static final String DEVICE_NAME = "emulator";
+    //max time the thread blocks in the transport, bounds the stop latency
+    public static final int POLL_TIMEOUT = 100;
+
+    protected final EmulatedNetwork network;
+    protected final AbstractMessageTransport transport;
+    protected final MessageAdapter adapter;
+    //requests read while a callback waited for its answer
+    protected final ArrayDeque<MessageData> deferred;
+    protected final byte[] ackData;
+    protected int responseTimeout;
+    //seq of the request being processed, callbacks go out under it
+    protected byte currentSeq;
+    protected volatile boolean running;
+    protected Thread thread;
+
+    protected long processedCount;
+    protected long callbackCount;
+
+    public NetworkSerialEmulator(EmulatedNetwork network, AbstractMessageTransport transport) {
+        if ( network == null )
+            throw new IllegalArgumentException("Network cannot be null!");
+        if ( transport == null )
+            throw new IllegalArgumentException("Transport cannot be null!");
+        this.network = network;
+        this.transport = transport;
+        adapter = new MessageAdapter();
+        deferred = new ArrayDeque<MessageData>();
+        ackData = new byte[ACK_PAYLOAD_MAX];
+        responseTimeout = SerialMessageConstants.TIMEOUT_RESPONSE;
+        network.setRouteProvider(this);
+    }
+
+    public EmulatedNetwork getNetwork() {
+        return network;
+    }
+
+    public int getResponseTimeout() {
+        return responseTimeout;
+    }
+
+    //how long a callback waits for the host's answer, SerialMessageAdapter::TIMEOUT_RESPONSE by default
+    public void setResponseTimeout(int responseTimeout) {
+        this.responseTimeout = responseTimeout;
+    }
+
+    public long getProcessedCount() {
+        return processedCount;
+    }
+
+    public long getCallbackCount() {
+        return callbackCount;
+    }
+
+    //same as NetworkSerial::initSerial() after a reset, asks the host for the configuration
+    public void initSerial() throws IOException {
+        transport.sendMessage(new MConfigRequest((byte) 1));
+    }
+
+    public synchronized void start() {
+        if ( running )
+            return;
+        running = true;
+        thread = new Thread(this, "NetworkSerialEmulator");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        Thread temp;
+        synchronized (this) {
+            running = false;
+            temp = thread;
+            thread = null;
+        }
+        if ( temp != null ) {
+            temp.interrupt();
+            try {
+                temp.join(POLL_TIMEOUT * 10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void run() {
+        while ( running ) {
+            try {
+                MessageData data = deferred.poll();
+                if ( data == null )
+                    data = transport.readMessage(POLL_TIMEOUT);
+                processOneMessage(data);
+            } catch (TransportTimeoutException e) {
+                //nothing from the host
+            } catch (IOException e) {
+                if ( !transport.isOpen() )
+                    running = false;
+            }
+        }
+    }
+
+    //one request from the host, returns one of the SM_MESSAGE_* codes like SerialMessageAdapter::processOneMessage()
+    public byte processOneMessage(MessageData data) throws IOException {
+        processedCount ++;
+        currentSeq = data.seq;
+        byte result = SerialMessageConstants.SM_MESSAGE_UNKNOWN;
+        if ( data.code == NS_CODE ) {
+            //the codec rejects long keys as malformed, the firmware answers them with its own error
+            if ( data.subCode == NS_SUBCODE_CFGNWK && data.data != null && data.data.length >= 5
+                    && (data.data[4] & 0xFF) > MAX_NETWORK_KEY_LEN ) {
+                respondNOK(NS_NOK_KEY_TOO_LONG);
+                return SerialMessageConstants.SM_MESSAGE_ERROR;
+            }
+            AbstractMessage message;
+            try {
+                message = adapter.deserialize(data);
+            } catch (IOException e) {
+                respondNOK(SerialMessageConstants.SM_NOK_INSUFFICIENT_DATA);
+                return SerialMessageConstants.SM_MESSAGE_ERROR;
+            }
+            if ( message != null ) {
+                switch ( message.getSubCode() ) {
+                    case NS_SUBCODE_CFGBASIC: result = processCfgBasic((MConfigBasic) message); break;
+                    case NS_SUBCODE_CFGNWK: result = processCfgNwk((MConfigNetwork) message); break;
+                    case NS_SUBCODE_RFINIT: result = processRFInit(); break;
+                    case NS_SUBCODE_RFDEINIT: result = processRFDeinit(); break;
+                    case NS_SUBCODE_RFSTARTRECV: result = processRFStartRecv((MRFStartReceive) message); break;
+                    case NS_SUBCODE_RFSEND: result = processRFSend((MRFSend) message); break;
+                    case NS_SUBCODE_RFBCAST: result = processRFBroadcast((MRFBroadcast) message); break;
+                }
+            }
+        }
+        if ( result == SerialMessageConstants.SM_MESSAGE_UNKNOWN )
+            respondWCode(data.code, SerialMessageConstants.SM_SUBCODE_UNKNOWN);
+        return result;
+    }
+
+    protected byte processCfgBasic(MConfigBasic message) throws IOException {
+        network.setNetworkCaps(message.nwkcaps);
+        network.setDelivery(message.delivery);
+        network.setRetry(message.retry);
+        respondWCode(NS_CODE, SerialMessageConstants.SM_SUBCODE_OK);
+        return SerialMessageConstants.SM_MESSAGE_PROCESSED;
+    }
+
+    protected byte processCfgNwk(MConfigNetwork message) throws IOException {
+        network.setChannel(message.channel);
+        network.setNetworkID(message.nwkid);
+        network.setNodeID(message.nodeid);
+        network.setNetworkKey(message.key);
+        respondWCode(NS_CODE, SerialMessageConstants.SM_SUBCODE_OK);
+        return SerialMessageConstants.SM_MESSAGE_PROCESSED;
+    }
+
+    protected byte processRFInit() throws IOException {
+        boolean result = network.begin();
+        if ( result )
+            respondWCode(NS_CODE, SerialMessageConstants.SM_SUBCODE_OK);
+        else
+            respondNOK(SerialMessageConstants.SM_NOK_ILLEGAL_STATE);
+        //the firmware answers a second time, the host drops it as a stray message
+        if ( result )
+            respondWCode(NS_CODE, SerialMessageConstants.SM_SUBCODE_OK);
+        else
+            respondNOK(SerialMessageConstants.SM_NOK_GENERAL);
+        return result ? SerialMessageConstants.SM_MESSAGE_PROCESSED : SerialMessageConstants.SM_MESSAGE_ERROR;
+    }
+
+    protected byte processRFDeinit() throws IOException {
+        boolean result = network.end();
+        if ( result )
+            respondWCode(NS_CODE, SerialMessageConstants.SM_SUBCODE_OK);
+        else
+            respondNOK(SerialMessageConstants.SM_NOK_ILLEGAL_STATE);
+        return result ? SerialMessageConstants.SM_MESSAGE_PROCESSED : SerialMessageConstants.SM_MESSAGE_ERROR;
+    }
+
+    protected byte processRFStartRecv(MRFStartReceive message) throws IOException {
+        int res = network.recv(message.timeout & 0xFFFFFFFFL, this);
+        if ( res == OK ) {
+            respondWCode(NS_CODE, SerialMessageConstants.SM_SUBCODE_OK);
+        } else if ( res == OK_MESSAGE_INTERNAL || res == OK_MESSAGE_IGNORED ) {
+            respondWCode(NS_CODE, NS_SUBCODE_INTERNAL);
+        } else {
+            respondNOK((byte) res);
+            return SerialMessageConstants.SM_MESSAGE_ERROR;
+        }
+        return SerialMessageConstants.SM_MESSAGE_PROCESSED;
+    }
+
+    protected byte processRFSend(MRFSend message) throws IOException {
+        int res = network.send(message.dst, message.port, message.data, message.datalen & 0xFF, ackData);
+        if ( res < 0 ) {
+            respondNOK(NS_NOK_SEND);
+            return SerialMessageConstants.SM_MESSAGE_ERROR;
+        }
+        MRFSendACK ack = new MRFSendACK(currentSeq);
+        ack.datalen = (byte) res;
+        ack.data = new byte[res];
+        System.arraycopy(ackData, 0, ack.data, 0, res);
+        transport.sendMessage(ack);
+        return SerialMessageConstants.SM_MESSAGE_PROCESSED;
+    }
+
+    protected byte processRFBroadcast(MRFBroadcast message) throws IOException {
+        int res = network.broadcast(message.port, message.data, message.datalen & 0xFF);
+        if ( res != OK ) {
+            respondNOK(NS_NOK_BCAST);
+            return SerialMessageConstants.SM_MESSAGE_ERROR;
+        }
+        respondWCode(NS_CODE, SerialMessageConstants.SM_SUBCODE_OK);
+        return SerialMessageConstants.SM_MESSAGE_PROCESSED;
+    }
+
+    protected void respondWCode(byte code, byte subCode) throws IOException {
+        MessageData result = new MessageData();
+        result.len = 3;
+        result.seq = currentSeq;
+        result.code = code;
+        result.subCode = subCode;
+        transport.sendMessage(result);
+    }
+
+    protected void respondNOK(byte error) throws IOException {
+        MNOK result = new MNOK(currentSeq);
+        result.error = error;
+        transport.sendMessage(result);
+    }
+
+    protected static boolean isResponse(MessageData data) {
+        return data.code == NS_CODE && (data.subCode == NS_SUBCODE_RFGETROUTECOUNTRES || data.subCode == NS_SUBCODE_RFGETROUTERES
+                || data.subCode == NS_SUBCODE_RFRECVACK || data.subCode == SerialMessageConstants.SM_SUBCODE_NOK);
+    }
+
+    //answer to the callback just sent, or a stale answer under another seq, null on timeout
+    protected MessageData awaitResponse() throws IOException {
+        long deadline = System.currentTimeMillis() + responseTimeout;
+        while ( true ) {
+            long wait = deadline - System.currentTimeMillis();
+            if ( wait <= 0 )
+                return null;
+            MessageData data;
+            try {
+                data = transport.readMessage((int) wait);
+            } catch (TransportTimeoutException e) {
+                return null;
+            }
+            if ( data.seq == currentSeq || isResponse(data) )
+                return data;
+            deferred.add(data);
+        }
+    }
+
+    @Override
+    public int getRouteCount(byte dst) {
+        callbackCount ++;
+        try {
+            MRFGetRouteCount request = new MRFGetRouteCount(currentSeq);
+            request.dst = dst;
+            transport.sendMessage(request);
+            MessageData data = awaitResponse();
+            if ( data == null ) {
+                respondNOK(SerialMessageConstants.SM_NOK_INSUFFICIENT_DATA);
+            } else if ( data.seq != currentSeq ) {
+                respondNOK(SerialMessageConstants.SM_NOK_SEQUENCE_MISMATCH);
+            } else if ( data.subCode == NS_SUBCODE_RFGETROUTECOUNTRES ) {
+                return ((MRFGetRouteCountRes) adapter.deserialize(data)).count & 0xFF;
+            } else if ( data.subCode != SerialMessageConstants.SM_SUBCODE_NOK ) {
+                respondNOK(SerialMessageConstants.SM_NOK_GENERAL);
+            }
+        } catch (IOException e) {
+            //no routes, the send fails like on a broken serial line
+        }
+        return 0;
+    }
+
+    @Override
+    public Route getRoute(byte dst, int index) {
+        callbackCount ++;
+        try {
+            MRFGetRoute request = new MRFGetRoute(currentSeq);
+            request.dst = dst;
+            request.index = (byte) index;
+            transport.sendMessage(request);
+            MessageData data = awaitResponse();
+            if ( data == null ) {
+                respondNOK(SerialMessageConstants.SM_NOK_INSUFFICIENT_DATA);
+            } else if ( data.seq != currentSeq ) {
+                respondNOK(SerialMessageConstants.SM_NOK_SEQUENCE_MISMATCH);
+            } else if ( data.subCode == NS_SUBCODE_RFGETROUTERES ) {
+                return ((MRFGetRouteRes) adapter.deserialize(data)).route;
+            } else if ( data.subCode != SerialMessageConstants.SM_SUBCODE_NOK ) {
+                respondNOK(SerialMessageConstants.SM_NOK_GENERAL);
+            }
+        } catch (IOException e) {
+            //no route
+        }
+        return null;
+    }
+
+    @Override
+    public void routeFound(Route route) {
+        callbackCount ++;
+        MRFRouteFound message = new MRFRouteFound(currentSeq);
+        message.route = route;
+        try {
+            transport.sendMessage(message);
+        } catch (IOException e) {
+            //reports are not acknowledged, nothing to undo
+        }
+    }
+
+    @Override
+    public void routeFailed(Route route) {
+        callbackCount ++;
+        MRFRouteFailed message = new MRFRouteFailed(currentSeq);
+        message.route = route;
+        try {
+            transport.sendMessage(message);
+        } catch (IOException e) {
+            //reports are not acknowledged, nothing to undo
+        }
+    }
+
+    //passes the received message to the host as MRFReceive and returns the payload of its MRFReceiveACK
+    @Override
+    public int returnACKPayload(byte src, byte port, byte[] data, int len, byte[] ack) {
+        callbackCount ++;
+        try {
+            MRFReceive message = new MRFReceive(currentSeq);
+            message.src = src;
+            message.port = port;
+            message.datalen = (byte) len;
+            message.data = new byte[len];
+            if ( len > 0 )
+                System.arraycopy(data, 0, message.data, 0, len);
+            transport.sendMessage(message);
+            MessageData response = awaitResponse();
+            if ( response == null ) {
+                respondNOK(SerialMessageConstants.SM_NOK_INSUFFICIENT_DATA);
+            } else if ( response.seq == currentSeq && response.subCode == NS_SUBCODE_RFRECVACK ) {
+                //the host doesn't expect a reply to its ACK, errors are only dropped
+                MRFReceiveACK result = (MRFReceiveACK) adapter.deserialize(response);
+                int reslen = result.datalen & 0xFF;
+                if ( reslen <= ack.length ) {
+                    if ( reslen > 0 )
+                        System.arraycopy(result.data, 0, ack, 0, reslen);
+                    return reslen;
+                }
+            }
+        } catch (IOException e) {
+            //no ACK payload
+        }
+        return 0;
+    }
+
+}
@@ -0,0 +1,19 @@
+package org.meshwork.core.emulator.l3;
+
+import org.meshwork.core.host.l3.Route;
+
+/**
+ * Route source of an EmulatedNetwork, same as NetworkV1::RouteProvider in the firmware.
+ */
+public interface RouteProvider {
+
+    public int getRouteCount(byte dst);
+
+    //null when the route is not available
+    public Route getRoute(byte dst, int index);
+
+    public void routeFound(Route route);
+
+    public void routeFailed(Route route);
+
+}
@@ -78,6 +78,8 @@ public interface Constants {
     public static final byte ERROR_PAYLOAD_TOO_LONG = -11;
     /** Retry count is invalid. */
     public static final byte ERROR_INVALID_RETRY_COUNT = -12;
+    /** ACK payload too long for the buffer. */
+    public static final byte ERROR_ACK_TOO_LONG = -13;
 
     //Internal network errors subCode group
     /** Message ignored due to max hops reached. */
@@ -97,6 +99,16 @@ public interface Constants {
     /** Rerouting a message has failed. */
     public static final byte ERROR_REROUTE_FAILED = -41;
 
+    //Driver errors subCode group
+    /** Radio driver failed to send. */
+    public static final byte ERROR_DRIVER_SEND_FAILED = -51;
+    /** Radio driver send aborted. */
+    public static final byte ERROR_DRIVER_SEND_ABORTED = -52;
+    /** Nothing received within the timeout. */
+    public static final byte ERROR_RECV_TIMEOUT = -56;
+    /** Received payload too long for the buffer. */
+    public static final byte ERROR_RECV_TOO_LONG = -57;
+
     /** First possible node ID. */
     public static final byte MIN_NODE_ID 	= 1;
     /** Last possible node ID. */
@@ -104,6 +116,24 @@ public interface Constants {
     /** Maximum node count in the network. */
     public static final byte MAX_NODE_COUNT = MAX_NODE_ID - MIN_NODE_ID;
 
+    /** Maximum hop count of a route, same as NetworkV1::MAX_ROUTING_HOPS in the firmware. */
+    public static final byte MAX_ROUTING_HOPS 	= 8;
+    /** Maximum payload of a message, same as NetworkV1::PAYLOAD_MAX in the firmware. */
+    public static final byte PAYLOAD_MAX 		= 16;
+    /** Maximum payload of an ACK, same as NetworkV1::ACK_PAYLOAD_MAX in the firmware. */
+    public static final byte ACK_PAYLOAD_MAX 	= 8;
+    /** Broadcast address, same as Wireless::Driver::BROADCAST in Cosa. */
+    public static final byte BROADCAST 			= 0;
+
+    /** Worst route QoS, same range as Network::QOS_LEVEL_* in the firmware. */
+    public static final int QOS_LEVEL_MIN 		= -100;
+    /** QoS of a new route. */
+    public static final int QOS_LEVEL_AVERAGE 	= 0;
+    /** Best route QoS. */
+    public static final int QOS_LEVEL_MAX 		= 100;
+    /** Each found/failed report moves the route QoS by 1/2^shift of the way towards max/min, older reports decay. */
+    public static final int QOS_DECAY_SHIFT 	= 2;
+
     /** Maximum length of a network key. */
     public static final byte MAX_NETWORK_KEY_LEN 	= 8;
 
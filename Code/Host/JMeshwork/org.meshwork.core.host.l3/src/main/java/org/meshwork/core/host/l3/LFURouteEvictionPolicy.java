@@ -0,0 +1,22 @@
+package org.meshwork.core.host.l3;
+
+/**
+ * Evicts the route with the fewest found/failed reports, the least recently used one among equals.
+ */
+public class LFURouteEvictionPolicy implements RouteEvictionPolicy {
+
+    public static final LFURouteEvictionPolicy INSTANCE = new LFURouteEvictionPolicy();
+
+    @Override
+    public int selectVictim(Route[] routes, int count) {
+        int result = 0;
+        for ( int i = 1; i < count; i ++ ) {
+            int uses = routes[i].getUseCount();
+            int best = routes[result].getUseCount();
+            if ( uses < best || (uses == best && routes[i].lastUsed < routes[result].lastUsed) )
+                result = i;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,19 @@
+package org.meshwork.core.host.l3;
+
+/**
+ * Evicts the route with the oldest found/failed report.
+ */
+public class LRURouteEvictionPolicy implements RouteEvictionPolicy {
+
+    public static final LRURouteEvictionPolicy INSTANCE = new LRURouteEvictionPolicy();
+
+    @Override
+    public int selectVictim(Route[] routes, int count) {
+        int result = 0;
+        for ( int i = 1; i < count; i ++ )
+            if ( routes[i].lastUsed < routes[result].lastUsed )
+                result = i;
+        return result;
+    }
+
+}
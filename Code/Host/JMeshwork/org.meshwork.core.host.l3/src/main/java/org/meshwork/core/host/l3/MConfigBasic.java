@@ -2,17 +2,22 @@ package org.meshwork.core.host.l3;
 
 import org.meshwork.core.AbstractMessage;
 import org.meshwork.core.MessageData;
+import org.meshwork.core.codegen.SerialField;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-10.
  */
 public class MConfigBasic extends AbstractMessage implements Constants {
 
+    @SerialField(index = 0)
     public byte nwkcaps;
+    @SerialField(index = 1)
     public byte delivery;
+    @SerialField(index = 2)
     public byte retry;
 
     public MConfigBasic(byte seq) {
@@ -29,17 +34,17 @@ public class MConfigBasic extends AbstractMessage implements Constants {
     @Override
     public AbstractMessage deserialize(MessageData msg) throws IOException {
         MConfigBasic result = new MConfigBasic(msg.seq);
-        result.nwkcaps = msg.data[0];
-        result.delivery = msg.data[1];
-        result.retry = msg.data[2];
+        MConfigBasicCodec.decode(result, msg.data);
         return result;
     }
 
     @Override
     public void serializeImpl(MessageData msg) {
-        msg.data = new byte[3];
-        msg.data[0] = nwkcaps;
-        msg.data[1] = delivery;
-        msg.data[2] = retry;
+        msg.data = MConfigBasicCodec.toBytes(this);
+    }
+
+    @Override
+    public void serializeImpl(ByteBuffer buf) {
+        MConfigBasicCodec.encode(this, buf);
     }
 }
@@ -6,6 +6,7 @@ import org.meshwork.core.SerialMessageConstants;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-10.
@@ -34,4 +35,8 @@ public class MOK extends AbstractMessage implements Constants {
         msg.data = null;
         msg.len = 1;
     }
+
+    @Override
+    public void serializeImpl(ByteBuffer buf) {
+    }
 }
@@ -2,24 +2,49 @@ package org.meshwork.core.host.l3;
 
 import org.meshwork.core.AbstractMessage;
 import org.meshwork.core.MessageData;
+import org.meshwork.core.codegen.SerialArray;
+import org.meshwork.core.codegen.SerialField;
 import org.meshwork.core.util.Printer;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-10.
  */
 public class MRFBroadcast extends AbstractMessage implements Constants {
 
+    @SerialField(index = 0)
     public byte port;
+    @SerialField(index = 1)
     public byte datalen;
+    @SerialArray(index = 2, length = "datalen")
     public byte[] data;
 
     public MRFBroadcast(byte seq) {
         super(seq, NS_CODE, NS_SUBCODE_RFBCAST);
     }
 
+    //payload accessors, views read the payload straight from the received frame instead of the data field
+    public byte getData(int index) {
+        if ( index < 0 || index >= datalen )
+            throw new IndexOutOfBoundsException("Index: "+index+", DataLen: "+datalen);
+        return data[index];
+    }
+
+    public int copyData(byte[] dst, int off) {
+        if ( datalen > 0 )
+            System.arraycopy(data, 0, dst, off, datalen);
+        return datalen;
+    }
+
+    public byte[] copyData() {
+        byte[] result = new byte[datalen];
+        copyData(result, 0);
+        return result;
+    }
+
     @Override
     public void toString(PrintWriter writer, String rowPrefix, String rowSuffix, String separator) {
         writer.print("MRFBroadcast: Port=");writer.print(port);
@@ -37,19 +62,17 @@ public class MRFBroadcast extends AbstractMessage implements Constants {
     @Override
     public AbstractMessage deserialize(MessageData msg) throws IOException {
         MRFBroadcast result = new MRFBroadcast(msg.seq);
-        result.port = msg.data[0];
-        result.datalen = msg.data[1];
-        result.data = new byte[result.datalen];
-        System.arraycopy(msg.data, 2, result.data, 0, result.datalen);
+        MRFBroadcastCodec.decode(result, msg.data);
         return result;
     }
 
     @Override
     public void serializeImpl(MessageData msg) {
-        msg.data = new byte[2 + datalen];
-        msg.data[0] = port;
-        msg.data[1] = datalen;
-        if ( datalen > 0)
-            System.arraycopy(data, 0, msg.data, 2, datalen);
+        msg.data = MRFBroadcastCodec.toBytes(this);
+    }
+
+    @Override
+    public void serializeImpl(ByteBuffer buf) {
+        MRFBroadcastCodec.encode(this, buf);
     }
 }
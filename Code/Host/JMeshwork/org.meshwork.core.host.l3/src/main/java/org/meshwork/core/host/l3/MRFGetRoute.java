@@ -2,16 +2,20 @@ package org.meshwork.core.host.l3;
 
 import org.meshwork.core.AbstractMessage;
 import org.meshwork.core.MessageData;
+import org.meshwork.core.codegen.SerialField;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-10.
  */
 public class MRFGetRoute extends AbstractMessage implements Constants {
 
+    @SerialField(index = 0)
     public byte dst;
+    @SerialField(index = 1)
     public byte index;
 
     public MRFGetRoute(byte seq) {
@@ -27,15 +31,17 @@ public class MRFGetRoute extends AbstractMessage implements Constants {
     @Override
     public AbstractMessage deserialize(MessageData msg) throws IOException {
         MRFGetRoute result = new MRFGetRoute(msg.seq);
-        result.dst = msg.data[0];
-        result.index = msg.data[1];
+        MRFGetRouteCodec.decode(result, msg.data);
         return result;
     }
 
     @Override
     public void serializeImpl(MessageData msg) {
-        msg.data = new byte[2];
-        msg.data[0] = dst;
-        msg.data[1] = index;
+        msg.data = MRFGetRouteCodec.toBytes(this);
+    }
+
+    @Override
+    public void serializeImpl(ByteBuffer buf) {
+        MRFGetRouteCodec.encode(this, buf);
     }
 }
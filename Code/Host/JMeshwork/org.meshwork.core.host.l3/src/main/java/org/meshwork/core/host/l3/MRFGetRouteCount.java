@@ -2,15 +2,18 @@ package org.meshwork.core.host.l3;
 
 import org.meshwork.core.AbstractMessage;
 import org.meshwork.core.MessageData;
+import org.meshwork.core.codegen.SerialField;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-10.
  */
 public class MRFGetRouteCount extends AbstractMessage implements Constants {
 
+    @SerialField(index = 0)
     public byte dst;
 
     public MRFGetRouteCount(byte seq) {
@@ -25,13 +28,17 @@ public class MRFGetRouteCount extends AbstractMessage implements Constants {
     @Override
     public AbstractMessage deserialize(MessageData msg) throws IOException {
         MRFGetRouteCount result = new MRFGetRouteCount(msg.seq);
-        result.dst = msg.data[0];
+        MRFGetRouteCountCodec.decode(result, msg.data);
         return result;
     }
 
     @Override
     public void serializeImpl(MessageData msg) {
-        msg.data = new byte[1];
-        msg.data[0] = dst;
+        msg.data = MRFGetRouteCountCodec.toBytes(this);
+    }
+
+    @Override
+    public void serializeImpl(ByteBuffer buf) {
+        MRFGetRouteCountCodec.encode(this, buf);
     }
 }
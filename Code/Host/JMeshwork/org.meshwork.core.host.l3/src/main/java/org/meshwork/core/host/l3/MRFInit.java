@@ -5,6 +5,7 @@ import org.meshwork.core.MessageData;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-10.
@@ -29,4 +30,8 @@ public class MRFInit extends AbstractMessage implements Constants {
     @Override
     public void serializeImpl(MessageData msg) {
     }
+
+    @Override
+    public void serializeImpl(ByteBuffer buf) {
+    }
 }
@@ -2,25 +2,51 @@ package org.meshwork.core.host.l3;
 
 import org.meshwork.core.AbstractMessage;
 import org.meshwork.core.MessageData;
+import org.meshwork.core.codegen.SerialArray;
+import org.meshwork.core.codegen.SerialField;
 import org.meshwork.core.util.Printer;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-10.
  */
 public class MRFReceive extends AbstractMessage implements Constants {
 
+    @SerialField(index = 0)
     public byte src;
+    @SerialField(index = 1)
     public byte port;
+    @SerialField(index = 2)
     public byte datalen;
+    @SerialArray(index = 3, length = "datalen")
     public byte[] data;
 
     public MRFReceive(byte seq) {
         super(seq, NS_CODE, NS_SUBCODE_RFRECV);
     }
 
+    //payload accessors, views read the payload straight from the received frame instead of the data field
+    public byte getData(int index) {
+        if ( index < 0 || index >= datalen )
+            throw new IndexOutOfBoundsException("Index: "+index+", DataLen: "+datalen);
+        return data[index];
+    }
+
+    public int copyData(byte[] dst, int off) {
+        if ( datalen > 0 )
+            System.arraycopy(data, 0, dst, off, datalen);
+        return datalen;
+    }
+
+    public byte[] copyData() {
+        byte[] result = new byte[datalen];
+        copyData(result, 0);
+        return result;
+    }
+
     @Override
     public void toString(PrintWriter writer, String rowPrefix, String rowSuffix, String separator) {
         writer.print("MRFReceive: Src=");writer.print(src);
@@ -39,20 +65,17 @@ public class MRFReceive extends AbstractMessage implements Constants {
     @Override
     public AbstractMessage deserialize(MessageData msg) throws IOException {
         MRFReceive result = new MRFReceive(msg.seq);
-        result.src = msg.data[0];
-        result.port = msg.data[1];
-        result.datalen = msg.data[2];
-        result.data = new byte[result.datalen];
-        System.arraycopy(msg.data, 3, result.data, 0, result.datalen);
+        MRFReceiveCodec.decode(result, msg.data);
         return result;
     }
 
     @Override
     public void serializeImpl(MessageData msg) {
-        msg.data = new byte[3+datalen];
-        msg.data[0] = src;
-        msg.data[1] = port;
-        msg.data[2] = datalen;
-        System.arraycopy(data, 0, msg.data, 3, datalen);
+        msg.data = MRFReceiveCodec.toBytes(this);
+    }
+
+    @Override
+    public void serializeImpl(ByteBuffer buf) {
+        MRFReceiveCodec.encode(this, buf);
     }
 }
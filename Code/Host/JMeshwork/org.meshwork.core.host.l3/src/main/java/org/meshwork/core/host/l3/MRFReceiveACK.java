@@ -2,17 +2,22 @@ package org.meshwork.core.host.l3;
 
 import org.meshwork.core.AbstractMessage;
 import org.meshwork.core.MessageData;
+import org.meshwork.core.codegen.SerialArray;
+import org.meshwork.core.codegen.SerialField;
 import org.meshwork.core.util.Printer;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-10.
  */
 public class MRFReceiveACK extends AbstractMessage implements Constants {
 
+    @SerialField(index = 0)
     public byte datalen;
+    @SerialArray(index = 1, length = "datalen")
     public byte[] data;
 
     public MRFReceiveACK(byte seq) {
@@ -35,17 +40,17 @@ public class MRFReceiveACK extends AbstractMessage implements Constants {
     @Override
     public AbstractMessage deserialize(MessageData msg) throws IOException {
         MRFReceiveACK result = new MRFReceiveACK(msg.seq);
-        result.datalen = msg.data[0];
-        result.data = new byte[result.datalen];
-        System.arraycopy(msg.data, 1, result.data, 0, result.datalen);
+        MRFReceiveACKCodec.decode(result, msg.data);
         return result;
     }
 
     @Override
     public void serializeImpl(MessageData msg) {
-        msg.data = new byte[1 + datalen];
-        msg.data[0] = datalen;
-        if ( data != null )
-            System.arraycopy(data, 0, msg.data, 1, datalen);
+        msg.data = MRFReceiveACKCodec.toBytes(this);
+    }
+
+    @Override
+    public void serializeImpl(ByteBuffer buf) {
+        MRFReceiveACKCodec.encode(this, buf);
     }
 }
@@ -0,0 +1,31 @@
+package org.meshwork.core.host.l3;
+
+import org.meshwork.core.AbstractMessage;
+import org.meshwork.core.MessageData;
+
+import java.io.IOException;
+
+/**
+ * Reusable flyweight over a received MRFRouteFailed frame. deserialize() decodes into the same Route instance every time
+ * and returns this view, so it is only valid until the next deserialize(). Use toMessage() or route.copy() to keep it.
+ */
+public class MRFRouteFailedView extends MRFRouteFailed {
+
+    public MRFRouteFailedView() {
+        super((byte) 0);
+    }
+
+    @Override
+    public AbstractMessage deserialize(MessageData msg) throws IOException {
+        route.deserialize(msg.data, 0);
+        seq = msg.seq;
+        return this;
+    }
+
+    //standalone message which stays valid after this view is rebound
+    public MRFRouteFailed toMessage() {
+        MRFRouteFailed result = new MRFRouteFailed(seq);
+        result.route = route.copy();
+        return result;
+    }
+}
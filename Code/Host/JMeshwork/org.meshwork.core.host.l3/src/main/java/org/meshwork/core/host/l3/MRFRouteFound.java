@@ -2,15 +2,18 @@ package org.meshwork.core.host.l3;
 
 import org.meshwork.core.AbstractMessage;
 import org.meshwork.core.MessageData;
+import org.meshwork.core.codegen.SerialEmbedded;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-10.
  */
 public class MRFRouteFound extends AbstractMessage implements Constants {
 
+    @SerialEmbedded(index = 0)
     public Route route;
 
     public MRFRouteFound(byte seq) {
@@ -26,21 +29,17 @@ public class MRFRouteFound extends AbstractMessage implements Constants {
     @Override
     public AbstractMessage deserialize(MessageData msg) throws IOException {
         MRFRouteFound result = new MRFRouteFound(msg.seq);
-        result.route.hopCount = msg.data[0];
-        result.route.src = msg.data[1];
-        result.route.hops = new byte[result.route.hopCount];
-        System.arraycopy(msg.data, 2, result.route.hops, 0, result.route.hopCount);
-        result.route.dst = msg.data[2+route.hopCount];
+        MRFRouteFoundCodec.decode(result, msg.data);
         return result;
     }
 
     @Override
     public void serializeImpl(MessageData msg) {
-        msg.data = new byte[2 + route.hopCount + 1];
-        msg.data[0] = route.hopCount;
-        msg.data[1] = route.src;
-        if ( route.hopCount > 0 )
-            System.arraycopy(route.hops, 0, msg.data, 2, route.hopCount);
-        msg.data[2+route.hopCount] = route.dst;
+        msg.data = MRFRouteFoundCodec.toBytes(this);
+    }
+
+    @Override
+    public void serializeImpl(ByteBuffer buf) {
+        MRFRouteFoundCodec.encode(this, buf);
     }
 }
@@ -0,0 +1,31 @@
+package org.meshwork.core.host.l3;
+
+import org.meshwork.core.AbstractMessage;
+import org.meshwork.core.MessageData;
+
+import java.io.IOException;
+
+/**
+ * Reusable flyweight over a received MRFRouteFound frame. deserialize() decodes into the same Route instance every time
+ * and returns this view, so it is only valid until the next deserialize(). Use toMessage() or route.copy() to keep it.
+ */
+public class MRFRouteFoundView extends MRFRouteFound {
+
+    public MRFRouteFoundView() {
+        super((byte) 0);
+    }
+
+    @Override
+    public AbstractMessage deserialize(MessageData msg) throws IOException {
+        route.deserialize(msg.data, 0);
+        seq = msg.seq;
+        return this;
+    }
+
+    //standalone message which stays valid after this view is rebound
+    public MRFRouteFound toMessage() {
+        MRFRouteFound result = new MRFRouteFound(seq);
+        result.route = route.copy();
+        return result;
+    }
+}
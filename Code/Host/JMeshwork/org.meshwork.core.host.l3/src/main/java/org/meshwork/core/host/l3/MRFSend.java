@@ -2,25 +2,51 @@ package org.meshwork.core.host.l3;
 
 import org.meshwork.core.AbstractMessage;
 import org.meshwork.core.MessageData;
+import org.meshwork.core.codegen.SerialArray;
+import org.meshwork.core.codegen.SerialField;
 import org.meshwork.core.util.Printer;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-10.
  */
 public class MRFSend extends AbstractMessage implements Constants {
 
+    @SerialField(index = 0)
     public byte dst;
+    @SerialField(index = 1)
     public byte port;
+    @SerialField(index = 2)
     public byte datalen;
+    @SerialArray(index = 3, length = "datalen")
     public byte[] data;
 
     public MRFSend(byte seq) {
         super(seq, NS_CODE, NS_SUBCODE_RFSEND);
     }
 
+    //payload accessors, views read the payload straight from the received frame instead of the data field
+    public byte getData(int index) {
+        if ( index < 0 || index >= datalen )
+            throw new IndexOutOfBoundsException("Index: "+index+", DataLen: "+datalen);
+        return data[index];
+    }
+
+    public int copyData(byte[] dst, int off) {
+        if ( datalen > 0 )
+            System.arraycopy(data, 0, dst, off, datalen);
+        return datalen;
+    }
+
+    public byte[] copyData() {
+        byte[] result = new byte[datalen];
+        copyData(result, 0);
+        return result;
+    }
+
     @Override
     public void toString(PrintWriter writer, String rowPrefix, String rowSuffix, String separator) {
         writer.print("MRFSend: Dst=");writer.print(dst);
@@ -39,22 +65,17 @@ public class MRFSend extends AbstractMessage implements Constants {
     @Override
     public AbstractMessage deserialize(MessageData msg) throws IOException {
         MRFSend result = new MRFSend(msg.seq);
-        result.dst = msg.data[0];
-        result.port = msg.data[1];
-        result.datalen = msg.data[2];
-        result.data = new byte[result.datalen];
-        if ( result.datalen > 0 )
-            System.arraycopy(msg.data, 3, result.data, 0, result.datalen);
+        MRFSendCodec.decode(result, msg.data);
         return result;
     }
 
     @Override
     public void serializeImpl(MessageData msg) {
-        msg.data = new byte[3 + datalen];
-        msg.data[0] = dst;
-        msg.data[1] = port;
-        msg.data[2] = datalen;
-        if ( datalen > 0 )
-            System.arraycopy(data, 0, msg.data, 3, datalen);
+        msg.data = MRFSendCodec.toBytes(this);
+    }
+
+    @Override
+    public void serializeImpl(ByteBuffer buf) {
+        MRFSendCodec.encode(this, buf);
     }
 }
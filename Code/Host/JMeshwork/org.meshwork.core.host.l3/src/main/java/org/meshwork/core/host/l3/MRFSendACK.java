@@ -2,17 +2,22 @@ package org.meshwork.core.host.l3;
 
 import org.meshwork.core.AbstractMessage;
 import org.meshwork.core.MessageData;
+import org.meshwork.core.codegen.SerialArray;
+import org.meshwork.core.codegen.SerialField;
 import org.meshwork.core.util.Printer;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-10.
  */
 public class MRFSendACK extends AbstractMessage implements Constants {
 
+    @SerialField(index = 0)
     public byte datalen;
+    @SerialArray(index = 1, length = "datalen")
     public byte[] data;
 
     public MRFSendACK(byte seq) {
@@ -35,16 +40,17 @@ public class MRFSendACK extends AbstractMessage implements Constants {
     @Override
     public AbstractMessage deserialize(MessageData msg) throws IOException {
         MRFSendACK result = new MRFSendACK(msg.seq);
-        result.datalen = msg.data[0];
-        result.data = new byte[result.datalen];
-        System.arraycopy(msg.data, 1, result.data, 0, result.datalen);
+        MRFSendACKCodec.decode(result, msg.data);
         return result;
     }
 
     @Override
     public void serializeImpl(MessageData msg) {
-        msg.data = new byte[datalen];
-        msg.data[0] = datalen;
-        System.arraycopy(data, 0, msg.data, 1, datalen);
+        msg.data = MRFSendACKCodec.toBytes(this);
+    }
+
+    @Override
+    public void serializeImpl(ByteBuffer buf) {
+        MRFSendACKCodec.encode(this, buf);
     }
 }
@@ -0,0 +1,81 @@
+package org.meshwork.core.host.l3;
+
+import org.meshwork.core.AbstractMessage;
+import org.meshwork.core.MessageData;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Reusable flyweight over a received MRFSend frame. deserialize() rebinds this instance to the frame and returns it,
+ * so the header fields are only valid until the next deserialize() and the data field stays null.
+ * The payload is read through the accessors, copyData() or toMessage() keep it beyond that.
+ */
+public class MRFSendView extends MRFSend {
+
+    public static final int DATA_OFFSET = 3;
+
+    protected MessageData frame;
+
+    public MRFSendView() {
+        super((byte) 0);
+    }
+
+    @Override
+    public AbstractMessage deserialize(MessageData msg) throws IOException {
+        byte[] raw = msg.data;
+        if ( raw == null || raw.length < DATA_OFFSET )
+            throw new IOException("MRFSend frame too short");
+        int len = raw[DATA_OFFSET - 1];
+        if ( len < 0 || raw.length < DATA_OFFSET + len )
+            throw new IOException("Invalid MRFSend data length: "+len);
+        seq = msg.seq;
+        dst = raw[0];
+        port = raw[1];
+        datalen = (byte) len;
+        data = null;
+        frame = msg;
+        return this;
+    }
+
+    @Override
+    public byte getData(int index) {
+        if ( index < 0 || index >= datalen )
+            throw new IndexOutOfBoundsException("Index: "+index+", DataLen: "+datalen);
+        return frame.data[DATA_OFFSET + index];
+    }
+
+    @Override
+    public int copyData(byte[] dst, int off) {
+        if ( datalen > 0 )
+            System.arraycopy(frame.data, DATA_OFFSET, dst, off, datalen);
+        return datalen;
+    }
+
+    //standalone message which stays valid after this view is rebound
+    public MRFSend toMessage() {
+        MRFSend result = new MRFSend(seq);
+        result.dst = dst;
+        result.port = port;
+        result.datalen = datalen;
+        result.data = copyData();
+        return result;
+    }
+
+    @Override
+    public void toString(PrintWriter writer, String rowPrefix, String rowSuffix, String separator) {
+        writer.print("MRFSendView: ");
+        writer.print("Dst=");writer.print(dst);writer.print(", ");
+        writer.print("Port=");writer.print(port);writer.print(", ");
+        writer.print("DataLen=");writer.print(datalen);
+        if ( datalen > 0 ) {
+            writer.print(", Data={");
+            for ( int i = 0; i < datalen; i ++ ) {
+                if ( i > 0 )
+                    writer.print(separator == null ? ", " : separator);
+                writer.print(getData(i));
+            }
+            writer.print("}");
+        }
+    }
+}
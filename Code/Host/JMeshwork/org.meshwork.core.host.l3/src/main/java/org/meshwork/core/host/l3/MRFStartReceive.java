@@ -2,15 +2,18 @@ package org.meshwork.core.host.l3;
 
 import org.meshwork.core.AbstractMessage;
 import org.meshwork.core.MessageData;
+import org.meshwork.core.codegen.SerialField;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-10.
  */
 public class MRFStartReceive extends AbstractMessage implements Constants {
 
+    @SerialField(index = 0, size = 4)
     public long timeout;
 
     public MRFStartReceive(byte seq) {
@@ -25,19 +28,17 @@ public class MRFStartReceive extends AbstractMessage implements Constants {
     @Override
     public AbstractMessage deserialize(MessageData msg) throws IOException {
         MRFStartReceive result = new MRFStartReceive(msg.seq);
-        result.timeout = (long) (( msg.data[0] << 24 ) & 0xFF |
-                                 ( msg.data[1] << 16 ) & 0xFF |
-                                 ( msg.data[2] << 8  ) & 0xFF |
-                                 ( msg.data[3] << 0  ) & 0xFF);
+        MRFStartReceiveCodec.decode(result, msg.data);
         return result;
     }
 
     @Override
     public void serializeImpl(MessageData msg) {
-        msg.data = new byte[4];
-        msg.data[0] = (byte) (( timeout >> 24 ) & 0xFF);
-        msg.data[1] = (byte) (( timeout >> 16 ) & 0xFF);
-        msg.data[2] = (byte) (( timeout >> 8  ) & 0xFF);
-        msg.data[3] = (byte) (( timeout >> 0  ) & 0xFF);
+        msg.data = MRFStartReceiveCodec.toBytes(this);
+    }
+
+    @Override
+    public void serializeImpl(ByteBuffer buf) {
+        MRFStartReceiveCodec.encode(this, buf);
     }
 }
@@ -6,6 +6,7 @@ import org.meshwork.core.SerialMessageConstants;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-10.
@@ -31,4 +32,8 @@ public class MUnknown extends AbstractMessage implements Constants {
     public void serializeImpl(MessageData msg) {
     }
 
+    @Override
+    public void serializeImpl(ByteBuffer buf) {
+    }
+
 }
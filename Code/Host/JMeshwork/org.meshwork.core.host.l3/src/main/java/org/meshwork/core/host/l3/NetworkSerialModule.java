@@ -0,0 +1,42 @@
+package org.meshwork.core.host.l3;
+
+import org.meshwork.core.AbstractMessage;
+import org.meshwork.core.MessageModule;
+
+/**
+ * NetworkSerial (NS_CODE) messages.
+ */
+public class NetworkSerialModule implements MessageModule {
+
+    //decode the payload carrying messages into reusable views instead of new instances
+    protected final boolean views;
+
+    public NetworkSerialModule() {
+        this(false);
+    }
+
+    public NetworkSerialModule(boolean views) {
+        this.views = views;
+    }
+
+    @Override
+    public AbstractMessage[] getMessageTypes() {
+        return new AbstractMessage[] {new MConfigBasic((byte)0), new MConfigNetwork((byte)0),
+                                        views ? new MRFBroadcastView() : new MRFBroadcast((byte)0),
+                                        views ? new MRFReceiveView() : new MRFReceive((byte)0),
+                                        new MRFReceiveACK((byte)0),
+                                        views ? new MRFSendView() : new MRFSend((byte)0),
+                                        new MRFStartReceive((byte)0), new MNOK((byte)0),
+                                        new MOK((byte)0), new MUnknown((byte)0),
+                                        new MInternal((byte)0), new MRFSendACK((byte)0),
+                                        new MRFInit((byte)0), new MRFDeinit((byte)0),
+                                        new MConfigRequest((byte)0),
+                                        views ? new MRFRouteFoundView() : new MRFRouteFound((byte)0),
+                                        views ? new MRFRouteFailedView() : new MRFRouteFailed((byte)0),
+                                        new MRFGetRouteCount((byte)0),
+                                        new MRFGetRouteCountRes((byte)0), new MRFGetRoute((byte)0),
+                                        new MRFGetRouteRes((byte)0)
+        };
+    }
+
+}
@@ -1,22 +1,38 @@
 package org.meshwork.core.host.l3;
 
+import org.meshwork.core.codegen.SerialArray;
+import org.meshwork.core.codegen.SerialField;
 import org.meshwork.core.util.Printable;
 import org.meshwork.core.util.Printer;
 
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-21.
  */
 public class Route implements Printable {
 
+    //longest route the two packed keys can hold exactly, longer ones still work but may collide
+    public static final int PACKED_MAX_HOPS = 13;
+
+    @SerialField(index = 0)
     public byte hopCount;
+    @SerialField(index = 1)
     public byte src;
+    //hops may be longer than hopCount when reused by views
+    @SerialArray(index = 2, length = "hopCount", exact = false)
     public byte[] hops;
+    @SerialField(index = 3)
     public byte dst;
 
     public int statsFailed;
     public int statsFound;
+    //decayed found/failed score in [QOS_LEVEL_MIN, QOS_LEVEL_MAX], RouteList ranks by it
+    public int qos = Constants.QOS_LEVEL_AVERAGE;
+    //System.currentTimeMillis() of the last found/failed report, RouteList ages and evicts by it
+    public long lastUsed;
 
     @Override
     public void toString(PrintWriter writer, String rowPrefix, String rowSuffix, String separator) {
@@ -24,11 +40,39 @@ public class Route implements Printable {
         writer.print("Src=");writer.print(src);
         writer.print("Hops=");Printer.printHex(writer, hops, 0, 0, rowPrefix, rowSuffix, separator);
         writer.print("Dst=");writer.print(dst);
+        writer.print("QoS=");writer.print(qos);
         writer.print("]");
     }
 
+    //wire layout shared by MRFRouteFound, MRFRouteFailed and MRFGetRouteRes: HOPCOUNT | SRC | HOPS | DST
+    public void serialize(ByteBuffer buf) {
+        RouteCodec.encode(this, buf);
+    }
+
+    //reads the HOPCOUNT | SRC | HOPS | DST layout into this instance, reusing the hops array when it is large enough
+    public int deserialize(byte[] data, int off) throws IOException {
+        return RouteCodec.decode(this, data, off, data == null ? 0 : data.length) - off;
+    }
+
+    //standalone copy with an exactly sized hops array, stats included
+    public Route copy() {
+        Route result = new Route();
+        result.hopCount = hopCount;
+        result.src = src;
+        result.dst = dst;
+        result.hops = new byte[hopCount];
+        for ( int i = 0; i < hopCount; i ++ )
+            result.hops[i] = getHop(i);
+        result.statsFailed = statsFailed;
+        result.statsFound = statsFound;
+        result.qos = qos;
+        result.lastUsed = lastUsed;
+        return result;
+    }
+
     public void addStatsFailed() {
         statsFailed++;
+        updateQoS(false);
     }
 
     public void resetStatsFailed() {
@@ -41,6 +85,7 @@ public class Route implements Printable {
 
     public void addStatsFound() {
         statsFound++;
+        updateQoS(true);
     }
 
     public void resetStatsFound() {
@@ -51,17 +96,84 @@ public class Route implements Printable {
         return statsFound;
     }
 
+    //moves qos part of the way towards max or min, so recent reports outweigh older ones
+    public void updateQoS(boolean found) {
+        int target = found ? Constants.QOS_LEVEL_MAX : Constants.QOS_LEVEL_MIN;
+        int step = (target - qos) >> Constants.QOS_DECAY_SHIFT;
+        if ( step == 0 )
+            step = target > qos ? 1 : (target < qos ? -1 : 0);
+        qos += step;
+    }
+
+    public void resetQoS() {
+        qos = Constants.QOS_LEVEL_AVERAGE;
+    }
+
+    public int getQoS() {
+        return qos;
+    }
+
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    //found and failed reports together, LFU eviction counts these
+    public int getUseCount() {
+        return statsFound + statsFailed;
+    }
+
+    //hop at the index, missing hops count as 0 so equals, hashCode and the packed keys agree
+    public byte getHop(int index) {
+        return hops != null && index < hops.length ? hops[index] : 0;
+    }
+
+    //HOPCOUNT | SRC | DST | HOPS[0..4], one byte each from the least significant one
+    public long getPackedLow() {
+        long result = (hopCount & 0xFFL) | (src & 0xFFL) << 8 | (dst & 0xFFL) << 16;
+        int count = Math.min(hopCount, 5);
+        for ( int i = 0; i < count; i ++ )
+            result |= (getHop(i) & 0xFFL) << (24 + 8 * i);
+        return result;
+    }
+
+    //HOPS[5..12], one byte each from the least significant one
+    public long getPackedHigh() {
+        long result = 0;
+        int count = Math.min(hopCount, PACKED_MAX_HOPS);
+        for ( int i = 5; i < count; i ++ )
+            result |= (getHop(i) & 0xFFL) << (8 * (i - 5));
+        return result;
+    }
+
+    //the packed keys identify the route completely, always true for firmware routes
+    public boolean isPackedExact() {
+        return hopCount >= 0 && hopCount <= PACKED_MAX_HOPS;
+    }
+
+    public static int hash(long low, long high) {
+        long h = low * 0x9E3779B97F4A7C15L + high;
+        h ^= h >>> 32;
+        h *= 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 29));
+    }
+
+    @Override
+    public int hashCode() {
+        return hash(getPackedLow(), getPackedHigh());
+    }
+
+    @Override
     public boolean equals(Object obj) {
         if ( obj == this )
             return true;
+        if ( !(obj instanceof Route) )
+            return false;
         Route r = (Route) obj;
         if ( hopCount != r.hopCount || src != r.src || dst != r.dst )
             return false;
-        if ( hops != null && r.hops != null && hopCount > 0 ) {
-            for ( int i = 0; i < hopCount; i ++ )
-                if ( hops[i] != r.hops[i] )
-                    return false;
-        }
+        for ( int i = 0; i < hopCount; i ++ )
+            if ( getHop(i) != r.getHop(i) )
+                return false;
         return true;
     }
 
@@ -0,0 +1,11 @@
+package org.meshwork.core.host.l3;
+
+/**
+ * Picks the route RouteList drops when a new one would exceed its cap.
+ */
+public interface RouteEvictionPolicy {
+
+    //slot of the route to evict among routes[0..count-1], count is at least 1
+    public int selectVictim(Route[] routes, int count);
+
+}
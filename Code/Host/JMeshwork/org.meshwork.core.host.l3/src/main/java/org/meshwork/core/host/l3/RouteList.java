@@ -1,49 +1,430 @@
 package org.meshwork.core.host.l3;
 
-import java.util.Vector;
+import java.util.Arrays;
 
 /**
- * Created by Sinisha Djukic on 14-2-21.
+ * Routes to a single destination ranked by QoS, index 0 is always the best currently known route.
+ * Routes are stored in slots which only move on removal. Lookups by route go through an open-addressing index over
+ * the packed route keys, and the ranking is a separate slot order which is adjusted incrementally when a route's QoS
+ * changes through updateStats(). Routes with equal QoS keep their relative order.
+ * Writers lock the write lock, which RouteMap shares between the lists of a stripe. Every write publishes a new
+ * immutable Snapshot of the ranking, so getRouteCount(), getRoute(int) and getSnapshot() never lock.
+ * Stored routes are identified by their contents at the time they were added, so don't change src, dst or hops
+ * of a route after adding it.
+ * With maxRoutes set, adding a route to a full list first evicts the one the eviction policy picks, and expire()
+ * drops the routes without a found/failed report since a given time. Both are reported to the listener as removals.
  */
 public class RouteList {
 
-    protected Vector<Route> list;
+    public static final int DEFAULT_CAPACITY = 8;
+
+    /**
+     * Ranked routes as of one write. Rankings don't change inside a snapshot, the stats of the routes in it may.
+     */
+    public static final class Snapshot {
+
+        public static final Snapshot EMPTY = new Snapshot(new Route[0], 0);
+
+        protected final Route[] ranked;
+        protected final long version;
+
+        protected Snapshot(Route[] ranked, long version) {
+            this.ranked = ranked;
+            this.version = version;
+        }
+
+        //ranking of routes which are not stored in any list, e.g. computed ones
+        public static Snapshot of(Route... ranked) {
+            if ( ranked == null )
+                throw new IllegalArgumentException("Routes cannot be null!");
+            return new Snapshot(ranked.clone(), 0);
+        }
+
+        public int getRouteCount() {
+            return ranked.length;
+        }
+
+        public Route getRoute(int index) {
+            return ranked[index];
+        }
+
+        //number of writes to the list before this snapshot was taken
+        public long getVersion() {
+            return version;
+        }
+    }
+
+    protected final Object lock;
+    protected volatile RouteListener listener;
+    protected volatile Snapshot snapshot = Snapshot.EMPTY;
+    protected long version;
+
+    protected Route[] routes;
+    //packed keys of routes[slot], compared before touching the Route itself
+    protected long[] keysLow;
+    protected long[] keysHigh;
+    protected int count;
+    //slot -> route slot + 1, 0 marks an empty slot, kept at most half full
+    protected int[] index;
+    protected int indexMask;
+    //rank -> slot and slot -> rank
+    protected int[] rank;
+    protected int[] rankOf;
+    //0 means unbounded
+    protected int maxRoutes;
+    //structural changes, tells callers of the Impl methods whether a route was added or removed
+    protected int modCount;
+    protected RouteEvictionPolicy evictionPolicy = LRURouteEvictionPolicy.INSTANCE;
 
     public RouteList() {
-        list = new Vector<Route>(8);
+        this(null);
+    }
+
+    //writes lock the given lock, or the list itself when it is null
+    public RouteList(Object lock) {
+        this.lock = lock == null ? this : lock;
+        routes = new Route[DEFAULT_CAPACITY];
+        keysLow = new long[DEFAULT_CAPACITY];
+        keysHigh = new long[DEFAULT_CAPACITY];
+        rank = new int[DEFAULT_CAPACITY];
+        rankOf = new int[DEFAULT_CAPACITY];
+        index = new int[DEFAULT_CAPACITY << 1];
+        indexMask = index.length - 1;
+    }
+
+    public RouteListener getListener() {
+        return listener;
+    }
+
+    public void setListener(RouteListener listener) {
+        this.listener = listener;
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public int getMaxRoutes() {
+        return maxRoutes;
+    }
+
+    //caps the list, evicting routes right away when it holds more
+    public void setMaxRoutes(int maxRoutes) {
+        synchronized (lock) {
+            this.maxRoutes = maxRoutes;
+            while ( maxRoutes > 0 && count > maxRoutes )
+                evict();
+        }
+    }
+
+    public RouteEvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    public void setEvictionPolicy(RouteEvictionPolicy evictionPolicy) {
+        if ( evictionPolicy == null )
+            throw new IllegalArgumentException("Eviction policy cannot be null!");
+        this.evictionPolicy = evictionPolicy;
     }
 
     public int getRouteCount() {
-        return list.size();
+        return snapshot.getRouteCount();
     }
 
+    //route by rank, 0 is the best one
     public Route getRoute(int index) {
-        return list.elementAt(index);
+        Snapshot temp = snapshot;
+        if ( index < 0 || index >= temp.getRouteCount() )
+            throw new ArrayIndexOutOfBoundsException("Index: "+index+", count: "+temp.getRouteCount());
+        return temp.getRoute(index);
     }
 
     public void addRoute(Route route) {
-        list.add(route);
+        if ( route == null )
+            throw new IllegalArgumentException("Route cannot be null!");
+        synchronized (lock) {
+            addRouteImpl(route);
+            publish();
+            fireChanged(route);
+        }
+    }
+
+    protected void addRouteImpl(Route route) {
+        if ( maxRoutes > 0 && count >= maxRoutes )
+            evict();
+        modCount ++;
+        if ( route.lastUsed == 0 )
+            route.lastUsed = System.currentTimeMillis();
+        if ( count == routes.length )
+            grow();
+        int slot = count++;
+        routes[slot] = route;
+        keysLow[slot] = route.getPackedLow();
+        keysHigh[slot] = route.getPackedHigh();
+        indexInsert(slot);
+        rank[slot] = slot;
+        rankOf[slot] = slot;
+        moveUp(slot);
     }
 
     public void removeRoute(Route route) {
-        list.remove(route);
+        synchronized (lock) {
+            int slot = find(route);
+            if ( slot == -1 )
+                return;
+            Route removed = routes[slot];
+            removeRouteImpl(route);
+            publish();
+            RouteListener temp = listener;
+            if ( temp != null )
+                temp.routeRemoved(removed);
+        }
     }
 
+    protected boolean removeRouteImpl(Route route) {
+        int slot = find(route);
+        if ( slot == -1 )
+            return false;
+        modCount ++;
+        int tail = count - slot - 1;
+        System.arraycopy(routes, slot + 1, routes, slot, tail);
+        System.arraycopy(keysLow, slot + 1, keysLow, slot, tail);
+        System.arraycopy(keysHigh, slot + 1, keysHigh, slot, tail);
+        int removedRank = rankOf[slot];
+        System.arraycopy(rank, removedRank + 1, rank, removedRank, count - removedRank - 1);
+        routes[--count] = null;
+        //slots after the removed one have shifted down, removal is rare so just renumber and rebuild
+        for ( int i = 0; i < count; i ++ ) {
+            if ( rank[i] > slot )
+                rank[i] --;
+            rankOf[rank[i]] = i;
+        }
+        rebuildIndex();
+        return true;
+    }
+
+    //called with the lock held, publishes the removal before reporting it so the listener sees the map without the
+    //victim, the caller publishes whatever it changes next
+    protected void evict() {
+        Route victim = routes[evictionPolicy.selectVictim(routes, count)];
+        removeRouteImpl(victim);
+        publish();
+        RouteListener temp = listener;
+        if ( temp != null )
+            temp.routeRemoved(victim);
+    }
+
+    //removes the routes last used before the given time, returns how many were removed
+    public int expire(long before) {
+        synchronized (lock) {
+            Route[] removed = null;
+            int result = 0;
+            for ( int i = count - 1; i >= 0; i -- ) {
+                Route route = routes[i];
+                if ( route.lastUsed < before ) {
+                    if ( removed == null )
+                        removed = new Route[i + 1];
+                    removeRouteImpl(route);
+                    removed[result++] = route;
+                }
+            }
+            if ( result > 0 ) {
+                //reported once published, like removeRoute()
+                publish();
+                RouteListener temp = listener;
+                if ( temp != null )
+                    for ( int i = 0; i < result; i ++ )
+                        temp.routeRemoved(removed[i]);
+            }
+            return result;
+        }
+    }
+
+    //rank of the route, -1 when missing
     public int indexOf(Route route) {
-        return list.indexOf(route);
+        synchronized (lock) {
+            int slot = find(route);
+            return slot == -1 ? -1 : rankOf[slot];
+        }
     }
 
+    //finds the stored route equal to the given one, when missing and autoCreate is set a copy of it is stored
+    //and returned, with its src set to autoCreateSrcID if the route has none
+    //the copy is required as the given route may belong to a reused message view
     public Route getRoute(Route route, boolean autoCreate, byte autoCreateSrcID) {
+        synchronized (lock) {
+            int before = modCount;
+            Route result = getRouteImpl(route, autoCreate, autoCreateSrcID);
+            if ( modCount != before ) {
+                publish();
+                fireChanged(result);
+            }
+            return result;
+        }
+    }
+
+    protected Route getRouteImpl(Route route, boolean autoCreate, byte autoCreateSrcID) {
         Route result = null;
-        int index = list.indexOf(route);
-        if ( index != -1 ) {
-            result = list.elementAt(index);
-        } else if ( autoCreate ) {
-            result = new Route();
-            result.src = autoCreateSrcID;
-            list.add(result);
+        int slot = find(route);
+        if ( slot != -1 ) {
+            result = routes[slot];
+        } else if ( autoCreate && route != null ) {
+            result = route.copy();
+            result.resetStatsFailed();
+            result.resetStatsFound();
+            result.resetQoS();
+            if ( result.src == 0 )
+                result.src = autoCreateSrcID;
+            addRouteImpl(result);
         }
         return result;
     }
 
+    //records a found or failed report for the route and re-ranks it, returns the stored route
+    public Route updateStats(Route route, boolean found, boolean autoCreate, byte autoCreateSrcID) {
+        synchronized (lock) {
+            int before = modCount;
+            Route result = getRouteImpl(route, autoCreate, autoCreateSrcID);
+            if ( result != null ) {
+                int slot = find(result);
+                result.lastUsed = System.currentTimeMillis();
+                boolean moved;
+                if ( found ) {
+                    result.addStatsFound();
+                    moved = moveUp(slot);
+                } else {
+                    result.addStatsFailed();
+                    moved = moveDown(slot);
+                }
+                //stats are read live through the snapshot, only a new order or a new route needs publishing
+                if ( moved || modCount != before )
+                    publish();
+                fireChanged(result);
+            }
+            return result;
+        }
+    }
+
+    //stores the route with its stats as given, replacing the stats of an equal stored route, and re-ranks it
+    //used to restore persisted routes, the stored route is always a copy
+    public Route restoreRoute(Route route) {
+        synchronized (lock) {
+            int slot = find(route);
+            Route result;
+            if ( slot == -1 ) {
+                result = route.copy();
+                addRouteImpl(result);
+                slot = find(result);
+            } else {
+                result = routes[slot];
+                result.statsFound = route.statsFound;
+                result.statsFailed = route.statsFailed;
+                result.qos = route.qos;
+            }
+            moveUp(slot);
+            moveDown(slot);
+            publish();
+            fireChanged(result);
+            return result;
+        }
+    }
+
+    public void clear() {
+        synchronized (lock) {
+            Route[] removed = Arrays.copyOf(routes, count);
+            for ( int i = 0; i < count; i ++ )
+                routes[i] = null;
+            count = 0;
+            Arrays.fill(index, 0);
+            publish();
+            RouteListener temp = listener;
+            if ( temp != null )
+                for ( Route route : removed )
+                    temp.routeRemoved(route);
+        }
+    }
+
+    protected void fireChanged(Route route) {
+        RouteListener temp = listener;
+        if ( temp != null )
+            temp.routeChanged(route);
+    }
+
+    //called with the lock held after every change
+    protected void publish() {
+        Route[] ranked = new Route[count];
+        for ( int i = 0; i < count; i ++ )
+            ranked[i] = routes[rank[i]];
+        snapshot = new Snapshot(ranked, ++version);
+    }
+
+    protected int find(Route route) {
+        if ( route == null )
+            return -1;
+        long low = route.getPackedLow();
+        long high = route.getPackedHigh();
+        boolean exact = route.isPackedExact();
+        for ( int i = Route.hash(low, high) & indexMask; index[i] != 0; i = (i + 1) & indexMask ) {
+            int slot = index[i] - 1;
+            if ( keysLow[slot] == low && keysHigh[slot] == high && (exact || route.equals(routes[slot])) )
+                return slot;
+        }
+        return -1;
+    }
+
+    //bubbles the slot towards rank 0 while it is strictly better than the one ahead
+    protected boolean moveUp(int slot) {
+        int start = rankOf[slot];
+        int pos = start;
+        int qos = routes[slot].qos;
+        while ( pos > 0 && routes[rank[pos - 1]].qos < qos ) {
+            rank[pos] = rank[pos - 1];
+            rankOf[rank[pos]] = pos;
+            pos --;
+        }
+        rank[pos] = slot;
+        rankOf[slot] = pos;
+        return pos != start;
+    }
+
+    //bubbles the slot away from rank 0 while it is strictly worse than the one behind
+    protected boolean moveDown(int slot) {
+        int start = rankOf[slot];
+        int pos = start;
+        int qos = routes[slot].qos;
+        while ( pos < count - 1 && routes[rank[pos + 1]].qos > qos ) {
+            rank[pos] = rank[pos + 1];
+            rankOf[rank[pos]] = pos;
+            pos ++;
+        }
+        rank[pos] = slot;
+        rankOf[slot] = pos;
+        return pos != start;
+    }
+
+    protected void grow() {
+        int capacity = routes.length << 1;
+        routes = Arrays.copyOf(routes, capacity);
+        keysLow = Arrays.copyOf(keysLow, capacity);
+        keysHigh = Arrays.copyOf(keysHigh, capacity);
+        rank = Arrays.copyOf(rank, capacity);
+        rankOf = Arrays.copyOf(rankOf, capacity);
+        index = new int[capacity << 1];
+        indexMask = index.length - 1;
+        rebuildIndex();
+    }
+
+    protected void rebuildIndex() {
+        Arrays.fill(index, 0);
+        for ( int i = 0; i < count; i ++ )
+            indexInsert(i);
+    }
+
+    protected void indexInsert(int slot) {
+        int i = Route.hash(keysLow[slot], keysHigh[slot]) & indexMask;
+        while ( index[i] != 0 )
+            i = (i + 1) & indexMask;
+        index[i] = slot + 1;
+    }
+
 }
@@ -0,0 +1,19 @@
+package org.meshwork.core.host.l3;
+
+/**
+ * Notified of route table changes, like RouteCache::RouteCacheListener in the firmware.
+ * Called with the write lock of the affected list held, after the change is published to its snapshot, so
+ * implementations see the map as changed. They must not block for long
+ * and must copy whatever they need from the route before returning.
+ */
+public interface RouteListener {
+
+    //route added or its stats changed
+    public void routeChanged(Route route);
+
+    public void routeRemoved(Route route);
+
+    //every list in the map was dropped
+    public void routesCleared();
+
+}
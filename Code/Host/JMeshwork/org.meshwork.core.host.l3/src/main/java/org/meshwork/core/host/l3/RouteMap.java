@@ -1,33 +1,210 @@
 package org.meshwork.core.host.l3;
 
-import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * Created by Sinisha Djukic on 14-2-21.
+ * Route lists by destination node ID. Node IDs are a single unsigned byte, so the lists live in a 256-slot array
+ * indexed directly by the ID with no boxing or hashing on lookup.
+ * Reads never lock. Writes lock one of STRIPE_COUNT stripes shared by the lists whose IDs map to it, so updates for
+ * different destinations mostly run in parallel.
+ * The Controller asks for the route count and then for each route by index, both under the seq of the request it is
+ * processing. pinSnapshot() and getSnapshot(dst, seq) let such a sequence see one consistent ranking while updates
+ * keep arriving.
+ * Per-list caps, the eviction policy and the time to live set here apply to all current and future lists. Expired
+ * routes are dropped by expire(), which does a full pass at most every time to live / EXPIRE_DIVISOR, so it can be
+ * called on every route report. Emptied lists stay in place, memory is bounded by SLOT_COUNT * maxRoutes anyway.
  */
 public class RouteMap {
 
-    protected final HashMap<Byte,RouteList> map;
+    public static final int SLOT_COUNT = 256;
+    public static final int STRIPE_COUNT = 16;
+    public static final int EXPIRE_DIVISOR = 4;
+
+    //snapshot pinned for one (dst, seq) pair
+    protected static final class Pin {
+        protected final byte seq;
+        protected final RouteList.Snapshot snapshot;
+
+        protected Pin(byte seq, RouteList.Snapshot snapshot) {
+            this.seq = seq;
+            this.snapshot = snapshot;
+        }
+    }
+
+    protected final AtomicReferenceArray<RouteList> lists;
+    protected final AtomicReferenceArray<Pin> pins;
+    protected final Object[] stripes;
+    protected volatile RouteListener listener;
+    protected volatile int maxRoutes;
+    protected volatile RouteEvictionPolicy evictionPolicy = LRURouteEvictionPolicy.INSTANCE;
+    //milliseconds without a found/failed report after which a route expires, 0 means never
+    protected volatile long timeToLive;
+    protected volatile long nextExpire;
 
     public RouteMap(){
-        map = new HashMap<Byte, RouteList>();
+        lists = new AtomicReferenceArray<RouteList>(SLOT_COUNT);
+        pins = new AtomicReferenceArray<Pin>(SLOT_COUNT);
+        stripes = new Object[STRIPE_COUNT];
+        for ( int i = 0; i < STRIPE_COUNT; i ++ )
+            stripes[i] = new Object();
     }
 
     public RouteList getRouteList(byte dst, boolean autoCreate) {
-        RouteList result = map.get(dst);
+        RouteList result = lists.get(dst & 0xFF);
         if ( result == null && autoCreate ) {
-            result = new RouteList();
-            map.put(dst, result);
+            //only one list may win if the dispatcher and the pipeline reader race here
+            RouteList temp = new RouteList(getStripe(dst));
+            temp.setListener(listener);
+            temp.setEvictionPolicy(evictionPolicy);
+            temp.setMaxRoutes(maxRoutes);
+            result = lists.compareAndSet(dst & 0xFF, null, temp) ? temp : lists.get(dst & 0xFF);
         }
         return result;
     }
 
+    //write lock shared by all lists of the stripe dst belongs to
+    public Object getStripe(byte dst) {
+        return stripes[(dst & 0xFF) & (STRIPE_COUNT - 1)];
+    }
+
     public void addRouteList(byte dst, RouteList list) {
-        RouteList result = map.remove(dst);
-        map.put(dst, list);
+        RouteList old = lists.getAndSet(dst & 0xFF, list);
+        pins.set(dst & 0xFF, null);
+        RouteListener temp = listener;
+        if ( old != null ) {
+            old.setListener(null);
+            if ( temp != null )
+                fire(temp, old.getSnapshot(), false);
+        }
+        if ( list != null ) {
+            list.setListener(temp);
+            if ( temp != null )
+                fire(temp, list.getSnapshot(), true);
+        }
     }
 
     public void clearRouteList() {
-        map.clear();
+        for ( int i = 0; i < SLOT_COUNT; i ++ ) {
+            RouteList old = lists.getAndSet(i, null);
+            if ( old != null )
+                old.setListener(null);
+            pins.set(i, null);
+        }
+        RouteListener temp = listener;
+        if ( temp != null )
+            temp.routesCleared();
+    }
+
+    public RouteListener getListener() {
+        return listener;
+    }
+
+    //attaches the listener to all current and future lists
+    public void setListener(RouteListener listener) {
+        this.listener = listener;
+        for ( int i = 0; i < SLOT_COUNT; i ++ ) {
+            RouteList list = lists.get(i);
+            if ( list != null )
+                list.setListener(listener);
+        }
+    }
+
+    public int getMaxRoutes() {
+        return maxRoutes;
+    }
+
+    public void setMaxRoutes(int maxRoutes) {
+        this.maxRoutes = maxRoutes;
+        for ( int i = 0; i < SLOT_COUNT; i ++ ) {
+            RouteList list = lists.get(i);
+            if ( list != null )
+                list.setMaxRoutes(maxRoutes);
+        }
+    }
+
+    public RouteEvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    public void setEvictionPolicy(RouteEvictionPolicy evictionPolicy) {
+        if ( evictionPolicy == null )
+            throw new IllegalArgumentException("Eviction policy cannot be null!");
+        this.evictionPolicy = evictionPolicy;
+        for ( int i = 0; i < SLOT_COUNT; i ++ ) {
+            RouteList list = lists.get(i);
+            if ( list != null )
+                list.setEvictionPolicy(evictionPolicy);
+        }
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+        nextExpire = 0;
+    }
+
+    //drops the routes which outlived the time to live, returns how many, 0 when the last pass was too recent
+    public int expire(long now) {
+        long ttl = timeToLive;
+        if ( ttl <= 0 || now < nextExpire )
+            return 0;
+        synchronized (pins) {
+            if ( now < nextExpire )
+                return 0;
+            nextExpire = now + Math.max(1, ttl / EXPIRE_DIVISOR);
+        }
+        int result = 0;
+        for ( int i = 0; i < SLOT_COUNT; i ++ ) {
+            RouteList list = lists.get(i);
+            if ( list != null )
+                result += list.expire(now - ttl);
+        }
+        return result;
+    }
+
+    protected void fire(RouteListener listener, RouteList.Snapshot snapshot, boolean changed) {
+        int count = snapshot.getRouteCount();
+        for ( int i = 0; i < count; i ++ ) {
+            if ( changed )
+                listener.routeChanged(snapshot.getRoute(i));
+            else
+                listener.routeRemoved(snapshot.getRoute(i));
+        }
+    }
+
+    //current ranking of the routes to dst
+    public RouteList.Snapshot getSnapshot(byte dst) {
+        RouteList list = lists.get(dst & 0xFF);
+        return list == null ? RouteList.Snapshot.EMPTY : list.getSnapshot();
+    }
+
+    //takes the current snapshot and keeps it for later getSnapshot(dst, seq) calls with the same seq
+    public RouteList.Snapshot pinSnapshot(byte dst, byte seq) {
+        RouteList.Snapshot result = getSnapshot(dst);
+        pins.set(dst & 0xFF, new Pin(seq, result));
+        return result;
+    }
+
+    //keeps the given snapshot, e.g. a reordered one, for later getSnapshot(dst, seq) calls with the same seq
+    public RouteList.Snapshot pinSnapshot(byte dst, byte seq, RouteList.Snapshot snapshot) {
+        if ( snapshot == null )
+            throw new IllegalArgumentException("Snapshot cannot be null!");
+        pins.set(dst & 0xFF, new Pin(seq, snapshot));
+        return snapshot;
+    }
+
+    //the snapshot pinned for (dst, seq), or the current one when nothing is pinned for that pair
+    public RouteList.Snapshot getSnapshot(byte dst, byte seq) {
+        RouteList.Snapshot result = getPinnedSnapshot(dst, seq);
+        return result != null ? result : getSnapshot(dst);
+    }
+
+    //the snapshot pinned for (dst, seq), null when nothing is pinned for that pair
+    public RouteList.Snapshot getPinnedSnapshot(byte dst, byte seq) {
+        Pin pin = pins.get(dst & 0xFF);
+        return pin != null && pin.seq == seq ? pin.snapshot : null;
     }
 }
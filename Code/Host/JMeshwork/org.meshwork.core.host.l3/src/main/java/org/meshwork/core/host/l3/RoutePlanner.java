@@ -0,0 +1,237 @@
+package org.meshwork.core.host.l3;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps up to routeCount link- or node-disjoint paths from this node to every destination in the RouteMap,
+ * computed from the TopologyGraph by a background thread. A destination is only re-planned when a link of one of
+ * its paths changed or the graph gained a new or better link, see TopologyGraph.getStructureVersion().
+ * order() puts the plans to use: after the best stored route each next index is a route independent of all the
+ * ones before it, so the retry after a failed route doesn't go over the same broken link again.
+ */
+public class RoutePlanner implements Runnable {
+
+    public static final int DEFAULT_ROUTE_COUNT = 3;
+    public static final int DEFAULT_INTERVAL = 1000;
+
+    protected static final class Plan {
+        protected final Route[] routes;
+        protected final int version;
+
+        protected Plan(Route[] routes, int version) {
+            this.routes = routes;
+            this.version = version;
+        }
+    }
+
+    protected static final Route[] NO_ROUTES = new Route[0];
+
+    protected final TopologyGraph topology;
+    protected final RouteMap routeMap;
+    protected final byte src;
+    protected final int routeCount;
+    protected final boolean nodeDisjoint;
+    protected final AtomicReferenceArray<Plan> plans;
+    protected int interval = DEFAULT_INTERVAL;
+    protected volatile boolean running;
+    protected Thread planner;
+    //set by topologyChanged(), cleared when a round starts
+    protected boolean changed;
+    protected volatile long planCount;
+
+    public RoutePlanner(TopologyGraph topology, RouteMap routeMap, byte src, int routeCount, boolean nodeDisjoint) {
+        if ( topology == null )
+            throw new IllegalArgumentException("Topology cannot be null!");
+        if ( routeMap == null )
+            throw new IllegalArgumentException("RouteMap cannot be null!");
+        if ( routeCount < 1 )
+            throw new IllegalArgumentException("Route count must be at least 1: "+routeCount);
+        this.topology = topology;
+        this.routeMap = routeMap;
+        this.src = src;
+        this.routeCount = routeCount;
+        this.nodeDisjoint = nodeDisjoint;
+        plans = new AtomicReferenceArray<Plan>(RouteMap.SLOT_COUNT);
+    }
+
+    public int getRouteCount() {
+        return routeCount;
+    }
+
+    public boolean isNodeDisjoint() {
+        return nodeDisjoint;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    //longest time between two rounds when nothing signals a change, in milliseconds
+    public void setInterval(int interval) {
+        this.interval = interval;
+    }
+
+    //destinations planned so far
+    public long getPlanCount() {
+        return planCount;
+    }
+
+    public synchronized void start() {
+        if ( running )
+            return;
+        running = true;
+        planner = new Thread(this, "RoutePlanner");
+        planner.setDaemon(true);
+        planner.start();
+    }
+
+    public void stop() {
+        Thread temp;
+        synchronized (this) {
+            running = false;
+            temp = planner;
+            planner = null;
+            notifyAll();
+        }
+        if ( temp != null ) {
+            try {
+                temp.join(interval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    //wakes the planner up for a round, cheap enough to call on every route report
+    public synchronized void topologyChanged() {
+        changed = true;
+        notifyAll();
+    }
+
+    @Override
+    public void run() {
+        while ( running ) {
+            synchronized (this) {
+                if ( !changed ) {
+                    try {
+                        wait(interval);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                changed = false;
+            }
+            if ( running )
+                plan();
+        }
+    }
+
+    //one planning round over all destinations with a route list, returns how many were re-planned
+    public int plan() {
+        int result = 0;
+        int structureVersion = topology.getStructureVersion();
+        for ( int i = 0; i < RouteMap.SLOT_COUNT; i ++ ) {
+            byte dst = (byte) i;
+            if ( dst == src || routeMap.getRouteList(dst, false) == null ) {
+                //dropped lists drop their plans too
+                plans.set(i, null);
+                continue;
+            }
+            Plan plan = plans.get(i);
+            if ( plan != null && plan.version >= structureVersion && !isStale(plan) )
+                continue;
+            int version = topology.getVersion();
+            plans.set(i, new Plan(topology.findRoutes(src, dst, routeCount, nodeDisjoint), version));
+            result ++;
+        }
+        planCount += result;
+        return result;
+    }
+
+    protected boolean isStale(Plan plan) {
+        for ( Route route : plan.routes )
+            if ( topology.isChangedSince(route, plan.version) )
+                return true;
+        return false;
+    }
+
+    //planned paths to dst, best first
+    public Route[] getRoutes(byte dst) {
+        Plan plan = plans.get(dst & 0xFF);
+        return plan == null ? NO_ROUTES : plan.routes;
+    }
+
+    /**
+     * Answer order for the Controller: the best stored route first, then up to routeCount - 1 routes independent of
+     * all the ones before, taken from the stored ranking first and the plan second, then all other stored routes.
+     * Returns the stored snapshot itself when nothing changes.
+     */
+    public RouteList.Snapshot order(byte dst, RouteList.Snapshot stored) {
+        Route[] planned = getRoutes(dst);
+        int storedCount = stored.getRouteCount();
+        if ( planned.length == 0 && storedCount < 2 )
+            return stored;
+        Route[] result = new Route[Math.min(storedCount + planned.length, 255)];
+        int count = 0;
+        boolean[] used = new boolean[storedCount + planned.length];
+        //independent routes
+        for ( int i = 0; i < used.length && count < routeCount && count < result.length; i ++ ) {
+            Route candidate = i < storedCount ? stored.getRoute(i) : planned[i - storedCount];
+            boolean accept = true;
+            for ( int j = 0; j < count && accept; j ++ )
+                accept = isDisjoint(result[j], candidate, nodeDisjoint);
+            if ( accept ) {
+                result[count++] = candidate;
+                used[i] = true;
+            }
+        }
+        //the rest of the stored ranking stays reachable after them
+        for ( int i = 0; i < storedCount && count < result.length; i ++ )
+            if ( !used[i] )
+                result[count++] = stored.getRoute(i);
+        if ( count == storedCount && isSameOrder(stored, result) )
+            return stored;
+        Route[] ranked = new Route[count];
+        System.arraycopy(result, 0, ranked, 0, count);
+        return new RouteList.Snapshot(ranked, stored.getVersion());
+    }
+
+    protected static boolean isSameOrder(RouteList.Snapshot stored, Route[] result) {
+        for ( int i = 0; i < stored.getRouteCount(); i ++ )
+            if ( stored.getRoute(i) != result[i] )
+                return false;
+        return true;
+    }
+
+    //whether the routes share no link, or with nodeDisjoint no intermediate node, equal routes are never disjoint
+    public static boolean isDisjoint(Route a, Route b, boolean nodeDisjoint) {
+        int countA = a.hopCount & 0xFF;
+        int countB = b.hopCount & 0xFF;
+        if ( nodeDisjoint ) {
+            for ( int i = 0; i < countA; i ++ )
+                for ( int j = 0; j < countB; j ++ )
+                    if ( a.getHop(i) == b.getHop(j) )
+                        return false;
+            //two direct routes share their only link
+            return countA > 0 || countB > 0 || a.src != b.src;
+        }
+        byte prevA = a.src;
+        for ( int i = 0; i <= countA; i ++ ) {
+            byte nextA = i < countA ? a.getHop(i) : a.dst;
+            byte prevB = b.src;
+            for ( int j = 0; j <= countB; j ++ ) {
+                byte nextB = j < countB ? b.getHop(j) : b.dst;
+                if ( (prevA == prevB && nextA == nextB) || (prevA == nextB && nextA == prevB) )
+                    return false;
+                prevB = nextB;
+            }
+            prevA = nextA;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,370 @@
+package org.meshwork.core.host.l3;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Persists a RouteMap to a memory-mapped file, the host side counterpart of RouteCachePersistent in the firmware.
+ * Attached as the map's RouteListener it appends one fixed-size record per route change, so a found/failed report
+ * costs a few stores into the mapped page and no system call. Records are replayed in order by load().
+ * Listeners run under the route list locks, so appending never compacts. The owner polls isCompactNeeded() and
+ * calls compact() from its own thread, which writes the live routes to the other of two files, the given one and
+ * the ALTERNATE_SUFFIX one, sized at COMPACT_GROWTH times their count. It is needed once the log holds
+ * COMPACT_RATIO records per live route, or is three quarters full.
+ * Changes made while the log is full are not recorded but are in the map, so the next compaction persists them.
+ * The active file is never replaced while mapped, which some platforms refuse. Each compaction bumps the header's
+ * generation, written last, and load() picks the valid file with the highest one, so a crash or a failed
+ * compaction always leaves the previous log in use.
+ * The mapped pages survive a crash of the process, force() or close() are needed to survive a crash of the OS.
+ * Routes with more than MAX_HOPS hops are not persisted.
+ * File layout: MAGIC(4)|VERSION(2)|RECORD_SIZE(2)|GENERATION(4)|reserved(4) followed by records of
+ * TYPE(1)|SRC(1)|DST(1)|HOPCOUNT(1)|HOPS(MAX_HOPS)|FOUND(4)|FAILED(4)|QOS(4)|reserved(2)|COMMIT(1).
+ * The commit byte is written last, the first record without it ends the log.
+ */
+public class RouteStore implements RouteListener {
+
+    public static final int MAGIC = 0x4D575254;//"MWRT"
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 32;
+    public static final int MAX_HOPS = Route.PACKED_MAX_HOPS;
+    public static final int MIN_CAPACITY = 1024;//records
+    public static final int COMPACT_GROWTH = 4;
+    //records per live route that make compaction worth it
+    public static final int COMPACT_RATIO = 2;
+    //smaller logs are not worth compacting for the ratio alone
+    public static final int COMPACT_MIN_RECORDS = MIN_CAPACITY / 4;
+    public static final String ALTERNATE_SUFFIX = ".1";
+
+    public static final byte RECORD_PUT = 1;
+    public static final byte RECORD_REMOVE = 2;
+    public static final byte RECORD_CLEAR = 3;
+
+    protected static final byte COMMIT = (byte) 0xA5;
+    protected static final int OFFSET_HOPS = 4;
+    protected static final int OFFSET_FOUND = OFFSET_HOPS + MAX_HOPS;
+    protected static final int OFFSET_FAILED = OFFSET_FOUND + 4;
+    protected static final int OFFSET_QOS = OFFSET_FAILED + 4;
+    protected static final int OFFSET_COMMIT = RECORD_SIZE - 1;
+
+    protected final File file;
+    protected final File alternateFile;
+    //the one of file and alternateFile in use and its generation
+    protected File activeFile;
+    protected int generation;
+    protected RouteMap routeMap;
+    protected RandomAccessFile raf;
+    protected MappedByteBuffer buffer;
+    //byte offset of the next record
+    protected int position;
+    protected int capacity;
+    protected int compactCount;
+    //a change was dropped because the log was full
+    protected boolean overflow;
+    //one compaction at a time, taken before the store itself
+    protected final Object compactLock = new Object();
+
+    public RouteStore(File file) {
+        if ( file == null )
+            throw new IllegalArgumentException("File cannot be null!");
+        this.file = file;
+        alternateFile = new File(file.getPath() + ALTERNATE_SUFFIX);
+        activeFile = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized File getActiveFile() {
+        return activeFile;
+    }
+
+    //records in the log, including superseded ones
+    public synchronized int getRecordCount() {
+        return (position - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    public synchronized int getCompactCount() {
+        return compactCount;
+    }
+
+    /**
+     * Opens or creates the file, replays its log into routeMap and attaches itself as the map's listener.
+     * Returns the number of records replayed.
+     */
+    public synchronized int load(RouteMap routeMap) throws IOException {
+        if ( routeMap == null )
+            throw new IllegalArgumentException("RouteMap cannot be null!");
+        if ( buffer != null )
+            throw new IOException("Route store already loaded: "+file);
+        this.routeMap = routeMap;
+        int result = 0;
+        int fileGeneration = readGeneration(file);
+        int alternateGeneration = readGeneration(alternateFile);
+        if ( fileGeneration >= 0 || alternateGeneration >= 0 ) {
+            activeFile = alternateGeneration > fileGeneration ? alternateFile : file;
+            generation = Math.max(fileGeneration, alternateGeneration);
+            open(activeFile, 0);
+            Route route = new Route();
+            for ( position = HEADER_SIZE; position + RECORD_SIZE <= capacity; position += RECORD_SIZE ) {
+                if ( !replay(position, route) )
+                    break;
+                result ++;
+            }
+            //a torn record may be followed by stale bytes which must not look committed after the next append
+            if ( position + RECORD_SIZE <= capacity && buffer.get(position) != 0 ) {
+                for ( int i = position; i < capacity; i ++ )
+                    buffer.put(i, (byte) 0);
+            }
+        } else if ( file.exists() && file.length() > 0 ) {
+            throw new IOException("Not a route store or unsupported version: "+file);
+        } else {
+            activeFile = file;
+            generation = 0;
+            open(file, MIN_CAPACITY);
+            writeHeader(buffer, generation);
+            position = HEADER_SIZE;
+        }
+        routeMap.setListener(this);
+        return result;
+    }
+
+    //generation of a complete route store file, -1 when it is missing or its header is not a valid one
+    protected static int readGeneration(File file) throws IOException {
+        if ( !file.isFile() || file.length() < HEADER_SIZE )
+            return -1;
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            if ( in.readInt() != MAGIC || in.readShort() != VERSION || in.readShort() != RECORD_SIZE )
+                return -1;
+            return in.readInt();
+        } finally {
+            in.close();
+        }
+    }
+
+    protected boolean replay(int offset, Route route) {
+        if ( buffer.get(offset + OFFSET_COMMIT) != COMMIT )
+            return false;
+        byte type = buffer.get(offset);
+        if ( type == RECORD_CLEAR ) {
+            routeMap.clearRouteList();
+            return true;
+        }
+        int hopCount = buffer.get(offset + 3) & 0xFF;
+        if ( hopCount > MAX_HOPS || (type != RECORD_PUT && type != RECORD_REMOVE) )
+            return false;
+        route.src = buffer.get(offset + 1);
+        route.dst = buffer.get(offset + 2);
+        route.hopCount = (byte) hopCount;
+        route.hops = new byte[hopCount];
+        for ( int i = 0; i < hopCount; i ++ )
+            route.hops[i] = buffer.get(offset + OFFSET_HOPS + i);
+        route.statsFound = buffer.getInt(offset + OFFSET_FOUND);
+        route.statsFailed = buffer.getInt(offset + OFFSET_FAILED);
+        route.qos = buffer.getInt(offset + OFFSET_QOS);
+        if ( type == RECORD_PUT ) {
+            routeMap.getRouteList(route.dst, true).restoreRoute(route);
+        } else {
+            RouteList list = routeMap.getRouteList(route.dst, false);
+            if ( list != null )
+                list.removeRoute(route);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void routeChanged(Route route) {
+        append(RECORD_PUT, route);
+    }
+
+    @Override
+    public synchronized void routeRemoved(Route route) {
+        append(RECORD_REMOVE, route);
+    }
+
+    @Override
+    public synchronized void routesCleared() {
+        append(RECORD_CLEAR, null);
+    }
+
+    protected void append(byte type, Route route) {
+        if ( buffer == null || (route != null && (route.hopCount & 0xFF) > MAX_HOPS) )
+            return;
+        if ( position + RECORD_SIZE > capacity ) {
+            //lists publish before notifying, so the map already holds the change and the next compaction includes it
+            overflow = true;
+            return;
+        }
+        writeRecord(buffer, position, type, route);
+        position += RECORD_SIZE;
+    }
+
+    /**
+     * True when the log is three quarters full, has dropped a change or holds COMPACT_RATIO records per live route.
+     * Cheap enough to call on every pass of the owner's loop.
+     */
+    public boolean isCompactNeeded() {
+        int records;
+        synchronized (this) {
+            if ( buffer == null )
+                return false;
+            records = (position - HEADER_SIZE) / RECORD_SIZE;
+            if ( overflow || records >= (capacity - HEADER_SIZE) / RECORD_SIZE / 4 * 3 )
+                return true;
+        }
+        return records >= COMPACT_MIN_RECORDS && records >= getLiveCount() * COMPACT_RATIO;
+    }
+
+    protected int getLiveCount() {
+        int result = 0;
+        for ( int i = 0; i < RouteMap.SLOT_COUNT; i ++ )
+            result += routeMap.getSnapshot((byte) i).getRouteCount();
+        return result;
+    }
+
+    protected static void writeRecord(ByteBuffer buf, int offset, byte type, Route route) {
+        buf.put(offset, type);
+        if ( route != null ) {
+            buf.put(offset + 1, route.src);
+            buf.put(offset + 2, route.dst);
+            buf.put(offset + 3, route.hopCount);
+            for ( int i = 0; i < MAX_HOPS; i ++ )
+                buf.put(offset + OFFSET_HOPS + i, i < route.hopCount ? route.getHop(i) : 0);
+            buf.putInt(offset + OFFSET_FOUND, route.statsFound);
+            buf.putInt(offset + OFFSET_FAILED, route.statsFailed);
+            buf.putInt(offset + OFFSET_QOS, route.qos);
+        }
+        buf.put(offset + OFFSET_COMMIT, COMMIT);
+    }
+
+    protected static void writeHeader(ByteBuffer buf, int generation) {
+        buf.putInt(0, MAGIC);
+        buf.putShort(4, VERSION);
+        buf.putShort(6, (short) RECORD_SIZE);
+        buf.putInt(8, generation);
+    }
+
+    /**
+     * Rewrites the log with one record per live route, in rank order so equal-QoS routes load in the same order.
+     * The routes are written without holding the store, so route changes only wait for the final switch, which
+     * copies the records appended meanwhile after them. Replaying those again is harmless as the last record of a
+     * route always holds its latest state.
+     * The routes go to the inactive file, whose header is written last. The store switches to it only once it is
+     * complete, until then and on any error the active file stays in use.
+     */
+    public void compact() throws IOException {
+        synchronized (compactLock) {
+            int mark;
+            File target;
+            int nextGeneration;
+            synchronized (this) {
+                if ( buffer == null )
+                    throw new IOException("Route store not loaded: "+file);
+                //the snapshots read below hold every change recorded or dropped before this
+                mark = position;
+                overflow = false;
+                target = activeFile == file ? alternateFile : file;
+                nextGeneration = generation + 1;
+            }
+            int records = Math.max(MIN_CAPACITY, getLiveCount() * COMPACT_GROWTH);
+            RandomAccessFile targetRaf = new RandomAccessFile(target, "rw");
+            boolean switched = false;
+            try {
+                //a file of an older generation, stale since the last compaction
+                targetRaf.setLength(0);
+                targetRaf.setLength(HEADER_SIZE + (long) records * RECORD_SIZE);
+                MappedByteBuffer targetBuffer = map(targetRaf);
+                int end = HEADER_SIZE;
+                for ( int i = 0; i < RouteMap.SLOT_COUNT; i ++ ) {
+                    RouteList.Snapshot snapshot = routeMap.getSnapshot((byte) i);
+                    for ( int j = 0; j < snapshot.getRouteCount(); j ++ ) {
+                        Route route = snapshot.getRoute(j);
+                        if ( (route.hopCount & 0xFF) > MAX_HOPS )
+                            continue;
+                        //routes added since counting
+                        if ( end + RECORD_SIZE > targetBuffer.capacity() )
+                            targetBuffer = grow(targetRaf);
+                        writeRecord(targetBuffer, end, RECORD_PUT, route);
+                        end += RECORD_SIZE;
+                    }
+                }
+                synchronized (this) {
+                    if ( buffer == null )
+                        throw new IOException("Route store closed during compaction: "+file);
+                    for ( int i = mark; i < position; i += RECORD_SIZE ) {
+                        if ( end + RECORD_SIZE > targetBuffer.capacity() )
+                            targetBuffer = grow(targetRaf);
+                        for ( int j = 0; j < RECORD_SIZE; j ++ )
+                            targetBuffer.put(end + j, buffer.get(i + j));
+                        end += RECORD_SIZE;
+                    }
+                    targetBuffer.force();
+                    writeHeader(targetBuffer, nextGeneration);
+                    targetBuffer.force();
+                    //the old file is superseded now, its mapping is released by the GC
+                    RandomAccessFile old = raf;
+                    raf = targetRaf;
+                    buffer = targetBuffer;
+                    capacity = targetBuffer.capacity();
+                    position = end;
+                    activeFile = target;
+                    generation = nextGeneration;
+                    compactCount ++;
+                    switched = true;
+                    try {
+                        old.close();
+                    } catch (IOException e) {
+                    }
+                }
+            } finally {
+                if ( !switched )
+                    targetRaf.close();
+            }
+        }
+    }
+
+    protected static MappedByteBuffer map(RandomAccessFile raf) throws IOException {
+        return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+    }
+
+    //doubles the records of a file being compacted, what is written so far is kept
+    protected static MappedByteBuffer grow(RandomAccessFile raf) throws IOException {
+        raf.setLength(HEADER_SIZE + (raf.length() - HEADER_SIZE) * 2);
+        return map(raf);
+    }
+
+    //flushes the mapped pages to the disk
+    public synchronized void force() {
+        if ( buffer != null )
+            buffer.force();
+    }
+
+    //flushes and closes the file, the map keeps its routes but changes are no longer recorded
+    public synchronized void close() throws IOException {
+        if ( buffer != null ) {
+            buffer.force();
+            buffer = null;
+        }
+        if ( raf != null ) {
+            raf.close();
+            raf = null;
+        }
+        capacity = 0;
+    }
+
+    //maps the whole file, creating it with room for the given number of records when it is empty
+    protected void open(File file, int records) throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        if ( raf.length() < HEADER_SIZE )
+            raf.setLength(HEADER_SIZE + (long) records * RECORD_SIZE);
+        capacity = (int) Math.min(raf.length(), Integer.MAX_VALUE);
+        buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+}
@@ -0,0 +1,338 @@
+package org.meshwork.core.host.l3;
+
+import java.util.Arrays;
+
+/**
+ * Radio links between nodes learned from the routes the Controller reports. Links are treated as symmetric since the
+ * ACK travels the route back.
+ * A link's reliability is an EWMA success rate in fixed point, 0 to ONE, with a weight of 1/samples for the first
+ * samples and 1 >> EWMA_SHIFT after that, so new links don't start out biased towards a made-up prior.
+ * An MRFRouteFound credits all links of the route fully. An MRFRouteFailed doesn't tell which link broke, so the
+ * failure is split between the links in proportion to how unreliable each already looks, the weakest link taking
+ * most of the blame. Raw found/failed counts are kept as well.
+ * findRoute() returns the path with the highest product of link reliabilities, i.e. the lowest sum of
+ * -log(reliability), using Bellman-Ford limited to MAX_ROUTING_HOPS + 1 links. All state lives in fixed arrays
+ * indexed by node ID.
+ * Links whose cost moves by more than 1/CHANGE_THRESHOLD get a new version, so planners can tell which of their
+ * paths went stale. New or improved links bump the structure version as they may open better paths anywhere.
+ */
+public class TopologyGraph {
+
+    public static final int NODE_COUNT = 256;
+    public static final int MAX_PATH_LINKS = Constants.MAX_ROUTING_HOPS + 1;
+    //fixed-point scale of -log(reliability), every link costs at least 1 so shorter paths win ties
+    public static final int COST_SCALE = 1024;
+    public static final int CHANGE_THRESHOLD = 8;
+    public static final int ONE = 1 << 16;
+    public static final int EWMA_SHIFT = 3;
+    //reliability used for the cost of links blamed down to nothing, keeps the cost finite
+    public static final int MIN_RELIABILITY = ONE >> 10;
+    //below this rate a link with at least WEAK_MIN_SAMPLES samples counts as weak
+    public static final int WEAK_RELIABILITY = ONE / 2;
+    public static final int WEAK_MIN_SAMPLES = 4;
+
+    protected static final int INFINITE = Integer.MAX_VALUE;
+
+    //per link, indexed by the ordered pair (min << 8) | max
+    protected final int[] found = new int[NODE_COUNT * NODE_COUNT];
+    protected final int[] failed = new int[NODE_COUNT * NODE_COUNT];
+    //EWMA success rate scaled to ONE and the samples behind it
+    protected final int[] reliability = new int[NODE_COUNT * NODE_COUNT];
+    protected final int[] samples = new int[NODE_COUNT * NODE_COUNT];
+    //0 marks a missing link
+    protected final int[] cost = new int[NODE_COUNT * NODE_COUNT];
+    //adjacency lists for the search
+    protected final byte[][] neighbours = new byte[NODE_COUNT][];
+    protected final int[] neighbourCount = new int[NODE_COUNT];
+    protected int linkCount;
+    protected final int[] linkVersion = new int[NODE_COUNT * NODE_COUNT];
+    protected int version;
+    protected int structureVersion;
+    //excluded by the disjoint search, reset after every findRoutes()
+    protected final boolean[] excludedLinks = new boolean[NODE_COUNT * NODE_COUNT];
+    protected final boolean[] excludedNodes = new boolean[NODE_COUNT];
+    //search state reused between calls: lowest cost of a walk with exactly k links and its previous node
+    protected final int[][] dist = new int[MAX_PATH_LINKS + 1][NODE_COUNT];
+    protected final byte[][] pred = new byte[MAX_PATH_LINKS + 1][NODE_COUNT];
+    //link keys and blame weights of the route being updated, routes longer than MAX_ROUTING_HOPS only count their
+    //first links
+    protected final int[] routeKeys = new int[MAX_PATH_LINKS];
+    protected final long[] routeWeights = new long[MAX_PATH_LINKS];
+
+    protected static int link(int a, int b) {
+        return a < b ? (a << 8) | b : (b << 8) | a;
+    }
+
+    //credits or blames the links of the route for one found or failed report
+    public synchronized void update(Route route, boolean found) {
+        if ( route == null )
+            return;
+        int links = collectLinks(route);
+        if ( found ) {
+            for ( int i = 0; i < links; i ++ )
+                sample(routeKeys[i], 1, 0, ONE, ONE);
+        } else {
+            long total = 0;
+            for ( int i = 0; i < links; i ++ ) {
+                //unknown links look like coin flips until sampled
+                int key = routeKeys[i];
+                routeWeights[i] = ONE - (samples[key] == 0 ? ONE / 2 : reliability[key]);
+                total += routeWeights[i];
+            }
+            for ( int i = 0; i < links; i ++ ) {
+                long weight = total == 0 ? ONE / links : (routeWeights[i] * ONE) / total;
+                sample(routeKeys[i], 0, 1, 0, (int) weight);
+            }
+        }
+    }
+
+    //adds the given report counts to every link of the route, e.g. the stats of a persisted route, which seed each
+    //link with one sample at the route's success rate
+    public synchronized void update(Route route, int foundCount, int failedCount) {
+        if ( route == null || foundCount + failedCount <= 0 )
+            return;
+        int links = collectLinks(route);
+        int target = (int) (((foundCount + 1L) * ONE) / (foundCount + failedCount + 2L));
+        for ( int i = 0; i < links; i ++ )
+            sample(routeKeys[i], foundCount, failedCount, target, ONE);
+    }
+
+    protected int collectLinks(Route route) {
+        int hopCount = Math.min(route.hopCount & 0xFF, Constants.MAX_ROUTING_HOPS);
+        int result = 0;
+        int prev = route.src & 0xFF;
+        for ( int i = 0; i <= hopCount; i ++ ) {
+            int next = (i < hopCount ? route.getHop(i) : route.dst) & 0xFF;
+            if ( prev != 0 && next != 0 && prev != next ) {
+                if ( cost[link(prev, next)] == 0 ) {
+                    addNeighbour(prev, next);
+                    addNeighbour(next, prev);
+                    linkCount ++;
+                }
+                routeKeys[result++] = link(prev, next);
+            }
+            prev = next;
+        }
+        return result;
+    }
+
+    //moves the link's rate towards target by the EWMA weight scaled by weight / ONE and updates its cost
+    protected void sample(int key, int foundCount, int failedCount, int target, int weight) {
+        found[key] += foundCount;
+        failed[key] += failedCount;
+        int count = ++samples[key];
+        if ( count == 1 ) {
+            //nothing to average with yet, a partial blame still leaves some credit
+            reliability[key] = (int) (ONE - (((long) (ONE - target) * weight) >> 16));
+        } else {
+            long delta = (((long) (target - reliability[key])) * weight) >> 16;
+            reliability[key] += count < (1 << EWMA_SHIFT) ? delta / count : delta >> EWMA_SHIFT;
+        }
+        int old = cost[key];
+        double rate = (double) Math.max(MIN_RELIABILITY, reliability[key]) / ONE;
+        int value = Math.max(1, (int) Math.round(-Math.log(rate) * COST_SCALE));
+        cost[key] = value;
+        if ( old == 0 || Math.abs(value - old) * CHANGE_THRESHOLD > old ) {
+            linkVersion[key] = ++version;
+            if ( old == 0 || value < old )
+                structureVersion = version;
+        }
+    }
+
+    protected void addNeighbour(int node, int neighbour) {
+        byte[] list = neighbours[node];
+        if ( list == null )
+            list = neighbours[node] = new byte[4];
+        else if ( neighbourCount[node] == list.length )
+            list = neighbours[node] = Arrays.copyOf(list, list.length << 1);
+        list[neighbourCount[node]++] = (byte) neighbour;
+    }
+
+    //increases on every significant link change
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    //version of the last new or significantly improved link
+    public synchronized int getStructureVersion() {
+        return structureVersion;
+    }
+
+    //whether any link of the route changed significantly after the given version
+    public synchronized boolean isChangedSince(Route route, int version) {
+        int hopCount = route.hopCount & 0xFF;
+        int prev = route.src & 0xFF;
+        for ( int i = 0; i <= hopCount; i ++ ) {
+            int next = (i < hopCount ? route.getHop(i) : route.dst) & 0xFF;
+            if ( linkVersion[link(prev, next)] > version )
+                return true;
+            prev = next;
+        }
+        return false;
+    }
+
+    public synchronized int getLinkCount() {
+        return linkCount;
+    }
+
+    public synchronized boolean hasLink(byte a, byte b) {
+        return cost[link(a & 0xFF, b & 0xFF)] != 0;
+    }
+
+    public synchronized int getLinkFound(byte a, byte b) {
+        return found[link(a & 0xFF, b & 0xFF)];
+    }
+
+    public synchronized int getLinkFailed(byte a, byte b) {
+        return failed[link(a & 0xFF, b & 0xFF)];
+    }
+
+    //estimated delivery probability of the link, 0 when it is unknown
+    public synchronized double getReliability(byte a, byte b) {
+        int key = link(a & 0xFF, b & 0xFF);
+        return samples[key] == 0 ? 0 : (double) reliability[key] / ONE;
+    }
+
+    public synchronized int getSamples(byte a, byte b) {
+        return samples[link(a & 0xFF, b & 0xFF)];
+    }
+
+    public synchronized boolean isWeak(byte a, byte b) {
+        int key = link(a & 0xFF, b & 0xFF);
+        return samples[key] >= WEAK_MIN_SAMPLES && reliability[key] < WEAK_RELIABILITY;
+    }
+
+    //position of the route's least reliable sampled link, 0 is src to the first hop, -1 when none was sampled
+    public synchronized int getWeakestLink(Route route) {
+        int hopCount = Math.min(route.hopCount & 0xFF, Constants.MAX_ROUTING_HOPS);
+        int result = -1;
+        int lowest = Integer.MAX_VALUE;
+        int prev = route.src & 0xFF;
+        for ( int i = 0; i <= hopCount; i ++ ) {
+            int next = (i < hopCount ? route.getHop(i) : route.dst) & 0xFF;
+            int key = link(prev, next);
+            if ( samples[key] > 0 && reliability[key] < lowest ) {
+                lowest = reliability[key];
+                result = i;
+            }
+            prev = next;
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(found, 0);
+        Arrays.fill(failed, 0);
+        Arrays.fill(reliability, 0);
+        Arrays.fill(samples, 0);
+        Arrays.fill(cost, 0);
+        Arrays.fill(neighbours, null);
+        Arrays.fill(neighbourCount, 0);
+        linkCount = 0;
+        Arrays.fill(linkVersion, 0);
+        structureVersion = ++version;
+    }
+
+    /**
+     * Most reliable known path from src to dst with at most MAX_ROUTING_HOPS hops, as a new Route with no stats.
+     * Returns null when dst isn't reachable through known links.
+     */
+    public synchronized Route findRoute(byte src, byte dst) {
+        return findRouteImpl(src, dst);
+    }
+
+    /**
+     * Up to count paths from src to dst which share no link, or with nodeDisjoint no intermediate node, best first.
+     * Each path is the most reliable one avoiding the ones before it, which may miss a disjoint set that exists
+     * when a greedy first pick blocks it, but keeps the first path the best one.
+     */
+    public synchronized Route[] findRoutes(byte src, byte dst, int count, boolean nodeDisjoint) {
+        Route[] temp = new Route[count];
+        int found = 0;
+        try {
+            while ( found < count ) {
+                Route route = findRouteImpl(src, dst);
+                if ( route == null )
+                    break;
+                temp[found++] = route;
+                int prev = src & 0xFF;
+                for ( int i = 0; i <= route.hopCount; i ++ ) {
+                    int next = (i < route.hopCount ? route.hops[i] : dst) & 0xFF;
+                    if ( nodeDisjoint && i < route.hopCount )
+                        excludedNodes[next] = true;
+                    excludedLinks[link(prev, next)] = true;
+                    prev = next;
+                }
+            }
+        } finally {
+            for ( int i = 0; i < found; i ++ ) {
+                Route route = temp[i];
+                int prev = src & 0xFF;
+                for ( int j = 0; j <= route.hopCount; j ++ ) {
+                    int next = (j < route.hopCount ? route.hops[j] : dst) & 0xFF;
+                    excludedNodes[next] = false;
+                    excludedLinks[link(prev, next)] = false;
+                    prev = next;
+                }
+            }
+        }
+        return Arrays.copyOf(temp, found);
+    }
+
+    protected Route findRouteImpl(byte src, byte dst) {
+        int from = src & 0xFF;
+        int to = dst & 0xFF;
+        if ( from == to || neighbourCount[from] == 0 || neighbourCount[to] == 0 )
+            return null;
+        for ( int k = 0; k <= MAX_PATH_LINKS; k ++ )
+            Arrays.fill(dist[k], INFINITE);
+        dist[0][from] = 0;
+        int bestCost = INFINITE;
+        int bestLinks = -1;
+        for ( int k = 1; k <= MAX_PATH_LINKS; k ++ ) {
+            int[] last = dist[k - 1];
+            int[] current = dist[k];
+            byte[] currentPred = pred[k];
+            boolean relaxed = false;
+            for ( int u = 0; u < NODE_COUNT; u ++ ) {
+                //walks only continue from intermediate nodes, never through dst
+                if ( last[u] == INFINITE || u == to )
+                    continue;
+                byte[] list = neighbours[u];
+                for ( int i = 0; i < neighbourCount[u]; i ++ ) {
+                    int v = list[i] & 0xFF;
+                    int key = link(u, v);
+                    if ( excludedLinks[key] || excludedNodes[v] )
+                        continue;
+                    int value = last[u] + cost[key];
+                    if ( value < current[v] ) {
+                        current[v] = value;
+                        currentPred[v] = (byte) u;
+                        relaxed = true;
+                    }
+                }
+            }
+            //a walk with a cycle always costs more than the same walk without it, so the cheapest one is a path
+            if ( current[to] < bestCost ) {
+                bestCost = current[to];
+                bestLinks = k;
+            }
+            if ( !relaxed )
+                break;
+        }
+        if ( bestLinks == -1 )
+            return null;
+        Route result = new Route();
+        result.src = src;
+        result.dst = dst;
+        result.hopCount = (byte) (bestLinks - 1);
+        result.hops = new byte[bestLinks - 1];
+        int node = to;
+        for ( int k = bestLinks; k > 1; k -- ) {
+            node = pred[k][node] & 0xFF;
+            result.hops[k - 2] = (byte) node;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,221 @@
+package org.meshwork.core.simulator.l3;
+
+import org.meshwork.core.host.l3.Constants;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Radio reachability between the simulated nodes. A link is one way and has its own frame loss probability and
+ * airtime, link() adds both directions. Nodes are addressed by their unsigned node ID.
+ */
+public class LinkGraph {
+
+    public static final int NODE_ID_COUNT = 256;
+
+    protected final boolean[] present = new boolean[NODE_ID_COUNT];
+    protected final boolean[] linked = new boolean[NODE_ID_COUNT * NODE_ID_COUNT];
+    protected final float[] loss = new float[NODE_ID_COUNT * NODE_ID_COUNT];
+    //micros a frame occupies the channel
+    protected final int[] airtime = new int[NODE_ID_COUNT * NODE_ID_COUNT];
+    //airtime of frames sent over missing links, so failed sends take time too
+    protected int defaultAirtime;
+    //rebuilt by getNeighbours() after any change
+    protected int[][] neighbours;
+    protected int linkCount;
+
+    public LinkGraph(int defaultAirtime) {
+        if ( defaultAirtime < 0 )
+            throw new IllegalArgumentException("Airtime cannot be negative: "+defaultAirtime);
+        this.defaultAirtime = defaultAirtime;
+    }
+
+    protected static void checkNode(int node) {
+        if ( node < (Constants.MIN_NODE_ID & 0xFF) || node > (Constants.MAX_NODE_ID & 0xFF) )
+            throw new IllegalArgumentException("Invalid node ID: "+node);
+    }
+
+    //an absent node keeps its links but neither sends nor receives
+    public void setPresent(int node, boolean value) {
+        checkNode(node);
+        present[node] = value;
+        neighbours = null;
+    }
+
+    public boolean isPresent(int node) {
+        return present[node & 0xFF];
+    }
+
+    public int getNodeCount() {
+        int result = 0;
+        for ( int i = 0; i < NODE_ID_COUNT; i ++ )
+            if ( present[i] )
+                result ++;
+        return result;
+    }
+
+    public void link(int a, int b, double lossValue, int airtimeValue) {
+        linkOneWay(a, b, lossValue, airtimeValue);
+        linkOneWay(b, a, lossValue, airtimeValue);
+    }
+
+    public void linkOneWay(int from, int to, double lossValue, int airtimeValue) {
+        checkNode(from);
+        checkNode(to);
+        if ( from == to )
+            throw new IllegalArgumentException("Node cannot link to itself: "+from);
+        if ( lossValue < 0 || lossValue > 1 )
+            throw new IllegalArgumentException("Loss must be between 0 and 1: "+lossValue);
+        if ( airtimeValue < 0 )
+            throw new IllegalArgumentException("Airtime cannot be negative: "+airtimeValue);
+        int index = from * NODE_ID_COUNT + to;
+        if ( !linked[index] )
+            linkCount ++;
+        linked[index] = true;
+        loss[index] = (float) lossValue;
+        airtime[index] = airtimeValue;
+        neighbours = null;
+    }
+
+    public void unlink(int a, int b) {
+        unlinkOneWay(a, b);
+        unlinkOneWay(b, a);
+    }
+
+    public void unlinkOneWay(int from, int to) {
+        int index = (from & 0xFF) * NODE_ID_COUNT + (to & 0xFF);
+        if ( linked[index] )
+            linkCount --;
+        linked[index] = false;
+        neighbours = null;
+    }
+
+    //both ends present and linked
+    public boolean isLinked(int from, int to) {
+        return present[from & 0xFF] && present[to & 0xFF] && linked[(from & 0xFF) * NODE_ID_COUNT + (to & 0xFF)];
+    }
+
+    public double getLoss(int from, int to) {
+        return isLinked(from, to) ? loss[(from & 0xFF) * NODE_ID_COUNT + (to & 0xFF)] : 1;
+    }
+
+    public int getAirtime(int from, int to) {
+        return isLinked(from, to) ? airtime[(from & 0xFF) * NODE_ID_COUNT + (to & 0xFF)] : defaultAirtime;
+    }
+
+    public int getDefaultAirtime() {
+        return defaultAirtime;
+    }
+
+    public int getLinkCount() {
+        return linkCount;
+    }
+
+    //present nodes hearing from, in node ID order
+    public int[] getNeighbours(int from) {
+        if ( neighbours == null )
+            neighbours = new int[NODE_ID_COUNT][];
+        int[] result = neighbours[from & 0xFF];
+        if ( result == null ) {
+            int count = 0;
+            for ( int i = 0; i < NODE_ID_COUNT; i ++ )
+                if ( isLinked(from, i) )
+                    count ++;
+            result = new int[count];
+            count = 0;
+            for ( int i = 0; i < NODE_ID_COUNT; i ++ )
+                if ( isLinked(from, i) )
+                    result[count ++] = i;
+            neighbours[from & 0xFF] = result;
+        }
+        return result;
+    }
+
+    //fewest hops from a to b over present nodes, -1 when b can't be reached
+    public int getDistance(int a, int b) {
+        int[] distance = new int[NODE_ID_COUNT];
+        Arrays.fill(distance, -1);
+        int[] queue = new int[NODE_ID_COUNT];
+        int head = 0, tail = 0;
+        distance[a & 0xFF] = 0;
+        queue[tail ++] = a & 0xFF;
+        while ( head < tail ) {
+            int node = queue[head ++];
+            if ( node == (b & 0xFF) )
+                return distance[node];
+            for ( int next : getNeighbours(node) ) {
+                if ( distance[next] < 0 ) {
+                    distance[next] = distance[node] + 1;
+                    queue[tail ++] = next;
+                }
+            }
+        }
+        return -1;
+    }
+
+    //nodes 1..nodes without any links, add them with link()
+    public static LinkGraph isolated(int nodes, int airtime) {
+        if ( nodes < 1 || nodes > (Constants.MAX_NODE_ID & 0xFF) )
+            throw new IllegalArgumentException("Node count must be between 1 and "+(Constants.MAX_NODE_ID & 0xFF)+": "+nodes);
+        LinkGraph result = new LinkGraph(airtime);
+        for ( int i = 1; i <= nodes; i ++ )
+            result.present[i] = true;
+        return result;
+    }
+
+    //nodes 1..nodes, each hearing only the previous and the next one
+    public static LinkGraph line(int nodes, double loss, int airtime) {
+        LinkGraph result = isolated(nodes, airtime);
+        for ( int i = 1; i < nodes; i ++ )
+            result.link(i, i + 1, loss, airtime);
+        return result;
+    }
+
+    //nodes 1..nodes laid out row by row, each hearing its horizontal and vertical neighbours
+    public static LinkGraph grid(int nodes, int columns, double loss, int airtime) {
+        if ( columns < 1 )
+            throw new IllegalArgumentException("Column count must be positive: "+columns);
+        LinkGraph result = isolated(nodes, airtime);
+        for ( int i = 0; i < nodes; i ++ ) {
+            if ( (i + 1) % columns != 0 && i + 1 < nodes )
+                result.link(i + 1, i + 2, loss, airtime);
+            if ( i + columns < nodes )
+                result.link(i + 1, i + 1 + columns, loss, airtime);
+        }
+        return result;
+    }
+
+    //nodes 1..nodes all hearing each other
+    public static LinkGraph full(int nodes, double loss, int airtime) {
+        LinkGraph result = isolated(nodes, airtime);
+        for ( int i = 1; i <= nodes; i ++ )
+            for ( int j = i + 1; j <= nodes; j ++ )
+                result.link(i, j, loss, airtime);
+        return result;
+    }
+
+    //nodes 1..nodes placed at random on a unit square, hearing each other within radius; loss grows with the square
+    //of the distance from loss next to each other to edgeLoss at radius
+    public static LinkGraph random(int nodes, double radius, double loss, double edgeLoss, int airtime, Random random) {
+        if ( radius <= 0 )
+            throw new IllegalArgumentException("Radius must be positive: "+radius);
+        if ( random == null )
+            throw new IllegalArgumentException("Random cannot be null!");
+        LinkGraph result = isolated(nodes, airtime);
+        double[] x = new double[nodes + 1];
+        double[] y = new double[nodes + 1];
+        for ( int i = 1; i <= nodes; i ++ ) {
+            x[i] = random.nextDouble();
+            y[i] = random.nextDouble();
+        }
+        for ( int i = 1; i <= nodes; i ++ ) {
+            for ( int j = i + 1; j <= nodes; j ++ ) {
+                double d2 = ((x[i] - x[j]) * (x[i] - x[j]) + (y[i] - y[j]) * (y[i] - y[j])) / (radius * radius);
+                if ( d2 <= 1 )
+                    result.link(i, j, loss + (edgeLoss - loss) * d2, airtime);
+            }
+        }
+        return result;
+    }
+
+}
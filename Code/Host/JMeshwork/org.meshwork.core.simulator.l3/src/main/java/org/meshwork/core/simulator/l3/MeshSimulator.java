@@ -0,0 +1,428 @@
+package org.meshwork.core.simulator.l3;
+
+import org.meshwork.core.emulator.l3.AbstractNetwork;
+import org.meshwork.core.host.l3.Route;
+
+import java.util.Random;
+
+/**
+ * Discrete-event simulation of a NetworkV1 mesh seen from the node the host configures. Sends follow
+ * NetworkV1::send() and sendWithACK(): direct, then the routes of the RouteProvider, then a flood discovery followed
+ * by a direct or routed send over the discovered route, with the firmware's retries and ACK timeouts. The other
+ * nodes relay routed frames, rebroadcast floods up to the hop limit and ACK like NetworkV1::recv() does.
+ * Frames take the airtime of their link and are lost with its probability, on a virtual clock which only moves while
+ * the simulated node is busy, so a send waiting several timeouts returns in microseconds of wall time.
+ * Not modelled: collisions and busy radios, a node only rebroadcasts or ACKs the first copy of a flood it hears.
+ */
+public class MeshSimulator extends AbstractNetwork {
+
+    public static final String DEVICE_NAME = "simulator";
+
+    //NetworkV1 timing, millis
+    public static final int TIMEOUT_ACK_RECEIVE = 500;
+    public static final int RETRY_WAIT_DIRECT   = 500;
+    //NetworkV1 derives the ACK timeouts from the retry count: TIMEOUT_ACK_DIRECT = 500 * (retry + 1)
+    public static final int TIMEOUT_ACK_DIRECT_STEP  = 500;
+    public static final int TIMEOUT_ACK_ROUTED_SCALE = 8;
+    public static final int TIMEOUT_ACK_FLOOD_SCALE  = 10;
+
+    protected static final long MICROS_PER_MILLI = 1000;
+
+    //a frame arriving at a node
+    protected class Reception extends SimulationEvent {
+        protected final int node;
+        protected final int sender;
+        protected final SimulatedFrame frame;
+        protected final boolean broadcast;
+
+        protected Reception(int node, int sender, SimulatedFrame frame, boolean broadcast) {
+            this.node = node;
+            this.sender = sender;
+            this.frame = frame;
+            this.broadcast = broadcast;
+        }
+
+        @Override
+        public void fire() {
+            receive(node, sender, frame, broadcast);
+        }
+    }
+
+    protected final LinkGraph graph;
+    protected final SimulationClock clock;
+    protected final Random random;
+    protected final long seed;
+    protected final byte maxHops;
+
+    protected byte seq;
+    //frame of the sendWithACK() in progress, null when nothing waits for a reply
+    protected SimulatedFrame pending;
+    protected int pendingDest;
+    protected boolean acked;
+    protected boolean floodHeard;
+    protected Route returnRoute;
+    //virtual micros when the last transmit() or transmitBroadcast() freed the radio
+    protected long transmitEnd;
+    protected long floodCount;
+    //last flood each node handled
+    protected final long[] floodSeen = new long[LinkGraph.NODE_ID_COUNT];
+
+    protected long transmittedCount;
+    protected long lostCount;
+    protected long directCount;
+    protected long routedCount;
+    protected long floodedCount;
+    protected long lastSendTime;
+    protected long totalSendTime;
+
+    public MeshSimulator(SimulatorConfiguration config) {
+        this(config, config == null || config.getSeed() == 0 ? System.nanoTime() : config.getSeed());
+    }
+
+    //seed replaces the configured one, so one configuration can be run with different seeds
+    public MeshSimulator(SimulatorConfiguration config, long seed) {
+        this(createGraph(config, seed), config.getMaxHops(), seed);
+    }
+
+    public MeshSimulator(LinkGraph graph, byte maxHops, long seed) {
+        if ( graph == null )
+            throw new IllegalArgumentException("Graph cannot be null!");
+        this.graph = graph;
+        this.maxHops = maxHops;
+        this.seed = seed;
+        random = new Random(seed);
+        clock = new SimulationClock();
+    }
+
+    protected static LinkGraph createGraph(SimulatorConfiguration config, long seed) {
+        if ( config == null )
+            throw new IllegalArgumentException("SimulatorConfiguration cannot be null!");
+        return config.createGraph(new Random(~seed));
+    }
+
+    //the configured node has to be one of the simulated ones
+    @Override
+    public boolean begin() {
+        started = super.begin() && graph.isPresent(nodeid & 0xFF);
+        return started;
+    }
+
+    protected long getDirectTimeout() {
+        return TIMEOUT_ACK_DIRECT_STEP * (retry + 1) * MICROS_PER_MILLI;
+    }
+
+    protected long getRoutedTimeout() {
+        return getDirectTimeout() * TIMEOUT_ACK_ROUTED_SCALE;
+    }
+
+    protected long getFloodTimeout() {
+        return getDirectTimeout() * TIMEOUT_ACK_FLOOD_SCALE;
+    }
+
+    @Override
+    public int send(byte dst, byte port, byte[] data, int len, byte[] ack) {
+        if ( len > PAYLOAD_MAX )
+            return ERROR_PAYLOAD_TOO_LONG;
+        if ( !started )
+            return ERROR_DRIVER_SEND_FAILED;
+        sentCount ++;
+        long start = clock.now();
+        int attempts = 1 + retry;
+        int result = -1;
+        seq ++;
+        if ( (delivery & DELIVERY_DIRECT) != 0 ) {
+            result = sendWithACK(attempts, dst != BROADCAST, getDirectTimeout(), dst & 0xFF,
+                    new SimulatedFrame(DELIVERY_DIRECT, seq, port, nodeid, dst, null, len));
+            if ( result > 0 )
+                directCount ++;
+        }
+        if ( result <= 0 && (delivery & DELIVERY_ROUTED) != 0 ) {
+            if ( dst == BROADCAST ) {
+                result = ERROR_DELIVERY_METHOD_INVALID;
+            } else {
+                result = ERROR_NO_KNOWN_ROUTES;
+                int routeCount = routeProvider == null ? 0 : routeProvider.getRouteCount(dst);
+                for ( int i = 0; i < routeCount; i ++ ) {
+                    Route route = routeProvider.getRoute(dst, i);
+                    if ( route == null || route.hopCount > maxHops )
+                        continue;
+                    result = sendWithACK(attempts, true, getRoutedTimeout(), getFirstHop(route),
+                            new SimulatedFrame(DELIVERY_ROUTED, seq, port, nodeid, dst, route.copy(), len));
+                    if ( result > 0 ) {
+                        routedCount ++;
+                        break;
+                    }
+                }
+            }
+        }
+        if ( result <= 0 && (delivery & DELIVERY_FLOOD) != 0 ) {
+            //step 1: discover a route with an empty flood, dst ACKs it along the path the first copy took
+            Route discovery = new Route();
+            discovery.src = nodeid;
+            discovery.dst = dst;
+            discovery.hops = new byte[0];
+            SimulatedFrame frame = new SimulatedFrame(DELIVERY_FLOOD, seq, port, nodeid, dst, discovery, 0);
+            frame.flood = ++ floodCount;
+            result = sendWithACK(attempts, true, getFloodTimeout(), BROADCAST & 0xFF, frame);
+            //step 2: the real message over the discovered route
+            if ( result > 0 ) {
+                Route found = returnRoute;
+                if ( found.hopCount == 0 )
+                    result = sendWithACK(attempts, true, getDirectTimeout(), dst & 0xFF,
+                            new SimulatedFrame(DELIVERY_DIRECT, seq, port, nodeid, dst, null, len));
+                else
+                    result = sendWithACK(attempts, true, getRoutedTimeout(), getFirstHop(found),
+                            new SimulatedFrame(DELIVERY_ROUTED, seq, port, nodeid, dst, found.copy(), len));
+                if ( result > 0 )
+                    floodedCount ++;
+            }
+        }
+        lastSendTime = clock.now() - start;
+        totalSendTime += lastSendTime;
+        if ( result <= 0 ) {
+            failedCount ++;
+            return result;
+        }
+        //simulated nodes ACK without payload
+        return 0;
+    }
+
+    @Override
+    public int broadcast(byte port, byte[] data, int len) {
+        if ( len > PAYLOAD_MAX )
+            return ERROR_PAYLOAD_TOO_LONG;
+        if ( !started )
+            return ERROR_DRIVER_SEND_FAILED;
+        broadcastCount ++;
+        transmitBroadcast(nodeid & 0xFF, new SimulatedFrame(DELIVERY_DIRECT, ++ seq, port, nodeid, BROADCAST, null, len), clock.now());
+        clock.runUntil(transmitEnd);
+        return OK;
+    }
+
+    protected static int getFirstHop(Route route) {
+        return (route.hopCount == 0 ? route.dst : route.getHop(0)) & 0xFF;
+    }
+
+    //NetworkV1::sendWithACK(), dest is the next hop
+    protected int sendWithACK(int attempts, boolean ack, long ackTimeout, int dest, SimulatedFrame frame) {
+        int self = nodeid & 0xFF;
+        boolean flood = frame.getMethod() == DELIVERY_FLOOD;
+        int result = ack ? ERROR_ACK_NOT_RECEIVED : 0;
+        for ( int i = 0; i < attempts; i ++ ) {
+            boolean sent = dest == (BROADCAST & 0xFF) ? transmitBroadcast(self, frame, clock.now())
+                    : transmit(self, dest, frame, attempts, clock.now());
+            clock.runUntil(transmitEnd);
+            if ( !sent ) {
+                result = ERROR_DRIVER_SEND_FAILED;
+            } else if ( ack ) {
+                long start = clock.now();
+                pending = frame;
+                pendingDest = dest;
+                acked = false;
+                floodHeard = false;
+                returnRoute = null;
+                //no neighbour heard the flood, resend without waiting for the full timeout
+                if ( flood ) {
+                    await(start + TIMEOUT_ACK_RECEIVE * MICROS_PER_MILLI, true);
+                    if ( !acked && !floodHeard ) {
+                        pending = null;
+                        result = FLOOD_NOT_RECEIVED_BY_NEIGHBOURS;
+                        continue;
+                    }
+                }
+                await(start + ackTimeout, false);
+                pending = null;
+                if ( acked ) {
+                    result = OK;
+                    break;
+                }
+                result = ERROR_ACK_NOT_RECEIVED;
+            } else {
+                result = OK;
+                break;
+            }
+        }
+        if ( result == ERROR_ACK_NOT_RECEIVED && frame.getMethod() == DELIVERY_ROUTED && routeProvider != null )
+            routeProvider.routeFailed(frame.route);
+        return result;
+    }
+
+    //fires events until the pending frame is ACKed, or a neighbour ACKed the flood when asked to, or deadline passes
+    protected void await(long deadline, boolean untilFloodHeard) {
+        SimulationEvent next;
+        while ( !acked && !(untilFloodHeard && floodHeard) && (next = clock.peek()) != null && next.getTime() <= deadline )
+            clock.runNext();
+        if ( !acked && !(untilFloodHeard && floodHeard) )
+            clock.runUntil(deadline);
+    }
+
+    //NetworkV1::sendWithoutACK() over an auto-ack radio: the driver send fails when the frame is lost
+    protected boolean transmit(int from, int to, SimulatedFrame frame, int attempts, long time) {
+        for ( int i = 0; i < attempts; i ++ ) {
+            if ( i > 0 )
+                time += RETRY_WAIT_DIRECT * MICROS_PER_MILLI;
+            time += graph.getAirtime(from, to);
+            transmittedCount ++;
+            if ( graph.isLinked(from, to) && random.nextDouble() >= graph.getLoss(from, to) ) {
+                clock.schedule(time, new Reception(to, from, frame, false));
+                transmitEnd = time;
+                return true;
+            }
+            lostCount ++;
+        }
+        transmitEnd = time;
+        return false;
+    }
+
+    //broadcasts are not acknowledged by the radio, so they are sent once and always succeed
+    protected boolean transmitBroadcast(int from, SimulatedFrame frame, long time) {
+        transmittedCount ++;
+        transmitEnd = time + graph.getDefaultAirtime();
+        for ( int node : graph.getNeighbours(from) ) {
+            long arrival = time + graph.getAirtime(from, node);
+            if ( random.nextDouble() >= graph.getLoss(from, node) )
+                clock.schedule(arrival, new Reception(node, from, frame, true));
+            else
+                lostCount ++;
+        }
+        return true;
+    }
+
+    //NetworkV1::recv() of every node, the replies of the configured node go to the send waiting for them
+    protected void receive(int node, int sender, SimulatedFrame frame, boolean broadcast) {
+        if ( node == (nodeid & 0xFF) ) {
+            receiveReply(sender, frame);
+            return;
+        }
+        int attempts = 1 + retry;
+        byte method = frame.getMethod();
+        if ( broadcast ) {
+            if ( method != DELIVERY_FLOOD || frame.isACK() )
+                return;
+            //early fail detection only matters to the originator, other nodes drop the neighbours' flood ACKs
+            if ( sender == (frame.route.src & 0xFF) ) {
+                SimulatedFrame floodACK = new SimulatedFrame((byte) (DELIVERY_FLOOD | SimulatedFrame.ACK), frame.seq, frame.port, (byte) node, frame.route.src, null, 0);
+                transmit(node, sender, floodACK, attempts, clock.now());
+            }
+            if ( floodSeen[node] == frame.flood )
+                return;
+            floodSeen[node] = frame.flood;
+            if ( node == (frame.route.dst & 0xFF) ) {
+                sendRoutedACK(node, frame, attempts);
+            } else if ( frame.route.hopCount < maxHops && frame.getHopIndex(node) < 0 && node != (frame.route.src & 0xFF) ) {
+                SimulatedFrame rebroadcast = frame.copy();
+                rebroadcast.route = appendHop(frame.route, (byte) node);
+                transmitBroadcast(node, rebroadcast, clock.now());
+            }
+            return;
+        }
+        if ( method == DELIVERY_DIRECT ) {
+            if ( !frame.isACK() )
+                transmit(node, sender, frame.createACK(), attempts, clock.now());
+        } else if ( (method == DELIVERY_ROUTED || method == DELIVERY_FLOOD) && frame.route != null ) {
+            //a flood ACK travels back like a routed ACK
+            if ( !frame.isACK() && node == (frame.route.dst & 0xFF) ) {
+                sendRoutedACK(node, frame, attempts);
+                return;
+            }
+            int index = frame.getHopIndex(node);
+            if ( index < 0 || (frame.breadcrumbs & (1 << index)) != 0 )
+                return;
+            SimulatedFrame relay = frame.copy();
+            relay.breadcrumbs |= 1 << index;
+            int next;
+            if ( frame.isACK() )
+                next = (index == 0 ? frame.route.src : frame.route.getHop(index - 1)) & 0xFF;
+            else
+                next = (index == frame.route.hopCount - 1 ? frame.route.dst : frame.route.getHop(index + 1)) & 0xFF;
+            transmit(node, next, relay, attempts, clock.now());
+        }
+    }
+
+    //NetworkV1::sendRoutedACK(), back to the last hop or to the originator
+    protected void sendRoutedACK(int node, SimulatedFrame frame, int attempts) {
+        Route route = frame.route;
+        int dest = (route.hopCount > 0 ? route.getHop(route.hopCount - 1) : route.src) & 0xFF;
+        transmit(node, dest, frame.createACK(), attempts, clock.now());
+    }
+
+    protected static Route appendHop(Route route, byte hop) {
+        Route result = new Route();
+        result.src = route.src;
+        result.dst = route.dst;
+        result.hopCount = (byte) (route.hopCount + 1);
+        result.hops = new byte[route.hopCount + 1];
+        for ( int i = 0; i < route.hopCount; i ++ )
+            result.hops[i] = route.getHop(i);
+        result.hops[route.hopCount] = hop;
+        return result;
+    }
+
+    //the reply checks of NetworkV1::sendWithACK()
+    protected void receiveReply(int sender, SimulatedFrame frame) {
+        if ( pending == null || !frame.isACK() || frame.port != pending.port || frame.seq != pending.seq )
+            return;
+        byte method = frame.getMethod();
+        if ( pending.getMethod() == DELIVERY_FLOOD && method == DELIVERY_FLOOD )
+            floodHeard = true;
+        if ( method == DELIVERY_DIRECT ) {
+            if ( sender != pendingDest )
+                return;
+        } else if ( frame.route == null || pending.route == null || frame.route.dst != pending.route.dst ) {
+            return;
+        }
+        acked = true;
+        returnRoute = frame.route;
+    }
+
+    public LinkGraph getGraph() {
+        return graph;
+    }
+
+    public SimulationClock getClock() {
+        return clock;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public byte getMaxHops() {
+        return maxHops;
+    }
+
+    //virtual micros since the simulation started
+    public long getTime() {
+        return clock.now();
+    }
+
+    //virtual micros the last send() took
+    public long getLastSendTime() {
+        return lastSendTime;
+    }
+
+    public long getTotalSendTime() {
+        return totalSendTime;
+    }
+
+    public long getTransmittedCount() {
+        return transmittedCount;
+    }
+
+    public long getLostCount() {
+        return lostCount;
+    }
+
+    public long getDirectCount() {
+        return directCount;
+    }
+
+    public long getRoutedCount() {
+        return routedCount;
+    }
+
+    public long getFloodedCount() {
+        return floodedCount;
+    }
+
+}
@@ -0,0 +1,74 @@
+package org.meshwork.core.simulator.l3;
+
+import org.meshwork.core.host.l3.Route;
+
+/**
+ * NetworkV1 frame on the simulated air. Frames are not changed once sent, relays send changed copies.
+ */
+public class SimulatedFrame {
+
+    //ACK flag of the delivery field, same as NetworkV1::ACK
+    public static final byte ACK = (byte) 128;
+
+    //delivery method, ACK flag included
+    public byte delivery;
+    public byte seq;
+    public byte port;
+    //end to end addresses, the route carries them for routed and flood frames
+    public byte src;
+    public byte dst;
+    //routed and flood frames only, a flood route grows by one hop with each rebroadcast
+    public Route route;
+    //bit i is set once hop i relayed the frame
+    public int breadcrumbs;
+    //flood discovery the frame belongs to, only the simulator uses it
+    public long flood;
+    public int length;
+
+    public SimulatedFrame() {
+    }
+
+    public SimulatedFrame(byte delivery, byte seq, byte port, byte src, byte dst, Route route, int length) {
+        this.delivery = delivery;
+        this.seq = seq;
+        this.port = port;
+        this.src = src;
+        this.dst = dst;
+        this.route = route;
+        this.length = length;
+    }
+
+    public boolean isACK() {
+        return (delivery & ACK) != 0;
+    }
+
+    //delivery method without the ACK flag
+    public byte getMethod() {
+        return (byte) (delivery & ~ACK);
+    }
+
+    //same frame with the route copied, so the copy can be changed
+    public SimulatedFrame copy() {
+        SimulatedFrame result = new SimulatedFrame(delivery, seq, port, src, dst, route == null ? null : route.copy(), length);
+        result.breadcrumbs = breadcrumbs;
+        result.flood = flood;
+        return result;
+    }
+
+    //ACK answering this frame, carrying the same route
+    public SimulatedFrame createACK() {
+        SimulatedFrame result = new SimulatedFrame((byte) (delivery | ACK), seq, port, dst, src, route, 0);
+        result.flood = flood;
+        return result;
+    }
+
+    //index of node among the hops, -1 when it is not one of them
+    public int getHopIndex(int node) {
+        if ( route != null )
+            for ( int i = 0; i < route.hopCount; i ++ )
+                if ( (route.getHop(i) & 0xFF) == node )
+                    return i;
+        return -1;
+    }
+
+}
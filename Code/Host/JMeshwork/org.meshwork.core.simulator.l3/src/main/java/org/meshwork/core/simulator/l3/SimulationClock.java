@@ -0,0 +1,77 @@
+package org.meshwork.core.simulator.l3;
+
+import java.util.PriorityQueue;
+
+/**
+ * Virtual clock of a discrete-event simulation. Time only moves when events are run, so a simulated minute costs as
+ * much wall time as the events in it. Not thread safe, a simulation is driven by a single thread.
+ */
+public class SimulationClock {
+
+    protected final PriorityQueue<SimulationEvent> queue;
+    //virtual micros since the start of the simulation
+    protected long now;
+    protected long order;
+    protected long firedCount;
+
+    public SimulationClock() {
+        queue = new PriorityQueue<SimulationEvent>();
+    }
+
+    public long now() {
+        return now;
+    }
+
+    public void schedule(long time, SimulationEvent event) {
+        if ( event == null )
+            throw new IllegalArgumentException("Event cannot be null!");
+        if ( time < now )
+            throw new IllegalArgumentException("Event cannot be scheduled in the past: "+time+" < "+now);
+        event.time = time;
+        event.order = order ++;
+        queue.add(event);
+    }
+
+    public void scheduleAfter(long delay, SimulationEvent event) {
+        schedule(now + delay, event);
+    }
+
+    //next event to fire, null when there is none
+    public SimulationEvent peek() {
+        return queue.peek();
+    }
+
+    //moves the clock to the next event and fires it, false when there is none
+    public boolean runNext() {
+        SimulationEvent event = queue.poll();
+        if ( event == null )
+            return false;
+        now = event.time;
+        firedCount ++;
+        event.fire();
+        return true;
+    }
+
+    //fires all events up to and including time, then leaves the clock at time
+    public void runUntil(long time) {
+        SimulationEvent event;
+        while ( (event = queue.peek()) != null && event.time <= time )
+            runNext();
+        if ( time > now )
+            now = time;
+    }
+
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    public long getFiredCount() {
+        return firedCount;
+    }
+
+    //drops all pending events, time keeps running from where it is
+    public void clear() {
+        queue.clear();
+    }
+
+}
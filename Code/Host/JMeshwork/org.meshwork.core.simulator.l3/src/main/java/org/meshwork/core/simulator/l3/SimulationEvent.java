@@ -0,0 +1,25 @@
+package org.meshwork.core.simulator.l3;
+
+/**
+ * Something that happens at a point of virtual time, events of the same time fire in the order they were scheduled.
+ */
+public abstract class SimulationEvent implements Comparable<SimulationEvent> {
+
+    //virtual micros, set by SimulationClock.schedule()
+    protected long time;
+    protected long order;
+
+    public abstract void fire();
+
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public int compareTo(SimulationEvent o) {
+        if ( time != o.time )
+            return time < o.time ? -1 : 1;
+        return order < o.order ? -1 : (order > o.order ? 1 : 0);
+    }
+
+}
@@ -0,0 +1,240 @@
+package org.meshwork.core.simulator.l3;
+
+import org.meshwork.core.host.l3.Constants;
+import org.meshwork.core.util.Converter;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.Random;
+import java.util.StringTokenizer;
+import java.util.TreeSet;
+
+/**
+ * Topology and radio of a simulated mesh. Can live in the same file as the serial configuration, all keys are
+ * optional and default to a 50 node grid with perfect links.
+ * Explicit links are given as sim.link.&lt;a&gt;.&lt;b&gt;=&lt;loss&gt;[,&lt;airtime&gt;] and override the generated ones,
+ * a loss of 1 removes the link.
+ */
+public class SimulatorConfiguration {
+
+    public static final String TOPOLOGY_LINE    = "line";
+    public static final String TOPOLOGY_GRID    = "grid";
+    public static final String TOPOLOGY_FULL    = "full";
+    public static final String TOPOLOGY_RANDOM  = "random";
+    //explicit links only
+    public static final String TOPOLOGY_NONE    = "none";
+
+    //config file property keys
+    public static final String CONFIG_KEY_NODES         = "sim.nodes";//1-254, optional
+    public static final String CONFIG_KEY_TOPOLOGY      = "sim.topology";//line|grid|full|random|none, optional
+    public static final String CONFIG_KEY_COLUMNS       = "sim.columns";//grid row length, optional
+    public static final String CONFIG_KEY_RADIUS        = "sim.radius";//random radio range on a unit square, optional
+    public static final String CONFIG_KEY_LOSS          = "sim.loss";//probability 0-1, optional
+    public static final String CONFIG_KEY_EDGE_LOSS     = "sim.loss.edge";//random loss at radius, optional
+    public static final String CONFIG_KEY_AIRTIME       = "sim.airtime";//micros per frame, optional
+    public static final String CONFIG_KEY_MAX_HOPS      = "sim.maxhops";//flood hop limit, optional
+    public static final String CONFIG_KEY_ABSENT        = "sim.absent";//comma separated node IDs, optional
+    public static final String CONFIG_KEY_SEED          = "sim.seed";//long, optional
+    public static final String CONFIG_KEY_LINK_PREFIX   = "sim.link.";
+
+    public static final int DEFAULT_NODES   = 50;
+    //nRF24L01+ frame at 250 kbps
+    public static final int DEFAULT_AIRTIME = 1000;
+
+    protected static final class Link {
+        protected final int a;
+        protected final int b;
+        protected final double loss;
+        protected final int airtime;
+
+        protected Link(int a, int b, double loss, int airtime) {
+            this.a = a;
+            this.b = b;
+            this.loss = loss;
+            this.airtime = airtime;
+        }
+    }
+
+    protected int nodes = DEFAULT_NODES;
+    protected String topology = TOPOLOGY_GRID;
+    //0 for a square grid
+    protected int columns;
+    //0 for about eight neighbours per node
+    protected double radius;
+    protected double loss;
+    //negative for the same as loss
+    protected double edgeLoss = -1;
+    protected int airtime = DEFAULT_AIRTIME;
+    protected byte maxHops = Constants.MAX_ROUTING_HOPS;
+    protected ArrayList<Byte> absent = new ArrayList<Byte>();
+    protected ArrayList<Link> links = new ArrayList<Link>();
+    //seed of the topology and loss random generator, 0 picks a random one
+    protected long seed;
+
+    public SimulatorConfiguration() {
+    }
+
+    public void loadConfiguration(InputStream is) throws Exception {
+        Properties p = new Properties();
+        if ( is != null )
+            p.load(is);
+        if ( p.getProperty(CONFIG_KEY_NODES) != null )
+            nodes = Converter.toInt(CONFIG_KEY_NODES, p.getProperty(CONFIG_KEY_NODES));
+        if ( p.getProperty(CONFIG_KEY_TOPOLOGY) != null )
+            topology = p.getProperty(CONFIG_KEY_TOPOLOGY).trim().toLowerCase();
+        if ( p.getProperty(CONFIG_KEY_COLUMNS) != null )
+            columns = Converter.toInt(CONFIG_KEY_COLUMNS, p.getProperty(CONFIG_KEY_COLUMNS));
+        if ( p.getProperty(CONFIG_KEY_RADIUS) != null )
+            radius = Converter.toDouble(CONFIG_KEY_RADIUS, p.getProperty(CONFIG_KEY_RADIUS));
+        if ( p.getProperty(CONFIG_KEY_LOSS) != null )
+            loss = Converter.toDouble(CONFIG_KEY_LOSS, p.getProperty(CONFIG_KEY_LOSS));
+        if ( p.getProperty(CONFIG_KEY_EDGE_LOSS) != null )
+            edgeLoss = Converter.toDouble(CONFIG_KEY_EDGE_LOSS, p.getProperty(CONFIG_KEY_EDGE_LOSS));
+        if ( p.getProperty(CONFIG_KEY_AIRTIME) != null )
+            airtime = Converter.toInt(CONFIG_KEY_AIRTIME, p.getProperty(CONFIG_KEY_AIRTIME));
+        if ( p.getProperty(CONFIG_KEY_MAX_HOPS) != null )
+            maxHops = Converter.toByte(CONFIG_KEY_MAX_HOPS, p.getProperty(CONFIG_KEY_MAX_HOPS));
+        if ( p.getProperty(CONFIG_KEY_ABSENT) != null )
+            absent = Converter.toByteArrayList(CONFIG_KEY_ABSENT, p.getProperty(CONFIG_KEY_ABSENT));
+        if ( p.getProperty(CONFIG_KEY_SEED) != null )
+            seed = Converter.toLong(CONFIG_KEY_SEED, p.getProperty(CONFIG_KEY_SEED));
+        //sorted, so the same file always builds the same graph
+        for ( String key : new TreeSet<String>(p.stringPropertyNames()) )
+            if ( key.startsWith(CONFIG_KEY_LINK_PREFIX) )
+                links.add(parseLink(key, p.getProperty(key)));
+        validate();
+    }
+
+    protected Link parseLink(String key, String value) {
+        StringTokenizer nodeTokens = new StringTokenizer(key.substring(CONFIG_KEY_LINK_PREFIX.length()), ".");
+        if ( nodeTokens.countTokens() != 2 )
+            throw new IllegalArgumentException("Link key must be "+CONFIG_KEY_LINK_PREFIX+"<a>.<b>: "+key);
+        int a = Converter.toInt(key, nodeTokens.nextToken());
+        int b = Converter.toInt(key, nodeTokens.nextToken());
+        StringTokenizer valueTokens = new StringTokenizer(value, ",");
+        if ( valueTokens.countTokens() < 1 || valueTokens.countTokens() > 2 )
+            throw new IllegalArgumentException("Link value must be <loss>[,<airtime>]: "+key+"="+value);
+        double linkLoss = Converter.toDouble(key, valueTokens.nextToken().trim());
+        int linkAirtime = valueTokens.hasMoreTokens() ? Converter.toInt(key, valueTokens.nextToken().trim()) : -1;
+        return new Link(a, b, linkLoss, linkAirtime);
+    }
+
+    public void validate() {
+        if ( nodes < 1 || nodes > (Constants.MAX_NODE_ID & 0xFF) )
+            throw new IllegalArgumentException("Node count must be between 1 and "+(Constants.MAX_NODE_ID & 0xFF)+": "+nodes);
+        if ( !TOPOLOGY_LINE.equals(topology) && !TOPOLOGY_GRID.equals(topology) && !TOPOLOGY_FULL.equals(topology)
+                && !TOPOLOGY_RANDOM.equals(topology) && !TOPOLOGY_NONE.equals(topology) )
+            throw new IllegalArgumentException("Unknown topology: "+topology);
+        if ( columns < 0 || radius < 0 || airtime < 0 )
+            throw new IllegalArgumentException("Columns, radius and airtime cannot be negative: "+columns+", "+radius+", "+airtime);
+        if ( loss < 0 || loss > 1 || edgeLoss > 1 )
+            throw new IllegalArgumentException("Loss must be between 0 and 1: "+loss+", "+edgeLoss);
+        if ( maxHops < 0 || maxHops > Constants.MAX_ROUTING_HOPS )
+            throw new IllegalArgumentException("Max hops must be between 0 and "+Constants.MAX_ROUTING_HOPS+": "+maxHops);
+    }
+
+    //builds the configured graph, random drives the random topology only
+    public LinkGraph createGraph(Random random) {
+        LinkGraph result;
+        if ( TOPOLOGY_LINE.equals(topology) ) {
+            result = LinkGraph.line(nodes, loss, airtime);
+        } else if ( TOPOLOGY_FULL.equals(topology) ) {
+            result = LinkGraph.full(nodes, loss, airtime);
+        } else if ( TOPOLOGY_RANDOM.equals(topology) ) {
+            //pi*r^2*nodes is the average neighbour count
+            double r = radius > 0 ? radius : Math.sqrt(8 / (Math.PI * nodes));
+            result = LinkGraph.random(nodes, r, loss, edgeLoss < 0 ? loss : edgeLoss, airtime, random);
+        } else if ( TOPOLOGY_NONE.equals(topology) ) {
+            result = LinkGraph.isolated(nodes, airtime);
+        } else {
+            result = LinkGraph.grid(nodes, columns > 0 ? columns : (int) Math.ceil(Math.sqrt(nodes)), loss, airtime);
+        }
+        for ( Link link : links ) {
+            if ( link.loss >= 1 )
+                result.unlink(link.a, link.b);
+            else
+                result.link(link.a, link.b, link.loss, link.airtime < 0 ? airtime : link.airtime);
+        }
+        for ( Byte node : absent )
+            result.setPresent(node & 0xFF, false);
+        return result;
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    public String getTopology() {
+        return topology;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    public double getLoss() {
+        return loss;
+    }
+
+    public double getEdgeLoss() {
+        return edgeLoss;
+    }
+
+    public int getAirtime() {
+        return airtime;
+    }
+
+    public byte getMaxHops() {
+        return maxHops;
+    }
+
+    public ArrayList<Byte> getAbsent() {
+        return absent;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setNodes(int nodes) {
+        this.nodes = nodes;
+    }
+
+    public void setTopology(String topology) {
+        this.topology = topology;
+    }
+
+    public void setColumns(int columns) {
+        this.columns = columns;
+    }
+
+    public void setRadius(double radius) {
+        this.radius = radius;
+    }
+
+    public void setLoss(double loss) {
+        this.loss = loss;
+    }
+
+    public void setEdgeLoss(double edgeLoss) {
+        this.edgeLoss = edgeLoss;
+    }
+
+    public void setAirtime(int airtime) {
+        this.airtime = airtime;
+    }
+
+    public void setMaxHops(byte maxHops) {
+        this.maxHops = maxHops;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+}
@@ -0,0 +1,171 @@
+package org.meshwork.core.transport.loopback;
+
+import org.meshwork.core.MessageData;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One direction of a loopback pair. Senders append frames to a lock-free queue stamped with their delivery time,
+ * the single reader parks until the head frame is due or a sender unparks it. Delivery times never decrease, so
+ * jitter delays frames without reordering them, like a serial line.
+ * Frames are copied on send and decoded into a new MessageData on read, a frame whose corrupted LEN no longer
+ * matches its size is rejected on read the way a framing error would be.
+ */
+public class LoopbackChannel {
+
+    protected static final class Frame {
+        protected final byte[] bytes;
+        protected final long deliverAt;
+
+        protected Frame(byte[] bytes, long deliverAt) {
+            this.bytes = bytes;
+            this.deliverAt = deliverAt;
+        }
+    }
+
+    protected final ConcurrentLinkedQueue<Frame> queue;
+    protected final long latency;
+    protected final long jitter;
+    protected final double loss;
+    protected final double corruption;
+    protected final Random random;
+    //latest delivery time handed out, keeps the order of the frames
+    protected final AtomicLong lastDeliverAt;
+    protected volatile Thread reader;
+    protected volatile boolean closed;
+
+    protected final AtomicLong sentCount = new AtomicLong();
+    protected final AtomicLong lostCount = new AtomicLong();
+    protected final AtomicLong corruptedCount = new AtomicLong();
+    protected final AtomicLong rejectedCount = new AtomicLong();
+    protected final AtomicLong deliveredCount = new AtomicLong();
+
+    public LoopbackChannel(LoopbackConfiguration config, Random random) {
+        if ( config == null )
+            throw new IllegalArgumentException("Config cannot be null!");
+        config.validate();
+        queue = new ConcurrentLinkedQueue<Frame>();
+        latency = config.getLatency() * 1000000L;
+        jitter = config.getJitter() * 1000000L;
+        loss = config.getLoss();
+        corruption = config.getCorruption();
+        this.random = random == null ? new Random() : random;
+        lastDeliverAt = new AtomicLong(Long.MIN_VALUE);
+    }
+
+    //queues a copy of the frame unless it is lost, returns false when it was
+    public boolean send(byte[] frame, int off, int len) {
+        sentCount.incrementAndGet();
+        if ( loss > 0 && random.nextDouble() < loss ) {
+            lostCount.incrementAndGet();
+            return false;
+        }
+        byte[] bytes = new byte[len];
+        System.arraycopy(frame, off, bytes, 0, len);
+        if ( corruption > 0 && len > 0 && random.nextDouble() < corruption ) {
+            bytes[random.nextInt(len)] ^= (byte) (1 << random.nextInt(8));
+            corruptedCount.incrementAndGet();
+        }
+        long due = System.nanoTime() + latency + (jitter > 0 ? (long) (random.nextDouble() * jitter) : 0);
+        long deliverAt = lastDeliverAt.accumulateAndGet(due, Math::max);
+        queue.offer(new Frame(bytes, deliverAt));
+        Thread temp = reader;
+        if ( temp != null )
+            LockSupport.unpark(temp);
+        return true;
+    }
+
+    //next due frame, null on timeout or when closed, only one thread may read at a time
+    public MessageData receive(int timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout * 1000000L;
+        reader = Thread.currentThread();
+        try {
+            while ( !closed ) {
+                Frame head = queue.peek();
+                long now = System.nanoTime();
+                if ( head != null && head.deliverAt - now <= 0 ) {
+                    queue.poll();
+                    MessageData result = decode(head.bytes);
+                    if ( result != null ) {
+                        deliveredCount.incrementAndGet();
+                        return result;
+                    }
+                    rejectedCount.incrementAndGet();
+                    continue;
+                }
+                long wait = deadline - now;
+                if ( wait <= 0 )
+                    return null;
+                if ( head != null )
+                    wait = Math.min(wait, head.deliverAt - now);
+                //a send after the peek unparks us, a send before it is seen by the next peek
+                LockSupport.parkNanos(this, wait);
+                if ( Thread.interrupted() )
+                    throw new InterruptedException("Interrupted while waiting for a frame");
+            }
+            return null;
+        } finally {
+            reader = null;
+        }
+    }
+
+    protected static MessageData decode(byte[] bytes) {
+        if ( bytes.length < 4 || (bytes[0] & 0xFF) != bytes.length - 1 )
+            return null;
+        MessageData result = new MessageData();
+        result.len = bytes[0];
+        result.seq = bytes[1];
+        result.code = bytes[2];
+        result.subCode = bytes[3];
+        if ( bytes.length > 4 ) {
+            result.data = new byte[bytes.length - 4];
+            System.arraycopy(bytes, 4, result.data, 0, result.data.length);
+        }
+        return result;
+    }
+
+    public void close() {
+        closed = true;
+        Thread temp = reader;
+        if ( temp != null )
+            LockSupport.unpark(temp);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    //drops everything queued
+    public void clear() {
+        queue.clear();
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getLostCount() {
+        return lostCount.get();
+    }
+
+    public long getCorruptedCount() {
+        return corruptedCount.get();
+    }
+
+    //corrupted frames which no longer decoded
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+}
@@ -0,0 +1,106 @@
+package org.meshwork.core.transport.loopback;
+
+import org.meshwork.core.util.Converter;
+
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Impairments applied to every frame sent over a loopback pair, in both directions. Can live in the same file as the
+ * serial configuration, all keys are optional and default to a perfect link.
+ */
+public class LoopbackConfiguration {
+
+    //config file property keys
+    public static final String CONFIG_KEY_LATENCY       = "loopback.latency";//millis, optional
+    public static final String CONFIG_KEY_JITTER        = "loopback.jitter";//millis, optional
+    public static final String CONFIG_KEY_LOSS          = "loopback.loss";//probability 0-1, optional
+    public static final String CONFIG_KEY_CORRUPTION    = "loopback.corruption";//probability 0-1, optional
+    public static final String CONFIG_KEY_SEED          = "loopback.seed";//long, optional
+
+    //fixed delay of every frame
+    protected int latency;
+    //extra random delay between 0 and jitter, frames are never reordered by it
+    protected int jitter;
+    //chance of a frame to be dropped
+    protected double loss;
+    //chance of a frame to get a single bit flipped
+    protected double corruption;
+    //seed of the impairment random generator, 0 picks a random one
+    protected long seed;
+
+    public LoopbackConfiguration() {
+    }
+
+    public LoopbackConfiguration(int latency, int jitter, double loss, double corruption) {
+        this.latency = latency;
+        this.jitter = jitter;
+        this.loss = loss;
+        this.corruption = corruption;
+    }
+
+    public void loadConfiguration(InputStream is) throws Exception {
+        Properties p = new Properties();
+        if ( is != null )
+            p.load(is);
+        if ( p.getProperty(CONFIG_KEY_LATENCY) != null )
+            latency = Converter.toInt(CONFIG_KEY_LATENCY, p.getProperty(CONFIG_KEY_LATENCY));
+        if ( p.getProperty(CONFIG_KEY_JITTER) != null )
+            jitter = Converter.toInt(CONFIG_KEY_JITTER, p.getProperty(CONFIG_KEY_JITTER));
+        if ( p.getProperty(CONFIG_KEY_LOSS) != null )
+            loss = Converter.toDouble(CONFIG_KEY_LOSS, p.getProperty(CONFIG_KEY_LOSS));
+        if ( p.getProperty(CONFIG_KEY_CORRUPTION) != null )
+            corruption = Converter.toDouble(CONFIG_KEY_CORRUPTION, p.getProperty(CONFIG_KEY_CORRUPTION));
+        if ( p.getProperty(CONFIG_KEY_SEED) != null )
+            seed = Converter.toLong(CONFIG_KEY_SEED, p.getProperty(CONFIG_KEY_SEED));
+        validate();
+    }
+
+    public void validate() {
+        if ( latency < 0 || jitter < 0 )
+            throw new IllegalArgumentException("Latency and jitter cannot be negative: "+latency+", "+jitter);
+        if ( loss < 0 || loss > 1 || corruption < 0 || corruption > 1 )
+            throw new IllegalArgumentException("Loss and corruption must be between 0 and 1: "+loss+", "+corruption);
+    }
+
+    public int getLatency() {
+        return latency;
+    }
+
+    public int getJitter() {
+        return jitter;
+    }
+
+    public double getLoss() {
+        return loss;
+    }
+
+    public double getCorruption() {
+        return corruption;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setLatency(int latency) {
+        this.latency = latency;
+    }
+
+    public void setJitter(int jitter) {
+        this.jitter = jitter;
+    }
+
+    public void setLoss(double loss) {
+        this.loss = loss;
+    }
+
+    public void setCorruption(double corruption) {
+        this.corruption = corruption;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+}
@@ -0,0 +1,122 @@
+package org.meshwork.core.transport.loopback;
+
+import org.meshwork.core.AbstractMessage;
+import org.meshwork.core.AbstractMessageTransport;
+import org.meshwork.core.MessageData;
+import org.meshwork.core.SerialMessageConstants;
+import org.meshwork.core.TransportTimeoutException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * In-memory transport with no hardware behind it, one end of a pair created by createPair(). What one end sends the
+ * other reads, through a LoopbackChannel per direction which applies the configured latency, jitter, loss and
+ * corruption. The host side goes to the dispatcher, the peer side to whatever plays the device, e.g. a test or an
+ * emulated Controller.
+ * Reads never discard anything, so the transport behaves like the serial one in lossless mode and works with the
+ * MessagePipeline.
+ */
+public class LoopbackMessageTransport implements AbstractMessageTransport {
+
+    //device name the consoles map to a loopback pair instead of a serial port
+    public static final String DEVICE_NAME = "loopback";
+
+    protected final LoopbackChannel rx;
+    protected final LoopbackChannel tx;
+    protected LoopbackMessageTransport peer;
+    //LEN byte plus everything it counts, reused for every send
+    protected final ByteBuffer txBuffer;
+
+    protected LoopbackMessageTransport(LoopbackChannel rx, LoopbackChannel tx) {
+        this.rx = rx;
+        this.tx = tx;
+        txBuffer = ByteBuffer.allocate(1 + SerialMessageConstants.MAX_SERIALMSG_LEN);
+    }
+
+    //connected host end, its peer is available through getPeer()
+    public static LoopbackMessageTransport createPair(LoopbackConfiguration config) {
+        if ( config == null )
+            throw new IllegalArgumentException("Config cannot be null!");
+        Random random = config.getSeed() == 0 ? new Random() : new Random(config.getSeed());
+        LoopbackChannel hostToPeer = new LoopbackChannel(config, random);
+        LoopbackChannel peerToHost = new LoopbackChannel(config, random);
+        LoopbackMessageTransport host = new LoopbackMessageTransport(peerToHost, hostToPeer);
+        LoopbackMessageTransport peer = new LoopbackMessageTransport(hostToPeer, peerToHost);
+        host.peer = peer;
+        peer.peer = host;
+        return host;
+    }
+
+    public LoopbackMessageTransport getPeer() {
+        return peer;
+    }
+
+    //frames read by this end
+    public LoopbackChannel getReceiveChannel() {
+        return rx;
+    }
+
+    //frames sent by this end
+    public LoopbackChannel getSendChannel() {
+        return tx;
+    }
+
+    @Override
+    public MessageData readMessage(int timeout) throws TransportTimeoutException, IOException {
+        MessageData result;
+        try {
+            result = rx.receive(timeout);
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while waiting for a message: "+e.getMessage(), e);
+        }
+        if ( result == null ) {
+            if ( rx.isClosed() )
+                throw new IOException("Transport closed");
+            throw new TransportTimeoutException("Timeout while waiting for a message: "+timeout+" ms");
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized int sendMessage(MessageData message) throws IOException {
+        if ( tx.isClosed() )
+            throw new IOException("Transport closed");
+        int msgdatalen = message.data == null ? 0 : message.data.length;
+        if ( message.len != 3 + msgdatalen )
+            throw new IllegalArgumentException("Message length invalid! message.len ("+message.len+") != 3 + message.data.len("+msgdatalen+")");
+        txBuffer.clear();
+        txBuffer.put(message.len);
+        txBuffer.put(message.seq);
+        txBuffer.put(message.code);
+        txBuffer.put(message.subCode);
+        if ( msgdatalen > 0 )
+            txBuffer.put(message.data);
+        tx.send(txBuffer.array(), 0, txBuffer.position());
+        //a lost frame was still sent, like on a real line
+        return SEND_OK;
+    }
+
+    @Override
+    public synchronized int sendMessage(AbstractMessage message) throws IOException {
+        if ( tx.isClosed() )
+            throw new IOException("Transport closed");
+        txBuffer.clear();
+        int len = message.serialize(txBuffer);
+        tx.send(txBuffer.array(), 0, len);
+        return SEND_OK;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !rx.isClosed() && !tx.isClosed();
+    }
+
+    //closes both directions, blocked reads on either end return
+    public void close() {
+        rx.close();
+        tx.close();
+    }
+
+}
@@ -0,0 +1,142 @@
+package org.meshwork.core.transport.serial.jssc;
+
+import org.meshwork.core.MessageData;
+import org.meshwork.core.util.ByteRingBuffer;
+
+/**
+ * SOF | stuffed(LEN | SEQ | CODE | SUBCODE | DATA | CRC16) frames.
+ * SOF and ESC never appear inside a frame (ESC, b ^ 0x20 is sent instead), so after any loss or corruption
+ * the decoder simply restarts at the next SOF. CRC-16/CCITT (poly 0x1021, init 0xFFFF) covers the unstuffed
+ * LEN to DATA bytes and is sent MSB first.
+ */
+public class CrcFrameCodec extends SerialFrameCodec {
+
+    public static final byte SOF = 0x7E;
+    public static final byte ESC = 0x7D;
+    public static final int ESC_XOR = 0x20;
+    public static final int CRC_LEN = 2;
+    public static final int CRC_INIT = 0xFFFF;
+
+    protected static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for ( int i = 0; i < 256; i ++ ) {
+            int crc = i << 8;
+            for ( int j = 0; j < 8; j ++ )
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            CRC_TABLE[i] = crc & 0xFFFF;
+        }
+    }
+
+    //unstuffed frame being assembled: LEN, SEQ, CODE, SUBCODE, DATA, CRC
+    protected final byte[] frame = new byte[1 + MAX_FRAME_LEN + CRC_LEN];
+
+    public static int crc16(int crc, byte[] data, int off, int len) {
+        for ( int i = 0; i < len; i ++ )
+            crc = ((crc << 8) ^ CRC_TABLE[((crc >> 8) ^ data[off + i]) & 0xFF]) & 0xFFFF;
+        return crc;
+    }
+
+    @Override
+    public MessageData decode(ByteRingBuffer buffer) {
+        while ( !buffer.isEmpty() ) {
+            //skip garbage up to the next frame start in one go
+            int available = buffer.available();
+            int start = 0;
+            while ( start < available && buffer.peek(start) != SOF )
+                start ++;
+            if ( start > 0 ) {
+                discard(buffer, start);
+                continue;
+            }
+            //partial frames are re-parsed on every call, bounded by the max stuffed frame size
+            int pos = 1;
+            int count = 0;
+            int needed = 1;
+            boolean broken = false;
+            while ( count < needed ) {
+                if ( pos >= available )
+                    return null;
+                byte b = buffer.peek(pos);
+                if ( b == SOF ) {
+                    //frame cut short, the next one starts here
+                    broken = true;
+                    break;
+                }
+                if ( b == ESC ) {
+                    if ( pos + 1 >= available )
+                        return null;
+                    b = buffer.peek(pos + 1);
+                    if ( b == SOF ) {
+                        pos ++;
+                        broken = true;
+                        break;
+                    }
+                    b ^= ESC_XOR;
+                    pos += 2;
+                } else {
+                    pos ++;
+                }
+                frame[count++] = b;
+                if ( count == 1 ) {
+                    int len = b & 0xFF;
+                    if ( !isValidLen(len) ) {
+                        broken = true;
+                        break;
+                    }
+                    needed = 1 + len + CRC_LEN;
+                }
+            }
+            if ( broken ) {
+                corrupt(buffer, pos);
+                continue;
+            }
+            int dataEnd = count - CRC_LEN;
+            int crc = ((frame[dataEnd] & 0xFF) << 8) | (frame[dataEnd + 1] & 0xFF);
+            if ( crc != crc16(CRC_INIT, frame, 0, dataEnd) ) {
+                corrupt(buffer, pos);
+                continue;
+            }
+            buffer.skip(pos);
+            int dataLen = dataEnd - 4;
+            MessageData msg = newFrame(dataLen);
+            msg.len = frame[0];
+            msg.seq = frame[1];
+            msg.code = frame[2];
+            msg.subCode = frame[3];
+            if ( dataLen > 0 )
+                System.arraycopy(frame, 4, msg.data, 0, dataLen);
+            return frameDecoded(msg);
+        }
+        return null;
+    }
+
+    @Override
+    public int encode(byte[] frame, int off, int len, byte[] dst, int dstOff) {
+        int crc = crc16(CRC_INIT, frame, off, len);
+        int pos = dstOff;
+        dst[pos++] = SOF;
+        for ( int i = 0; i < len; i ++ )
+            pos = stuff(frame[off + i], dst, pos);
+        pos = stuff((byte) (crc >> 8), dst, pos);
+        pos = stuff((byte) crc, dst, pos);
+        return pos - dstOff;
+    }
+
+    protected static int stuff(byte b, byte[] dst, int pos) {
+        if ( b == SOF || b == ESC ) {
+            dst[pos++] = ESC;
+            dst[pos++] = (byte) (b ^ ESC_XOR);
+        } else {
+            dst[pos++] = b;
+        }
+        return pos;
+    }
+
+    @Override
+    public int getMaxEncodedLength(int frameLen) {
+        //every byte escaped in the worst case
+        return 1 + 2 * (frameLen + CRC_LEN);
+    }
+
+}
@@ -0,0 +1,49 @@
+package org.meshwork.core.transport.serial.jssc;
+
+import org.meshwork.core.MessageData;
+import org.meshwork.core.util.ByteRingBuffer;
+
+/**
+ * Bare LEN | SEQ | CODE | SUBCODE | DATA frames, as spoken by the existing firmware.
+ * Without a marker the only sanity check is the LEN byte, a header with an impossible length is skipped byte by byte.
+ */
+public class RawFrameCodec extends SerialFrameCodec {
+
+    //LEN, SEQ, CODE, SUBCODE
+    public static final int HEADER_LEN = 4;
+
+    @Override
+    public MessageData decode(ByteRingBuffer buffer) {
+        while ( buffer.available() >= HEADER_LEN ) {
+            int len = buffer.peek(0) & 0xFF;
+            if ( !isValidLen(len) ) {
+                discard(buffer, 1);
+                continue;
+            }
+            int dataLen = len - MIN_FRAME_LEN;
+            if ( buffer.available() < HEADER_LEN + dataLen )
+                return null;
+            MessageData msg = newFrame(dataLen);
+            msg.len = buffer.read();
+            msg.seq = buffer.read();
+            msg.code = buffer.read();
+            msg.subCode = buffer.read();
+            if ( dataLen > 0 )
+                buffer.read(msg.data, 0, dataLen);
+            return frameDecoded(msg);
+        }
+        return null;
+    }
+
+    @Override
+    public int encode(byte[] frame, int off, int len, byte[] dst, int dstOff) {
+        System.arraycopy(frame, off, dst, dstOff, len);
+        return len;
+    }
+
+    @Override
+    public int getMaxEncodedLength(int frameLen) {
+        return frameLen;
+    }
+
+}
@@ -17,6 +17,22 @@ public class SerialConfiguration {
     public static final String CONFIG_KEY_PARITY        = "serial.parity";//int
     public static final String CONFIG_KEY_SETRTS        = "serial.setrts";//boolean
     public static final String CONFIG_KEY_SETDTR        = "serial.setdtr";//boolean
+    public static final String CONFIG_KEY_RX_BUFFER     = "serial.rx.buffer";//int, optional
+    public static final String CONFIG_KEY_RX_QUEUE      = "serial.rx.queue";//int, optional
+    public static final String CONFIG_KEY_LOSSLESS      = "serial.lossless";//boolean, optional
+    public static final String CONFIG_KEY_FRAME_TIMEOUT = "serial.frame.timeout";//millis, optional
+    public static final String CONFIG_KEY_FRAMING       = "serial.framing";//raw|crc, optional
+    public static final String CONFIG_KEY_TRACE         = "serial.trace";//boolean, optional
+
+    //wire formats, both ends must use the same one
+    public static final String FRAMING_RAW              = "raw";
+    public static final String FRAMING_CRC              = "crc";
+
+    public static final int DEFAULT_RX_BUFFER           = 1024;
+    public static final int DEFAULT_RX_QUEUE            = 64;
+    public static final int DEFAULT_FRAME_TIMEOUT       = 100;
+    public static final String DEFAULT_FRAMING          = FRAMING_RAW;
+    public static final boolean DEFAULT_TRACE           = false;
 
     protected int baudRate;
 
@@ -44,6 +60,30 @@ public class SerialConfiguration {
         return setDTR;
     }
 
+    public int getRxBufferSize() {
+        return rxBufferSize;
+    }
+
+    public int getRxQueueSize() {
+        return rxQueueSize;
+    }
+
+    public boolean isLossless() {
+        return lossless;
+    }
+
+    public int getFrameTimeout() {
+        return frameTimeout;
+    }
+
+    public String getFraming() {
+        return framing;
+    }
+
+    public boolean isTrace() {
+        return trace;
+    }
+
     public void setBaudRate(int baudRate) {
         this.baudRate = baudRate;
     }
@@ -68,11 +108,46 @@ public class SerialConfiguration {
         this.setDTR = setDTR;
     }
 
+    public void setRxBufferSize(int rxBufferSize) {
+        this.rxBufferSize = rxBufferSize;
+    }
+
+    public void setRxQueueSize(int rxQueueSize) {
+        this.rxQueueSize = rxQueueSize;
+    }
+
+    public void setLossless(boolean lossless) {
+        this.lossless = lossless;
+    }
+
+    public void setFrameTimeout(int frameTimeout) {
+        this.frameTimeout = frameTimeout;
+    }
+
+    public void setFraming(String framing) {
+        this.framing = framing;
+    }
+
+    public void setTrace(boolean trace) {
+        this.trace = trace;
+    }
+
     protected int dataBits;
     protected int stopBits;
     protected int parity;
     protected boolean setRTS;
     protected boolean setDTR;
+    //raw bytes buffered until a complete frame is available
+    protected int rxBufferSize = DEFAULT_RX_BUFFER;
+    //complete frames waiting to be read
+    protected int rxQueueSize = DEFAULT_RX_QUEUE;
+    //never purge the port implicitly, only on resync
+    protected boolean lossless;
+    //max gap between bytes of the same frame before the partial frame is considered broken
+    protected int frameTimeout = DEFAULT_FRAME_TIMEOUT;
+    protected String framing = DEFAULT_FRAMING;
+    //dump every frame read and written to the console
+    protected boolean trace = DEFAULT_TRACE;
 
     public SerialConfiguration() {
     }
@@ -95,6 +170,21 @@ public class SerialConfiguration {
         parity = Converter.toInt(CONFIG_KEY_PARITY, p.getProperty(CONFIG_KEY_PARITY));
         setRTS = Converter.toBoolean(CONFIG_KEY_SETRTS, p.getProperty(CONFIG_KEY_SETRTS));
         setDTR = Converter.toBoolean(CONFIG_KEY_SETDTR, p.getProperty(CONFIG_KEY_SETDTR));
+        if ( p.getProperty(CONFIG_KEY_RX_BUFFER) != null )
+            rxBufferSize = Converter.toInt(CONFIG_KEY_RX_BUFFER, p.getProperty(CONFIG_KEY_RX_BUFFER));
+        if ( p.getProperty(CONFIG_KEY_RX_QUEUE) != null )
+            rxQueueSize = Converter.toInt(CONFIG_KEY_RX_QUEUE, p.getProperty(CONFIG_KEY_RX_QUEUE));
+        if ( p.getProperty(CONFIG_KEY_LOSSLESS) != null )
+            lossless = Converter.toBoolean(CONFIG_KEY_LOSSLESS, p.getProperty(CONFIG_KEY_LOSSLESS));
+        if ( p.getProperty(CONFIG_KEY_FRAME_TIMEOUT) != null )
+            frameTimeout = Converter.toInt(CONFIG_KEY_FRAME_TIMEOUT, p.getProperty(CONFIG_KEY_FRAME_TIMEOUT));
+        if ( p.getProperty(CONFIG_KEY_TRACE) != null )
+            trace = Converter.toBoolean(CONFIG_KEY_TRACE, p.getProperty(CONFIG_KEY_TRACE));
+        if ( p.getProperty(CONFIG_KEY_FRAMING) != null ) {
+            framing = p.getProperty(CONFIG_KEY_FRAMING).trim().toLowerCase();
+            if ( !FRAMING_RAW.equals(framing) && !FRAMING_CRC.equals(framing) )
+                throw new IllegalArgumentException("Unknown "+CONFIG_KEY_FRAMING+" value: "+framing);
+        }
     }
 
 }
@@ -0,0 +1,99 @@
+package org.meshwork.core.transport.serial.jssc;
+
+import org.meshwork.core.MessageData;
+import org.meshwork.core.SerialMessageConstants;
+import org.meshwork.core.util.ByteRingBuffer;
+import org.meshwork.core.util.MessageDataPool;
+
+/**
+ * Wire format of the serial link. Decoding works directly on the receive buffer, consuming complete frames
+ * and skipping bytes which can't start a valid frame, so the stream resyncs without purging the port.
+ * Not thread-safe, SerialFrameDecoder serializes all calls.
+ */
+public abstract class SerialFrameCodec {
+
+    //LEN covers at least SEQ, CODE and SUBCODE
+    public static final int MIN_FRAME_LEN = 3;
+    public static final int MAX_FRAME_LEN = SerialMessageConstants.MAX_SERIALMSG_LEN;
+
+    protected boolean resyncing;
+    protected long discardedByteCount;
+    protected long resyncCount;
+    protected long corruptFrameCount;
+    //decoded frames are taken from here when set, otherwise each one is a new MessageData
+    protected MessageDataPool pool;
+
+    public MessageDataPool getPool() {
+        return pool;
+    }
+
+    public void setPool(MessageDataPool pool) {
+        this.pool = pool;
+    }
+
+    //returns the next complete frame at the head of the buffer or null if more bytes are needed
+    public abstract MessageData decode(ByteRingBuffer buffer);
+
+    //encodes the plain LEN | SEQ | CODE | SUBCODE | DATA frame into dst and returns the number of bytes written
+    public abstract int encode(byte[] frame, int off, int len, byte[] dst, int dstOff);
+
+    //upper bound of the encoded size of a plain frame of the given length
+    public abstract int getMaxEncodedLength(int frameLen);
+
+    //gives up on the partial frame at the head of the buffer, used when its remainder never arrived
+    public void discardFrameStart(ByteRingBuffer buffer) {
+        discard(buffer, 1);
+    }
+
+    public void reset() {
+        resyncing = false;
+    }
+
+    protected void discard(ByteRingBuffer buffer, int count) {
+        discardedByteCount += buffer.skip(count);
+        if ( !resyncing ) {
+            resyncing = true;
+            resyncCount ++;
+        }
+    }
+
+    protected void corrupt(ByteRingBuffer buffer, int count) {
+        corruptFrameCount ++;
+        discard(buffer, count);
+    }
+
+    //frame to decode into, with data of exactly dataLen bytes or null when 0
+    protected MessageData newFrame(int dataLen) {
+        if ( pool != null )
+            return pool.get(dataLen);
+        MessageData result = new MessageData();
+        if ( dataLen > 0 )
+            result.data = new byte[dataLen];
+        return result;
+    }
+
+    protected MessageData frameDecoded(MessageData message) {
+        resyncing = false;
+        return message;
+    }
+
+    protected static boolean isValidLen(int len) {
+        return len >= MIN_FRAME_LEN && len <= MAX_FRAME_LEN;
+    }
+
+    //bytes skipped while looking for the next frame boundary
+    public long getDiscardedByteCount() {
+        return discardedByteCount;
+    }
+
+    //number of times the frame boundary was lost and recovered
+    public long getResyncCount() {
+        return resyncCount;
+    }
+
+    //frames which started correctly but failed the integrity check
+    public long getCorruptFrameCount() {
+        return corruptFrameCount;
+    }
+
+}
@@ -0,0 +1,117 @@
+package org.meshwork.core.transport.serial.jssc;
+
+import org.meshwork.core.MessageData;
+import org.meshwork.core.util.ByteRingBuffer;
+import org.meshwork.core.util.MessageDataPool;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Incremental framer turning the raw serial byte stream into MessageData frames using the configured SerialFrameCodec.
+ * Bytes may arrive in arbitrary chunks, complete frames are offered to the receive queue as soon as they are available.
+ * Invalid data and stale partial frames are skipped by the codec until a plausible frame boundary is found again.
+ */
+public class SerialFrameDecoder {
+
+    protected final ByteRingBuffer buffer;
+    protected final BlockingQueue<MessageData> queue;
+    protected final SerialFrameCodec codec;
+    protected int frameTimeout;
+    protected long lastFeedTime;
+    protected long decodedFrameCount;
+    protected long droppedFrameCount;
+
+    public SerialFrameDecoder(int bufferSize, BlockingQueue<MessageData> queue) {
+        this(bufferSize, queue, SerialConfiguration.DEFAULT_FRAME_TIMEOUT, new RawFrameCodec());
+    }
+
+    public SerialFrameDecoder(int bufferSize, BlockingQueue<MessageData> queue, int frameTimeout, SerialFrameCodec codec) {
+        if ( queue == null )
+            throw new IllegalArgumentException("Queue cannot be null!");
+        if ( codec == null )
+            throw new IllegalArgumentException("Codec cannot be null!");
+        this.buffer = new ByteRingBuffer(bufferSize);
+        this.queue = queue;
+        this.frameTimeout = frameTimeout;
+        this.codec = codec;
+    }
+
+    //appends the bytes to the internal buffer and decodes all frames completed by them
+    public synchronized void feed(byte[] data, int off, int len) {
+        long now = System.currentTimeMillis();
+        if ( frameTimeout > 0 && !buffer.isEmpty() && now - lastFeedTime > frameTimeout )
+            discardStale();
+        lastFeedTime = now;
+        while ( len > 0 ) {
+            int written = buffer.write(data, off, len);
+            off += written;
+            len -= written;
+            decode();
+            //buffer full without a complete frame can't happen with a buffer larger than the max frame,
+            //but never spin on it
+            if ( written == 0 && buffer.free() == 0 )
+                codec.discard(buffer, buffer.available());
+        }
+    }
+
+    //the rest of a buffered partial frame never arrived, so its start wasn't a real frame start
+    protected void discardStale() {
+        while ( !buffer.isEmpty() ) {
+            codec.discardFrameStart(buffer);
+            decode();
+        }
+    }
+
+    protected void decode() {
+        MessageData msg;
+        while ( (msg = codec.decode(buffer)) != null ) {
+            decodedFrameCount ++;
+            if ( !queue.offer(msg) )
+                droppedFrameCount ++;
+        }
+    }
+
+    //decoded frames are reused from the pool when set, see MessageDataPool for how large it must be
+    public synchronized void setPool(MessageDataPool pool) {
+        codec.setPool(pool);
+    }
+
+    //drops any partially received frame
+    public synchronized void reset() {
+        buffer.clear();
+        codec.reset();
+    }
+
+    public SerialFrameCodec getCodec() {
+        return codec;
+    }
+
+    public synchronized int getBufferedByteCount() {
+        return buffer.available();
+    }
+
+    public synchronized long getDecodedFrameCount() {
+        return decodedFrameCount;
+    }
+
+    //frames decoded while the receive queue was full
+    public synchronized long getDroppedFrameCount() {
+        return droppedFrameCount;
+    }
+
+    //bytes skipped while looking for the next frame boundary
+    public synchronized long getDiscardedByteCount() {
+        return codec.getDiscardedByteCount();
+    }
+
+    //number of times the frame boundary was lost and recovered
+    public synchronized long getResyncCount() {
+        return codec.getResyncCount();
+    }
+
+    //frames rejected by the codec integrity check
+    public synchronized long getCorruptFrameCount() {
+        return codec.getCorruptFrameCount();
+    }
+
+}
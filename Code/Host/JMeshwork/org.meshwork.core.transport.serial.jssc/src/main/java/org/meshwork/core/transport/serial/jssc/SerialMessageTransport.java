@@ -1,12 +1,20 @@
 package org.meshwork.core.transport.serial.jssc;
 
 import jssc.*;
+import org.meshwork.core.AbstractMessage;
 import org.meshwork.core.AbstractMessageTransport;
 import org.meshwork.core.MessageData;
+import org.meshwork.core.SerialMessageConstants;
 import org.meshwork.core.TransportTimeoutException;
+import org.meshwork.core.util.Log;
+import org.meshwork.core.util.MessageDataPool;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by Sinisha Djukic on 14-2-12.
@@ -15,12 +23,48 @@ public class SerialMessageTransport implements AbstractMessageTransport, SerialP
 
     protected SerialPort port;
     protected String portName;
+    //frames decoded from the port events, waiting for readMessage
+    protected BlockingQueue<MessageData> rxQueue;
+    protected SerialFrameDecoder decoder;
+    protected int rxBufferSize;
+    protected int rxQueueSize;
+    //when set, read and send leave the port buffers alone and the decoder resyncs on its own
+    protected boolean lossless;
+    protected int frameTimeout;
+    protected String framing;
+    //received frames are reused instead of allocated, see setReuseFrames()
+    protected boolean reuseFrames;
+    //encodes outgoing frames, the decoder uses the same instance for incoming ones
+    protected SerialFrameCodec codec;
+    //plain outgoing frame, reused for every send
+    protected final ByteBuffer txBuffer;
+    //encoded outgoing frame and exact-length copies of it by encoded length
+    protected byte[] txEncoded;
+    protected byte[][] txFrames;
+    //per-frame dumps are logged at trace level, they allocate so keep it lower for allocation-free sends
+    protected Log log;
+    //explicit resync requests, decoder-initiated ones are counted by the decoder
+    protected long resyncCount;
 
     public SerialMessageTransport() {
+        rxBufferSize = SerialConfiguration.DEFAULT_RX_BUFFER;
+        rxQueueSize = SerialConfiguration.DEFAULT_RX_QUEUE;
+        frameTimeout = SerialConfiguration.DEFAULT_FRAME_TIMEOUT;
+        framing = SerialConfiguration.DEFAULT_FRAMING;
+        log = new Log(new PrintWriter(System.out, true), SerialConfiguration.DEFAULT_TRACE ? Log.TRACE : Log.INFO);
+        //LEN byte plus everything it counts
+        txBuffer = ByteBuffer.allocate(1 + SerialMessageConstants.MAX_SERIALMSG_LEN);
     }
 
     public void init(SerialConfiguration config, String portName) throws Exception {
         //todo set up port, etc. and call init(port)
+        this.portName = portName;
+        rxBufferSize = config.getRxBufferSize();
+        rxQueueSize = config.getRxQueueSize();
+        lossless = config.isLossless();
+        frameTimeout = config.getFrameTimeout();
+        framing = config.getFraming();
+        setTrace(config.isTrace());
         port = new SerialPort(portName);
         port.openPort();
         port.setParams(config.getBaudRate(), config.getDataBits(), config.getStopBits(), config.getParity(), config.isSetRTS(), config.isSetDTR());
@@ -28,12 +72,13 @@ public class SerialMessageTransport implements AbstractMessageTransport, SerialP
     }
 
     public void deinit() throws Exception {
-        System.out.println("########## Closing port: "+portName);
-        while (!port.closePort());
+        log.info("########## Closing port: "+portName);
+        //stop the event thread before the port goes away
         port.removeEventListener();
+        while (!port.closePort());
         port = null;
         portName = null;
-        System.out.println("########## Closed");
+        log.info("########## Closed");
     }
     
     public boolean isOpen() {
@@ -46,16 +91,30 @@ public class SerialMessageTransport implements AbstractMessageTransport, SerialP
         if ( port == null )
             throw new IllegalArgumentException("SerialPort cannot be null!");
         this.port = port;
+        rxQueue = new ArrayBlockingQueue<MessageData>(rxQueueSize);
+        codec = createCodec(framing);
+        decoder = new SerialFrameDecoder(rxBufferSize, rxQueue, frameTimeout, codec);
+        setReuseFrames(reuseFrames);
+        txEncoded = new byte[codec.getMaxEncodedLength(txBuffer.capacity())];
+        txFrames = new byte[txEncoded.length + 1][];
+        purgeBuffers(true, true);
         try {
-            port.addEventListener(this);//, SerialPort.MASK_RXCHAR);
+            port.addEventListener(this, SerialPort.MASK_RXCHAR);
         } catch (SerialPortException e) {
             e.printStackTrace();
             this.port = null;
             throw e;
-        } finally {
-            port.removeEventListener();
         }
-        purgeBuffers(true, true);
+    }
+
+    //the firmware can't negotiate the framing, so the configured one is used as-is for both directions
+    protected SerialFrameCodec createCodec(String framing) {
+        if ( SerialConfiguration.FRAMING_CRC.equals(framing) )
+            return new CrcFrameCodec();
+        else if ( framing == null || SerialConfiguration.FRAMING_RAW.equals(framing) )
+            return new RawFrameCodec();
+        else
+            throw new IllegalArgumentException("Unknown framing: "+framing);
     }
 
     //port assumed to be closed by the caller after this method returns
@@ -74,6 +133,13 @@ public class SerialMessageTransport implements AbstractMessageTransport, SerialP
 
     protected boolean purgeBuffers(boolean read, boolean write) {
         boolean result = false;
+        if ( read ) {
+            //anything already drained from the port is discarded as well
+            if ( decoder != null )
+                decoder.reset();
+            if ( rxQueue != null )
+                rxQueue.clear();
+        }
         try {
             result = port.purgePort( (read ? (SerialPort.PURGE_RXABORT | SerialPort.PURGE_RXCLEAR) : 0 )
                                    | (write ? (SerialPort.PURGE_TXABORT | SerialPort.PURGE_TXCLEAR) : 0 ) );
@@ -83,71 +149,83 @@ public class SerialMessageTransport implements AbstractMessageTransport, SerialP
         return result;
     }
 
+    //drops everything received so far, e.g. after the controller was reset
+    public void resync() {
+        purgeBuffers(true, true);
+        resyncCount ++;
+    }
+
     @Override
     public MessageData readMessage(int timeout) throws TransportTimeoutException, IOException {
         MessageData result = null;
         try {
             result = _readOneMessage(timeout);
         } finally {
-            purgeBuffers(true, true);
+            if ( !lossless )
+                purgeBuffers(true, true);
         }
         return result;
     }
 
     protected MessageData _readOneMessage(int timeout) throws TransportTimeoutException, IOException {
-        MessageData result = new MessageData();
-        byte[] header = null;
-
-
+        MessageData result = null;
         try {
-            System.out.println("<<<<<<<<<< ENTER SerialMessageTransport._readOneMessage with timeout: "+timeout+" <<<<<<<<<<");
-            header = port.readBytes(4, timeout);
-        } catch (SerialPortTimeoutException e) {
-            throw new TransportTimeoutException("Timeout while reading the message header:" +e.getMessage(), e);
-        } catch (Exception e) {
-            throw new IOException("Exception while reading the message header: "+e.getMessage(), e);
+            if ( log.isTrace() )
+                log.trace("<<<<<<<<<< ENTER SerialMessageTransport._readOneMessage with timeout: "+timeout+" <<<<<<<<<<");
+            result = rxQueue.poll(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while waiting for a message: "+e.getMessage(), e);
         }
-        result.len = header[0];
-        result.seq = header[1];
-        result.code = header[2];
-        result.subCode = header[3];
-        System.out.print("Message header bytes read:\n  ");
-        for ( int i = 0; i < 4; i ++ )
-            System.out.print(header[i]+" ");
-        System.out.println();
-        if ( result.len > 1 ) {
-            try {
-                result.data = port.readBytes(result.len-3, timeout);
-                if ( result.data != null ) {
-                    System.out.print("Message data bytes read:\n  ");
-                    for (int i = 0; i < result.data.length; i++)
-                        System.out.print(result.data[i] + " ");
-                    System.out.println();
-                }
-            } catch (SerialPortTimeoutException e) {
-                throw new TransportTimeoutException("Timeout while reading the message header:" +e.getMessage(), e);
-            } catch (Exception e) {
-                throw new IOException("Exception while reading the message header: "+e.getMessage(), e);
-            }
+        if ( result == null )
+            throw new TransportTimeoutException("Timeout while waiting for a message: "+timeout+" ms");
+        if ( !log.isTrace() )
+            return result;
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("Message header bytes read:\n  ");
+        sb.append(result.len).append(' ').append(result.seq).append(' ').append(result.code).append(' ').append(result.subCode);
+        if ( result.data != null ) {
+            sb.append("\nMessage data bytes read:\n  ");
+            for (int i = 0; i < result.data.length; i++)
+                sb.append(result.data[i]).append(' ');
         }
-        System.out.println("<<<<<<<<<< EXIT  SerialMessageTransport._readOneMessage data: "+result+" <<<<<<<<<<");
+        log.trace(sb.toString());
+        log.trace("<<<<<<<<<< EXIT  SerialMessageTransport._readOneMessage data: "+result+" <<<<<<<<<<");
         return result;
     }
 
     @Override
-    public int sendMessage(MessageData message) throws IOException {
+    public synchronized int sendMessage(MessageData message) throws IOException {
         int result = SEND_NOK;
         try {
             result = _sendOneMessage(message);
         } catch (Exception e) {
             throw new IOException(e);
         } finally {
-            purgeBuffers(true, false);
+            if ( !lossless )
+                purgeBuffers(true, false);
         }
         return result;
     }
 
-    public static final synchronized void printHex(PrintWriter writer, byte[] data,
+    @Override
+    public synchronized int sendMessage(AbstractMessage message) throws IOException {
+        int result = SEND_NOK;
+        try {
+            if ( log.isTrace() )
+                log.trace(">>>>>>>>>> ENTER SerialMessageTransport.sendMessage: "+message+" >>>>>>>>>>");
+            txBuffer.clear();
+            int len = message.serialize(txBuffer);
+            result = _sendFrame(txBuffer.array(), len);
+        } catch (Exception e) {
+            throw new IOException(e);
+        } finally {
+            if ( !lossless )
+                purgeBuffers(true, false);
+        }
+        return result;
+    }
+
+    public static final void printHex(PrintWriter writer, byte[] data,
                                                    int maxCount, int maxPerRow,
                                                    String rowPrefix, String rowSuffix, String separator) {
         int len = data == null ? 0 : data.length;
@@ -169,44 +247,117 @@ public class SerialMessageTransport implements AbstractMessageTransport, SerialP
         }
     }
     protected int _sendOneMessage(MessageData message) throws SerialPortException {
-        System.out.println(">>>>>>>>>> ENTER SerialMessageTransport._sendOneMessage: "+message+" >>>>>>>>>>");
-//        port.writeByte(message.seq);
-//        port.writeByte(message.len);
-//        port.writeByte(message.subCode);
-//        if ( message.len > 1 )
-//            port.writeBytes(message.data);
-        byte[] temp = new byte[message.len+1];
-        temp[0] = message.len;
-        temp[1] = message.seq;
-        temp[2] = message.code;
-        temp[3] = message.subCode;
+        if ( log.isTrace() )
+            log.trace(">>>>>>>>>> ENTER SerialMessageTransport._sendOneMessage: "+message+" >>>>>>>>>>");
         int msgdatalen = message.data == null ? 0 : message.data.length;
-
-        System.out.print("Message header bytes to write:\n  ");
-        for ( int i = 0; i < 4; i ++ )
-            System.out.print(temp[i]+" ");
-        System.out.println();
-
         if ( message.len != 3 + msgdatalen )
-            throw new IllegalArgumentException("Message length invalid! message.len ("+message.len+") != 4 + message.data.len("+msgdatalen+")");
-        else if ( message.data != null ) {
-
-            System.arraycopy(message.data, 0, temp, 4, message.data.length);
+            throw new IllegalArgumentException("Message length invalid! message.len ("+message.len+") != 3 + message.data.len("+msgdatalen+")");
+        txBuffer.clear();
+        txBuffer.put(message.len);
+        txBuffer.put(message.seq);
+        txBuffer.put(message.code);
+        txBuffer.put(message.subCode);
+        if ( msgdatalen > 0 )
+            txBuffer.put(message.data);
+        return _sendFrame(txBuffer.array(), txBuffer.position());
+    }
 
-            System.out.print("Message data bytes to write:\n  ");
-            for ( int i = 0; i < message.data.length; i ++ )
-                System.out.print(message.data[i]+" ");
-            System.out.println();
+    //encodes the plain frame and writes it out through the cached array of the exact encoded length,
+    //jssc can only write whole arrays
+    protected int _sendFrame(byte[] frame, int len) throws SerialPortException {
+        int encodedLen = codec.encode(frame, 0, len, txEncoded, 0);
+        byte[] temp = txFrames[encodedLen];
+        if ( temp == null )
+            temp = txFrames[encodedLen] = new byte[encodedLen];
+        System.arraycopy(txEncoded, 0, temp, 0, encodedLen);
+        if ( log.isTrace() ) {
+            StringBuilder sb = new StringBuilder(128);
+            sb.append("Message bytes to write:\n  ");
+            for ( int i = 0; i < temp.length; i ++ )
+                sb.append(temp[i]).append(' ');
+            log.trace(sb.toString());
         }
-
         port.writeBytes(temp);
-        System.out.println(">>>>>>>>>> EXIT SerialMessageTransport._sendOneMessage >>>>>>>>>>");
+        log.trace(">>>>>>>>>> EXIT SerialMessageTransport._sendFrame >>>>>>>>>>");
         return SEND_OK;
     }
 
     @Override
     public void serialEvent(SerialPortEvent serialPortEvent) {
-        //TODO decide later on if we should process the data async or not
-        //TODO implement start-of-message markers for port disconnection robustness
+        SerialPort temp = port;
+        if ( temp == null || !serialPortEvent.isRXCHAR() || serialPortEvent.getEventValue() < 1 )
+            return;
+        try {
+            //drain whatever is there, the decoder keeps partial frames until the rest arrives
+            byte[] bytes = temp.readBytes();
+            if ( bytes != null )
+                decoder.feed(bytes, 0, bytes.length);
+        } catch (SerialPortException e) {
+            e.printStackTrace();
+        }
+    }
+
+    //frames decoded while nobody was reading and the receive queue was full
+    public long getDroppedFrameCount() {
+        return decoder == null ? 0 : decoder.getDroppedFrameCount();
+    }
+
+    //bytes skipped by the decoder while looking for a frame boundary
+    public long getDiscardedByteCount() {
+        return decoder == null ? 0 : decoder.getDiscardedByteCount();
+    }
+
+    //resyncs done by the decoder on invalid or stale data plus the explicitly requested ones
+    public long getResyncCount() {
+        return resyncCount + (decoder == null ? 0 : decoder.getResyncCount());
+    }
+
+    //frames rejected by the codec, always 0 with raw framing
+    public long getCorruptFrameCount() {
+        return decoder == null ? 0 : decoder.getCorruptFrameCount();
+    }
+
+    public long getDecodedFrameCount() {
+        return decoder == null ? 0 : decoder.getDecodedFrameCount();
+    }
+
+    public String getFraming() {
+        return framing;
+    }
+
+    public Log getLog() {
+        return log;
+    }
+
+    public boolean isTrace() {
+        return log.isTrace();
+    }
+
+    public void setTrace(boolean trace) {
+        if ( trace )
+            log.setLevel(Log.TRACE);
+        else if ( log.isTrace() )
+            log.setLevel(Log.INFO);
+    }
+
+    public boolean isLossless() {
+        return lossless;
+    }
+
+    public boolean isReuseFrames() {
+        return reuseFrames;
+    }
+
+    /**
+     * Decodes received frames into a fixed pool instead of a new MessageData each, so a frame returned by
+     * readMessage() is only valid until the next readMessage(). Only for readers which are done with each frame
+     * before reading the next one, like MessageAdapter views. Ignored in lossless mode, where frames may be kept
+     * across reads.
+     */
+    public void setReuseFrames(boolean reuseFrames) {
+        this.reuseFrames = reuseFrames;
+        if ( decoder != null )
+            //the queued frames plus the one being read and the one being decoded
+            decoder.setPool(reuseFrames && !lossless ? new MessageDataPool(rxQueueSize + 2, SerialFrameCodec.MAX_FRAME_LEN) : null);
     }
 }
@@ -2,10 +2,12 @@ package org.meshwork.core.zeroconf.l3;
 
 import org.meshwork.core.AbstractMessage;
 import org.meshwork.core.MessageData;
+import org.meshwork.core.codegen.SerialField;
 import org.meshwork.core.SerialMessageConstants;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-10.
@@ -18,6 +20,7 @@ public class MNOK extends AbstractMessage implements Constants {
     public static final String ILLEGAL_STATE        = "ILLEGAL STATE";
     public static final String KEY_TOO_LONG         = "KEY TOO LONG";
     public static final String SEQUENCE_MISMATCH    = "SEQUENCE MISMATCH";
+    @SerialField(index = 0)
     public byte error;
 
     public MNOK(byte seq) {
@@ -45,12 +48,17 @@ public class MNOK extends AbstractMessage implements Constants {
     @Override
     public AbstractMessage deserialize(MessageData msg) throws IOException {
         MNOK result = new MNOK(msg.seq);
-        result.error = msg.data[0];
+        MNOKCodec.decode(result, msg.data);
         return result;
     }
 
     @Override
     public void serializeImpl(MessageData msg) {
-        msg.data = new byte[] { error };
+        msg.data = MNOKCodec.toBytes(this);
+    }
+
+    @Override
+    public void serializeImpl(ByteBuffer buf) {
+        MNOKCodec.encode(this, buf);
     }
 }
@@ -2,16 +2,20 @@ package org.meshwork.core.zeroconf.l3;
 
 import org.meshwork.core.AbstractMessage;
 import org.meshwork.core.MessageData;
+import org.meshwork.core.codegen.SerialField;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-10.
  */
 public class MZCDevRes extends AbstractMessage implements Constants {
 
+    @SerialField(index = 0)
     public byte nwkcaps;
+    @SerialField(index = 1)
     public byte delivery;
 
     public MZCDevRes(byte seq) {
@@ -27,15 +31,17 @@ public class MZCDevRes extends AbstractMessage implements Constants {
     @Override
     public AbstractMessage deserialize(MessageData msg) throws IOException {
         MZCDevRes result = new MZCDevRes(msg.seq);
-        result.nwkcaps = msg.data[0];
-        result.delivery = msg.data[1];
+        MZCDevResCodec.decode(result, msg.data);
         return result;
     }
 
     @Override
     public void serializeImpl(MessageData msg) {
-        msg.data = new byte[2];
-        msg.data[0] = nwkcaps;
-        msg.data[1] = delivery;
+        msg.data = MZCDevResCodec.toBytes(this);
+    }
+
+    @Override
+    public void serializeImpl(ByteBuffer buf) {
+        MZCDevResCodec.encode(this, buf);
     }
 }
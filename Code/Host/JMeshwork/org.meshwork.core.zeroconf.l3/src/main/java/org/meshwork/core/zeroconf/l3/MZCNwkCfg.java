@@ -2,19 +2,27 @@ package org.meshwork.core.zeroconf.l3;
 
 import org.meshwork.core.AbstractMessage;
 import org.meshwork.core.MessageData;
+import org.meshwork.core.codegen.SerialArray;
+import org.meshwork.core.codegen.SerialField;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-10.
  */
 public class MZCNwkCfg extends AbstractMessage implements Constants {
 
+    @SerialField(index = 0)
     public byte channel;
+    @SerialField(index = 1)
     public short nwkid;
+    @SerialField(index = 2)
     public byte nodeid;
+    @SerialField(index = 3)
     public byte keylen;
+    @SerialArray(index = 4, length = "keylen", max = MAX_NETWORK_KEY_LEN, nullIfEmpty = true)
     public byte[] key;
 
     public MZCNwkCfg(byte seq) {
@@ -32,26 +40,17 @@ public class MZCNwkCfg extends AbstractMessage implements Constants {
     @Override
     public AbstractMessage deserialize(MessageData msg) throws IOException {
         MZCNwkCfg result = new MZCNwkCfg(msg.seq);
-        result.channel = msg.data[0];
-        result.nwkid = (short) (( msg.data[1] << 8 ) & 0xFF |
-                                ( msg.data[2] << 0 ) & 0xFF);
-        result.nodeid = msg.data[3];
-        result.keylen = msg.data[4];
-        result.key = result.keylen < 1 ? null : new byte[result.keylen];
-        if ( keylen >= 1 )
-            System.arraycopy(msg.data, 5, result.key, 0, result.keylen);
+        MZCNwkCfgCodec.decode(result, msg.data);
         return result;
     }
 
     @Override
     public void serializeImpl(MessageData msg) {
-        msg.data = new byte[5 + keylen];
-        msg.data[0] = channel;
-        msg.data[1] = (byte) (( nwkid >> 8 ) & 0xFF);
-        msg.data[2] = (byte) (( nwkid >> 0 ) & 0xFF);
-        msg.data[3] = nodeid;
-        msg.data[4] = keylen;
-        if ( keylen >= 1 )
-            System.arraycopy(key, 0, msg.data, 5, keylen);
+        msg.data = MZCNwkCfgCodec.toBytes(this);
+    }
+
+    @Override
+    public void serializeImpl(ByteBuffer buf) {
+        MZCNwkCfgCodec.encode(this, buf);
     }
 }
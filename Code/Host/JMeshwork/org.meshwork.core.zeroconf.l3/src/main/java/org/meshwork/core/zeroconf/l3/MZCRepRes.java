@@ -2,16 +2,20 @@ package org.meshwork.core.zeroconf.l3;
 
 import org.meshwork.core.AbstractMessage;
 import org.meshwork.core.MessageData;
+import org.meshwork.core.codegen.SerialField;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-10.
  */
 public class MZCRepRes extends AbstractMessage implements Constants {
 
+    @SerialField(index = 0)
     public byte reportNodeid;
+    @SerialField(index = 1)
     public byte reportFlags;
 
     public MZCRepRes(byte seq) {
@@ -27,15 +31,17 @@ public class MZCRepRes extends AbstractMessage implements Constants {
     @Override
     public AbstractMessage deserialize(MessageData msg) throws IOException {
         MZCRepRes result = new MZCRepRes(msg.seq);
-        result.reportNodeid = msg.data[0];
-        result.reportFlags = msg.data[1];
+        MZCRepResCodec.decode(result, msg.data);
         return result;
     }
 
     @Override
     public void serializeImpl(MessageData msg) {
-        msg.data = new byte[2];
-        msg.data[0] = reportNodeid;
-        msg.data[1] = reportFlags;
+        msg.data = MZCRepResCodec.toBytes(this);
+    }
+
+    @Override
+    public void serializeImpl(ByteBuffer buf) {
+        MZCRepResCodec.encode(this, buf);
     }
 }
@@ -2,16 +2,21 @@ package org.meshwork.core.zeroconf.l3;
 
 import org.meshwork.core.AbstractMessage;
 import org.meshwork.core.MessageData;
+import org.meshwork.core.codegen.SerialArray;
+import org.meshwork.core.codegen.SerialField;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-10.
  */
 public class MZCSerialCfg extends AbstractMessage implements Constants {
 
+    @SerialField(index = 0)
     public byte sernumlen;
+    @SerialArray(index = 1, length = "sernumlen", max = MAX_SERIAL_LEN, nullIfEmpty = true)
     public byte[] sernum;
 
     public MZCSerialCfg(byte seq) {
@@ -27,17 +32,17 @@ public class MZCSerialCfg extends AbstractMessage implements Constants {
     @Override
     public AbstractMessage deserialize(MessageData msg) throws IOException {
         MZCSerialCfg result = new MZCSerialCfg(msg.seq);
-        result.sernumlen = msg.data[0];
-        result.sernum = result.sernumlen < 1 ? null : new byte[result.sernumlen];
-        System.arraycopy(msg.data, 1, result.sernum, 0, result.sernumlen);
+        MZCSerialCfgCodec.decode(result, msg.data);
         return result;
     }
 
     @Override
     public void serializeImpl(MessageData msg) {
-        msg.data = new byte[1 + sernumlen];
-        msg.data[0] = sernumlen;
-        if ( sernumlen >= 1 )
-            System.arraycopy(sernum, 0, msg.data, 1, sernumlen);
+        msg.data = MZCSerialCfgCodec.toBytes(this);
+    }
+
+    @Override
+    public void serializeImpl(ByteBuffer buf) {
+        MZCSerialCfgCodec.encode(this, buf);
     }
 }
@@ -2,16 +2,21 @@ package org.meshwork.core.zeroconf.l3;
 
 import org.meshwork.core.AbstractMessage;
 import org.meshwork.core.MessageData;
+import org.meshwork.core.codegen.SerialArray;
+import org.meshwork.core.codegen.SerialField;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Sinisha Djukic on 14-2-10.
  */
 public class MZCSerialRes extends AbstractMessage implements Constants {
 
+    @SerialField(index = 0)
     public byte sernumlen;
+    @SerialArray(index = 1, length = "sernumlen", max = MAX_SERIAL_LEN, nullIfEmpty = true)
     public byte[] sernum;
 
     public MZCSerialRes(byte seq) {
@@ -29,18 +34,17 @@ public class MZCSerialRes extends AbstractMessage implements Constants {
     @Override
     public AbstractMessage deserialize(MessageData msg) throws IOException {
         MZCSerialRes result = new MZCSerialRes(msg.seq);
-        result.sernumlen = msg.data[0];
-        result.sernum = result.sernumlen < 1 ? null : new byte[result.sernumlen];
-		if ( result.sernumlen > 0 )
-			System.arraycopy(msg.data, 1, result.sernum, 0, result.sernumlen);
+        MZCSerialResCodec.decode(result, msg.data);
         return result;
     }
 
     @Override
     public void serializeImpl(MessageData msg) {
-        msg.data = new byte[1 + sernumlen];
-        msg.data[0] = sernumlen;
-        if ( sernumlen >= 1 )
-            System.arraycopy(sernum, 0, msg.data, 1, sernumlen);
+        msg.data = MZCSerialResCodec.toBytes(this);
+    }
+
+    @Override
+    public void serializeImpl(ByteBuffer buf) {
+        MZCSerialResCodec.encode(this, buf);
     }
 }
@@ -0,0 +1,25 @@
+package org.meshwork.core.zeroconf.l3;
+
+import org.meshwork.core.AbstractMessage;
+import org.meshwork.core.MessageModule;
+
+/**
+ * ZeroConfSerial (ZC_CODE) messages.
+ */
+public class ZeroConfSerialModule implements MessageModule {
+
+    @Override
+    public AbstractMessage[] getMessageTypes() {
+        return new AbstractMessage[] {new MNOK((byte)0), new MOK((byte)0),
+                                        new MUnknown((byte)0), new MZCDeinit((byte)0),
+                                        new MZCDevCfg((byte)0), new MZCDevReq((byte)0),
+                                        new MZCDevRes((byte)0), new MZCInit((byte)0),
+                                        new MZCNwkCfg((byte)0) ,new MZCNwkReq((byte)0),
+                                        new MZCNwkRes((byte)0), new MZCRepCfg((byte)0),
+                                        new MZCRepReq((byte)0), new MZCRepRes((byte)0),
+                                        new MZCSerialCfg((byte)0), new MZCSerialReq((byte)0),
+                                        new MZCSerialRes((byte)0), new MZCFactoryReset((byte)0)
+        };
+    }
+
+}